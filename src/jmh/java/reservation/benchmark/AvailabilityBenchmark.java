@@ -0,0 +1,76 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.job.LocalDateHelper;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * QueryAvailabilityJob.call with the cache on and off.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AvailabilityBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean cacheEnabled;
+
+	@Param({ "1", "7", "30" })
+	public int rangeDays;
+
+	@Param({ "0", "1000", "10000" })
+	public int existingReservations;
+
+	private ConfigurableApplicationContext mContext;
+	private ReservationDao mReservationDao;
+	private LocalDateHelper mLocalDateHelper;
+	private ReservationCache mReservationCache;
+	private ReservationHolds mReservationHolds;
+	private LocalDate mStartDate;
+	private LocalDate mEndDate;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mContext = BenchmarkContext.start(existingReservations);
+		mReservationDao = mContext.getBean(ReservationDao.class);
+		mLocalDateHelper = mContext.getBean(LocalDateHelper.class);
+		mReservationCache = mContext.getBean(ReservationCache.class);
+		mReservationHolds = mContext.getBean(ReservationHolds.class);
+		mStartDate = LocalDate.now().plusDays(1);
+		mEndDate = mStartDate.plusDays(rangeDays - 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mContext.close();
+	}
+
+	@Benchmark
+	public List<LocalDate> queryAvailability() {
+		return new QueryAvailabilityJob(mStartDate, mEndDate, mReservationDao, mLocalDateHelper, mReservationCache,
+				mReservationHolds, cacheEnabled).call();
+	}
+}
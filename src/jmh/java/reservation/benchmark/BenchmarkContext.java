@@ -0,0 +1,50 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Starts the application without the web layer and fills the in-memory database.
+ * Every other day of the bookable window is reserved, the remaining reservations are
+ * history before today, so the table grows without changing the availability.
+ */
+public class BenchmarkContext {
+
+	public static ConfigurableApplicationContext start(int existingReservations) {
+		return start(existingReservations, new String[0]);
+	}
+
+	// Properties given as arguments, "--name=value", override application.properties.
+	public static ConfigurableApplicationContext start(int existingReservations, String... arguments) {
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(ReservationApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties("spring.main.banner-mode=off", "logging.level.root=WARN").run(arguments);
+
+		ReservationDao reservationDao = context.getBean(ReservationDao.class);
+		LocalDate date = LocalDate.now().plusDays(1);
+		int saved = 0;
+		while (saved < existingReservations && !date.isAfter(LocalDate.now().plusMonths(1))) {
+			reservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+			date = date.plusDays(2);
+			saved++;
+		}
+
+		List<Reservation> history = new ArrayList<Reservation>();
+		LocalDate historyDate = LocalDate.now().minusDays(2);
+		for (; saved < existingReservations; saved++) {
+			history.add(new Reservation("Brian Leung", "brian.leung@mail.com", historyDate, historyDate));
+			historyDate = historyDate.minusDays(1);
+		}
+		context.getBean(ReservationRepository.class).saveAll(history);
+		return context;
+	}
+}
@@ -0,0 +1,39 @@
+package reservation.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the matching benchmarks once per thread count with the GC profiler, which
+ * adds the allocation rate (gc.alloc.rate.norm is bytes per operation) to throughput
+ * and average time.
+ *
+ * Arguments: include regex, comma separated thread counts, output directory.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*";
+		String threadCounts = args.length > 1 ? args[1] : "1,4";
+		File outputDirectory = new File(args.length > 2 ? args[2] : "build/reports/jmh");
+		outputDirectory.mkdirs();
+
+		for (String threadCount : threadCounts.split(",")) {
+			int threads = Integer.parseInt(threadCount.trim());
+			Options options = new OptionsBuilder()
+					.include(BenchmarkRunner.class.getPackage().getName() + "." + include)
+					.threads(threads)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(outputDirectory, "jmh-threads-" + threads + ".json").getPath())
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Reserves and cancels through the write jobs, every thread on a date of its own, so
+ * no two writes want the same stripe of the date locks. Run with -t 1 and -t N on a
+ * machine with N cores, the throughput should grow with the threads. With more
+ * threads than cores it measures contention, not scaling. Up to MAX_THREADS threads,
+ * the dates have to stay in the bookable window.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 4)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DisjointWriteBenchmark {
+
+	public static final int MAX_THREADS = 28;
+
+	private static final AtomicInteger NEXT_DAY = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class ThreadDate {
+		private LocalDate mDate;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			int day = NEXT_DAY.incrementAndGet();
+			if (day > MAX_THREADS) {
+				throw new IllegalStateException("At most " + MAX_THREADS + " threads, one date each.");
+			}
+			mDate = LocalDate.now().plusDays(day);
+		}
+	}
+
+	private ConfigurableApplicationContext mContext;
+	private NewReservationJobFactory mReservationJobFactory;
+	private CancelReservationJobFactory mCancelReservationJobFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mContext = BenchmarkContext.start(0);
+		mReservationJobFactory = mContext.getBean(NewReservationJobFactory.class);
+		mCancelReservationJobFactory = mContext.getBean(CancelReservationJobFactory.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mContext.close();
+	}
+
+	@Benchmark
+	public void reserveAndCancel(ThreadDate thread) throws Exception {
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", thread.mDate, thread.mDate);
+		mReservationJobFactory.getJob(reservation).call();
+		mCancelReservationJobFactory.getJob(reservation.getId()).call();
+	}
+}
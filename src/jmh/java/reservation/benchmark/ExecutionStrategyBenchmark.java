@@ -0,0 +1,152 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.JobAdmission;
+import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
+import org.coffeehouse.home.reservation.job.UpdateReservationJob.UpdateReservationJobFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * The request mix of integrationtesting.ReservationIntegrationTesting, 5 availability,
+ * 7 reserve, 5 modify and 3 cancel clients, submitting their jobs through the
+ * executors of each strategy and waiting for them. Throughput is per client kind,
+ * SampleTime gives the latency percentiles. The clients do not pause between
+ * requests as the integration test clients do, and they reserve on SITES sites. A
+ * modify or cancel client with nothing left to work on reserves first.
+ *
+ * VIRTUAL fails its setup on a JDK before 21, the other strategies still run. The
+ * results of all three on JDK 21 are in src/jmh/baseline/baseline.txt.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionStrategyBenchmark {
+
+	// Spread over as many sites that most reservations succeed.
+	private static final int SITES = 100;
+	private static final long DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	@Param({ "FIXED", "WORK_STEALING", "VIRTUAL" })
+	public String strategy;
+
+	private ConfigurableApplicationContext mContext;
+	private JobAdmission mQueryAdmission;
+	private JobAdmission mUpdateAdmission;
+	private QueryAvailabilityJobFactory mQueryAvailabilityJobFactory;
+	private NewReservationJobFactory mReservationJobFactory;
+	private UpdateReservationJobFactory mUpdateReservationJobFactory;
+	private CancelReservationJobFactory mCancelReservationJobFactory;
+
+	// Reserved by the reserve clients, for the modify and cancel clients to work on.
+	private final Queue<UUID> mReserved = new ConcurrentLinkedQueue<UUID>();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mContext = BenchmarkContext.start(1000, "--reservation.executor.strategy=" + strategy);
+		mQueryAdmission = mContext.getBean("reservationQueryAdmission", JobAdmission.class);
+		mUpdateAdmission = mContext.getBean("reservationUpdateAdmission", JobAdmission.class);
+		mQueryAvailabilityJobFactory = mContext.getBean(QueryAvailabilityJobFactory.class);
+		mReservationJobFactory = mContext.getBean(NewReservationJobFactory.class);
+		mUpdateReservationJobFactory = mContext.getBean(UpdateReservationJobFactory.class);
+		mCancelReservationJobFactory = mContext.getBean(CancelReservationJobFactory.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mContext.close();
+	}
+
+	@Benchmark
+	@Group("mix")
+	@GroupThreads(5)
+	public List<LocalDate> availability() throws InterruptedException {
+		// The whole window, as GET /reservation/availability.
+		return run(mQueryAdmission,
+				mQueryAvailabilityJobFactory.getJob(LocalDate.now().plusDays(1), LocalDate.now().plusMonths(1)));
+	}
+
+	@Benchmark
+	@Group("mix")
+	@GroupThreads(7)
+	public Reservation reserve() throws InterruptedException {
+		Reservation reservation = run(mUpdateAdmission, mReservationJobFactory.getJob(randomReservation()));
+		if (reservation != null) {
+			mReserved.add(reservation.getId());
+		}
+		return reservation;
+	}
+
+	@Benchmark
+	@Group("mix")
+	@GroupThreads(5)
+	public Reservation modify() throws InterruptedException {
+		UUID id = reserved(mReserved.peek());
+		return id == null ? null : run(mUpdateAdmission, mUpdateReservationJobFactory.getJob(id, randomReservation()));
+	}
+
+	@Benchmark
+	@Group("mix")
+	@GroupThreads(3)
+	public Void cancel() throws InterruptedException {
+		UUID id = reserved(mReserved.poll());
+		return id == null ? null : run(mUpdateAdmission, mCancelReservationJobFactory.getJob(id));
+	}
+
+	// The given id, or when there was none the id of a new reservation, null if that failed.
+	private UUID reserved(UUID id) throws InterruptedException {
+		if (id != null) {
+			return id;
+		}
+		Reservation reservation = run(mUpdateAdmission, mReservationJobFactory.getJob(randomReservation()));
+		return reservation == null ? null : reservation.getId();
+	}
+
+	// The result, or null if the job failed as a conflicting reservation does.
+	private <T> T run(JobAdmission admission, Callable<T> job) throws InterruptedException {
+		try {
+			return admission.submit(job, System.nanoTime() + DEADLINE_NANOS).get();
+		} catch (ExecutionException exception) {
+			return null;
+		}
+	}
+
+	private Reservation randomReservation() {
+		LocalDate startDate = randomStartDate();
+		return new Reservation("site-" + ThreadLocalRandom.current().nextInt(SITES), "Brian Leung",
+				"brian.leung@mail.com", startDate, startDate.plusDays(ThreadLocalRandom.current().nextInt(3)));
+	}
+
+	private LocalDate randomStartDate() {
+		return LocalDate.now().plusDays(1 + ThreadLocalRandom.current().nextInt(27));
+	}
+}
@@ -0,0 +1,97 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.job.LocalDateHelper;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Date expansion and the validation every write runs before it is committed.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class LocalDateHelperBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Dates {
+
+		@Param({ "1", "7", "30" })
+		public int rangeDays;
+
+		private LocalDateHelper mLocalDateHelper = new LocalDateHelper();
+		private LocalDate mStartDate = LocalDate.now().plusDays(1);
+		private LocalDate mEndDate;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			mEndDate = mStartDate.plusDays(rangeDays - 1);
+		}
+	}
+
+	/*
+	 * The validated range is kept free so areDatesValid always reaches the database
+	 * query.
+	 */
+	@State(Scope.Benchmark)
+	public static class Database {
+
+		@Param({ "1", "3" })
+		public int rangeDays;
+
+		@Param({ "0", "1000", "10000" })
+		public int existingReservations;
+
+		private ConfigurableApplicationContext mContext;
+		private LocalDateHelper mLocalDateHelper;
+		private LocalDate mStartDate;
+		private LocalDate mEndDate;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			mContext = BenchmarkContext.start(existingReservations);
+			mLocalDateHelper = mContext.getBean(LocalDateHelper.class);
+			mStartDate = LocalDate.now().plusDays(2);
+			mEndDate = mStartDate.plusDays(rangeDays - 1);
+			ReservationDao reservationDao = mContext.getBean(ReservationDao.class);
+			for (Reservation reservation : reservationDao.findReservationInRange(mStartDate, mEndDate)) {
+				reservationDao.cancel(reservation.getId());
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			mContext.close();
+		}
+	}
+
+	@Benchmark
+	public List<LocalDate> getDatesWithinRange(Dates dates) {
+		return dates.mLocalDateHelper.getDatesWithinRange(dates.mStartDate, dates.mEndDate);
+	}
+
+	@Benchmark
+	public RESULT areDatesValid(Database database) {
+		return database.mLocalDateHelper.areDatesValid(database.mStartDate, database.mEndDate);
+	}
+}
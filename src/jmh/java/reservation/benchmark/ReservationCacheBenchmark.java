@@ -0,0 +1,74 @@
+package reservation.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * ReservationCache reads and writes without Spring or the database. The cache only
+ * holds the bookable window, so existingReservations is capped by its length.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReservationCacheBenchmark {
+
+	@Param({ "1", "7", "30" })
+	public int rangeDays;
+
+	@Param({ "0", "5", "15" })
+	public int existingReservations;
+
+	private ReservationCache mReservationCache;
+	private Reservation mReservation;
+	private LocalDate mStartDate;
+	private LocalDate mEndDate;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		LocalDate today = LocalDate.now();
+		mReservationCache = new ReservationCache(new AvailabilityIndex(today), today.plusDays(1),
+				today.plusMonths(1));
+		// Every other day, leaving the last day of the window free for mReservation.
+		for (int i = 0; i < existingReservations; i++) {
+			LocalDate date = today.plusDays(1 + 2 * i);
+			mReservationCache.add(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		}
+		LocalDate last = today.plusMonths(1);
+		mReservation = new Reservation("Brian Leung", "brian.leung@mail.com", last, last);
+		mReservationCache.add(mReservation);
+		mStartDate = today.plusDays(1);
+		mEndDate = mStartDate.plusDays(rangeDays - 1);
+	}
+
+	@Benchmark
+	public List<LocalDate> getAvailability() {
+		return mReservationCache.getAvailability(mStartDate, mEndDate);
+	}
+
+	// remove() on its own would only have work to do once, so each call puts it back.
+	@Benchmark
+	public void removeAndAdd() {
+		mReservationCache.remove(mReservation);
+		mReservationCache.add(mReservation);
+	}
+}
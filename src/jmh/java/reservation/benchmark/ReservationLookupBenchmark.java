@@ -0,0 +1,117 @@
+package reservation.benchmark;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationIntervalTree;
+import org.coffeehouse.home.reservation.data.ReservationRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+ * Range lookups against a table holding historicalReservations past reservations
+ * besides the booked window. tableScan is the lookup as it was before the date index,
+ * the original overlap predicate on a table without the index. indexedQuery is the
+ * repository query on the index and intervalTree the in-memory fallback. The history
+ * is inserted with plain SQL, saving a million entities through JPA takes far longer
+ * than the benchmark.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ReservationLookupBenchmark {
+
+	private static final String LEGACY_QUERY = "select r from Reservation r "
+			+ "where not ( r.startDate > ?2 or r.endDate < ?1 )";
+
+	@Param({ "tableScan", "indexedQuery", "intervalTree" })
+	public String lookup;
+
+	@Param({ "1000000" })
+	public int historicalReservations;
+
+	@Param({ "1", "30" })
+	public int rangeDays;
+
+	private ConfigurableApplicationContext mContext;
+	private EntityManager mEntityManager;
+	private ReservationRepository mRepository;
+	private ReservationIntervalTree mIntervalTree;
+	private LocalDate[] mStartDates = new LocalDate[8];
+	private LocalDate[] mEndDates = new LocalDate[8];
+	private int mNext;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// Every other day of the window is booked.
+		mContext = BenchmarkContext.start(15);
+		JdbcTemplate jdbcTemplate = mContext.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("insert into reservation (id, site_id, name, email, start_date, end_date) "
+				+ "select secure_rand(16), 'main', 'Brian Leung', 'brian.leung@mail.com', "
+				+ "dateadd('DAY', -(2 + mod(x, 3650)), current_date), dateadd('DAY', -(2 + mod(x, 3650)), current_date) "
+				+ "from system_range(1, ?)", historicalReservations);
+
+		if ("tableScan".equals(lookup)) {
+			jdbcTemplate.execute("drop index idx_reservation_site_end_start");
+		}
+		mEntityManager = mContext.getBean(EntityManager.class);
+		mRepository = mContext.getBean(ReservationRepository.class);
+		if ("intervalTree".equals(lookup)) {
+			mIntervalTree = new ReservationIntervalTree();
+			jdbcTemplate.query("select id, start_date, end_date from reservation", resultSet -> {
+				ByteBuffer id = ByteBuffer.wrap(resultSet.getBytes(1));
+				Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com",
+						resultSet.getObject(2, LocalDate.class), resultSet.getObject(3, LocalDate.class));
+				reservation.setId(new UUID(id.getLong(), id.getLong()));
+				mIntervalTree.add(reservation);
+			});
+		}
+		// H2 reuses the last result of a query run again with the same parameters.
+		for (int i = 0; i < mStartDates.length; i++) {
+			mStartDates[i] = LocalDate.now().plusDays(1 + i);
+			mEndDates[i] = mStartDates[i].plusDays(rangeDays - 1);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mContext.close();
+	}
+
+	@Benchmark
+	public Collection<Reservation> findReservationInRange() {
+		int range = mNext++ & (mStartDates.length - 1);
+		switch (lookup) {
+		case "tableScan":
+			return mEntityManager.createQuery(LEGACY_QUERY, Reservation.class).setParameter(1, mStartDates[range])
+					.setParameter(2, mEndDates[range]).getResultList();
+		case "indexedQuery":
+			return mRepository.findSiteReservationsWithinDates(Reservation.DEFAULT_SITE, mStartDates[range],
+					mEndDates[range]);
+		default:
+			return mIntervalTree.findOverlapping(mStartDates[range], mEndDates[range]);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package reservation.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationIntervalTree;
+import org.coffeehouse.home.reservation.data.ReservationJournal;
+import org.coffeehouse.home.reservation.data.ReservationJournal.OPERATION;
+import org.coffeehouse.home.reservation.data.ReservationJournalDaoImpl;
+import org.coffeehouse.home.reservation.data.ReservationSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/*
+ * Time until the journal DAO is ready, with the availability cache and the interval
+ * tree loaded, for a history of historicalReservations reservations besides every other
+ * day of the booked window. journal replays all of it, snapshot maps a snapshot taken
+ * after the history and replays the TAIL_WRITES written since.
+ *
+ * Only the DAO, the cache, the tree and the feed are started, in a context of their
+ * own, so the time is not buried under the rest of the application.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ReservationStartupBenchmark {
+
+	private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+	private static final int TAIL_WRITES = 100;
+
+	@Param({ "journal", "snapshot" })
+	public String startFrom;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int historicalReservations;
+
+	private Path mDirectory;
+
+	private AnnotationConfigApplicationContext mContext;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("reservation-startup");
+		ReservationJournal journal = new ReservationJournal(mDirectory, SEGMENT_BYTES, false);
+		journal.open(record -> {
+		});
+		List<Reservation> reservations = new ArrayList<Reservation>();
+		for (LocalDate date = LocalDate.now().plusDays(1); !date.isAfter(LocalDate.now().plusMonths(1)); date = date
+				.plusDays(2)) {
+			reservations.add(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		}
+		for (int i = 0; i < historicalReservations; i++) {
+			LocalDate date = LocalDate.now().minusDays(2 + i % 3650);
+			reservations.add(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		}
+		reservations.forEach(reservation -> journal.append(OPERATION.RESERVE, reservation.getId(), reservation));
+
+		if ("snapshot".equals(startFrom)) {
+			reservations.sort(Comparator.comparing(Reservation::getId));
+			ReservationSnapshot.write(snapshotFile(), journal.getPosition(), LocalDate.now(), reservations.iterator());
+		}
+		for (int i = 0; i < TAIL_WRITES; i++) {
+			Reservation reservation = reservations.get(i);
+			reservation.setName("Ben Greg");
+			journal.append(OPERATION.MODIFY, reservation.getId(), reservation);
+		}
+		journal.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.list(mDirectory)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(mDirectory);
+	}
+
+	// Not closed, closing takes a snapshot and would change what the next start finds.
+	@TearDown(Level.Invocation)
+	public void release() {
+		mContext = null;
+	}
+
+	@Benchmark
+	public ReservationDao start() {
+		LocalDate today = LocalDate.now();
+		mContext = new AnnotationConfigApplicationContext();
+		mContext.registerBean(ReservationCache.class,
+				() -> new ReservationCache(new AvailabilityIndex(today), today.plusDays(1), today.plusMonths(1)));
+		mContext.registerBean(ReservationIntervalTree.class);
+		mContext.registerBean(AvailabilityFeed.class, () -> new AvailabilityFeed(Runnable::run));
+		mContext.registerBean(ReservationJournalDaoImpl.class, () -> new ReservationJournalDaoImpl(
+				new ReservationJournal(mDirectory, SEGMENT_BYTES, false), snapshotFile(), 0));
+		mContext.refresh();
+		return mContext.getBean(ReservationDao.class);
+	}
+
+	private Path snapshotFile() {
+		return mDirectory.resolve("reservations.snapshot");
+	}
+}
@@ -0,0 +1,130 @@
+package org.coffeehouse.home.reservation;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Serialized availability responses, keyed by base URI (the links are absolute), site
+ * and date range. Every entry is tagged with the ReservationCache version of its site
+ * it was computed at and is only served while that version is still current, so any
+ * committed write to the site or rotation invalidates all of the site's entries at once.
+ *
+ * Callers must read the version before computing a response. A response that raced
+ * with a write is then tagged with the older version and never served.
+ *
+ * The same version makes the strong ETag of a response. Versions start over with the
+ * application, so the ETag also carries the time this instance started.
+ */
+@Component
+class AvailabilityResponseCache {
+
+	public static final int MAX_ENTRIES = 1024;
+
+	private static class Entry {
+		private final long mVersion;
+		private final byte[] mBody;
+
+		private Entry(long version, byte[] body) {
+			mVersion = version;
+			mBody = body;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+
+	private final String mInstance = Long.toHexString(System.currentTimeMillis());
+
+	// Not there when the application runs without a web server.
+	@Autowired(required = false)
+	private RequestMappingHandlerAdapter mHandlerAdapter;
+
+	private ObjectMapper mObjectMapper;
+
+	/*
+	 * Uses the mapper of the converter MVC would serialize HAL Resources with, so cached
+	 * bytes are identical to a response written by the controller.
+	 */
+	@PostConstruct
+	public void init() {
+		if (mHandlerAdapter == null) {
+			return;
+		}
+		for (HttpMessageConverter<?> converter : mHandlerAdapter.getMessageConverters()) {
+			if (converter instanceof AbstractJackson2HttpMessageConverter
+					&& converter.canWrite(Resources.class, MediaTypes.HAL_JSON)) {
+				mObjectMapper = ((AbstractJackson2HttpMessageConverter) converter).getObjectMapper();
+				return;
+			}
+		}
+	}
+
+	public byte[] get(String baseUri, String siteId, LocalDate startDate, LocalDate endDate, long version) {
+		Entry entry = mEntries.get(key(baseUri, siteId, startDate, endDate));
+		return entry != null && entry.mVersion == version ? entry.mBody : null;
+	}
+
+	/*
+	 * Serializes the response, stores it under the version it was computed at and
+	 * returns the bytes.
+	 */
+	public byte[] put(String baseUri, String siteId, LocalDate startDate, LocalDate endDate, long version,
+			Object response) {
+		if (mObjectMapper == null) {
+			throw new IllegalStateException("No HAL message converter registered.");
+		}
+		byte[] body;
+		try {
+			body = mObjectMapper.writeValueAsBytes(response);
+		} catch (JsonProcessingException exception) {
+			throw new UncheckedIOException(exception);
+		}
+		if (mEntries.size() >= MAX_ENTRIES) {
+			// Mostly ranges that have rotated out of the window, they are never asked for again.
+			mEntries.clear();
+		}
+		mEntries.merge(key(baseUri, siteId, startDate, endDate), new Entry(version, body),
+				(current, computed) -> current.mVersion > computed.mVersion ? current : computed);
+		return body;
+	}
+
+	// Quoted, as the header carries it. The site is part of the URI the tag belongs to.
+	public String getETag(LocalDate startDate, LocalDate endDate, long version) {
+		return '"' + mInstance + '.' + Long.toHexString(version) + '.' + Long.toHexString(startDate.toEpochDay()) + '.'
+				+ Long.toHexString(endDate.toEpochDay()) + '"';
+	}
+
+	/*
+	 * Whether an If-None-Match header matches the ETag. Compared as RFC 7232 has it,
+	 * weakly, so a W/ prefix is ignored.
+	 */
+	public static boolean matches(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String key(String baseUri, String siteId, LocalDate startDate, LocalDate endDate) {
+		return baseUri + ' ' + siteId + ' ' + startDate + ' ' + endDate;
+	}
+}
@@ -1,23 +1,222 @@
 package org.coffeehouse.home.reservation;
 
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.coffeehouse.home.reservation.job.JobAdmission;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
 @Configuration
 public class ExecutorConfig {
+
+	/*
+	 * How the executors run their jobs, selected with reservation.executor.strategy.
+	 *
+	 * FIXED           a fixed pool of threads with a bounded queue
+	 * WORK_STEALING   a ForkJoinPool of as many threads, queueing without a bound of its
+	 *                 own, only the JobAdmission limits it
+	 * VIRTUAL         a new virtual thread per job, on a JDK that has them. Jobs never
+	 *                 wait for a thread, they wait for the date locks and the database
+	 *                 connections instead
+	 */
+	public enum STRATEGY {
+		FIXED, WORK_STEALING, VIRTUAL
+	}
 	
 	private static final Integer MAX_QUERY_THREADS = 5;
-	
+	private static final Integer MAX_UPDATE_THREADS = Runtime.getRuntime().availableProcessors();
+	// A subscription has at most one delivery queued, the capacity bounds the busy ones.
+	private static final Integer FEED_THREADS = 2;
+	public static final Integer FEED_QUEUE_CAPACITY = 10000;
+
+	@Value("${reservation.executor.strategy:FIXED}")
+	private STRATEGY mStrategy;
+
+	// Jobs waiting for a thread, past these the executors turn new jobs away.
+	@Value("${reservation.executor.query-queue-capacity:500}")
+	private int mQueryQueueCapacity;
+
+	// Also bounds the writes waiting for the ReservationBatchWriter.
+	@Value("${reservation.executor.update-queue-capacity:500}")
+	private int mUpdateQueueCapacity;
+
+	/*
+	 * Update jobs lock only the dates they claim, so writes for disjoint dates can run
+	 * on several threads.
+	 */
 	@Bean("reservationUpdateExecutor")
-	public ExecutorService getUpdateReservationExecutor() {
-		return Executors.newSingleThreadExecutor();
+	public ExecutorService getUpdateReservationExecutor(MeterRegistry meterRegistry) {
+		return newExecutor(MAX_UPDATE_THREADS, mUpdateQueueCapacity, "reservationUpdateExecutor", meterRegistry);
 	}
 
 	@Bean("reservationQueryExecutor")
-	public ExecutorService getQueryReservationExecutor() {
-		return Executors.newFixedThreadPool(MAX_QUERY_THREADS);
+	public ExecutorService getQueryReservationExecutor(MeterRegistry meterRegistry) {
+		return newExecutor(MAX_QUERY_THREADS, mQueryQueueCapacity, "reservationQueryExecutor", meterRegistry);
+	}
+
+	/*
+	 * Sends the AvailabilityFeed deliveries. A fixed pool whatever the strategy, its
+	 * threads mostly wait for slow subscribers.
+	 */
+	@Bean("availabilityFeedExecutor")
+	public ExecutorService getAvailabilityFeedExecutor(MeterRegistry meterRegistry) {
+		return newInstrumentedThreadPool(FEED_THREADS, FEED_QUEUE_CAPACITY, "availabilityFeedExecutor", meterRegistry);
+	}
+
+	@Bean("reservationUpdateAdmission")
+	public JobAdmission getUpdateReservationAdmission(
+			@Qualifier("reservationUpdateExecutor") ExecutorService executor, MeterRegistry meterRegistry) {
+		return new JobAdmission("reservationUpdateExecutor", executor, MAX_UPDATE_THREADS, mUpdateQueueCapacity,
+				meterRegistry);
+	}
+
+	@Bean("reservationQueryAdmission")
+	public JobAdmission getQueryReservationAdmission(@Qualifier("reservationQueryExecutor") ExecutorService executor,
+			MeterRegistry meterRegistry) {
+		return new JobAdmission("reservationQueryExecutor", executor, MAX_QUERY_THREADS, mQueryQueueCapacity,
+				meterRegistry);
+	}
+
+	// The threads are the parallelism of WORK_STEALING, VIRTUAL has no limit.
+	private ExecutorService newExecutor(int threads, int queueCapacity, String name, MeterRegistry meterRegistry) {
+		switch (mStrategy) {
+		case WORK_STEALING:
+			return newInstrumentedWorkStealingPool(threads, name, meterRegistry);
+		case VIRTUAL:
+			return newInstrumentedVirtualThreadPerTaskExecutor(name, meterRegistry);
+		default:
+			return newInstrumentedThreadPool(threads, queueCapacity, name, meterRegistry);
+		}
+	}
+
+	/*
+	 * Same pool as Executors.newFixedThreadPool, but with room for queueCapacity waiting
+	 * jobs only. The JobAdmission in front of it turns jobs away before that. It
+	 * publishes executor.queued, executor.active, executor.pool.size and
+	 * executor.completed, plus executor.rejected, all tagged with the pool name.
+	 */
+	private ExecutorService newInstrumentedThreadPool(int threads, int queueCapacity, String name,
+			MeterRegistry meterRegistry) {
+		Counter rejected = Counter.builder("executor.rejected").tag("name", name).register(meterRegistry);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), (task, pool) -> {
+					rejected.increment();
+					throw new RejectedExecutionException("Task rejected by " + name);
+				});
+		new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+		return executor;
+	}
+
+	/*
+	 * Same pool as Executors.newWorkStealingPool, with named threads and in FIFO order
+	 * as the fixed pool. It publishes executor.steals, executor.queued, executor.active
+	 * and executor.running, tagged with the pool name.
+	 */
+	private ExecutorService newInstrumentedWorkStealingPool(int threads, String name, MeterRegistry meterRegistry) {
+		AtomicInteger workers = new AtomicInteger();
+		ForkJoinPool executor = new ForkJoinPool(threads, pool -> {
+			ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			worker.setName(name + "-" + workers.incrementAndGet());
+			return worker;
+		}, null, true);
+		new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+		return executor;
+	}
+
+	/*
+	 * A virtual thread per task as newVirtualThreadPerTaskExecutor, publishing the
+	 * meters of the fixed pool: executor.active and executor.pool.size count the jobs
+	 * running, each on a thread of its own, executor.queued stays 0 as no job waits for
+	 * a thread, executor.completed and executor.rejected, all tagged with the pool name.
+	 */
+	private ExecutorService newInstrumentedVirtualThreadPerTaskExecutor(String name, MeterRegistry meterRegistry) {
+		ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor(name);
+		Counter rejected = Counter.builder("executor.rejected").tag("name", name).register(meterRegistry);
+		AtomicInteger active = new AtomicInteger();
+		AtomicLong completed = new AtomicLong();
+		ExecutorService executor = new AbstractExecutorService() {
+
+			@Override
+			public void execute(Runnable task) {
+				try {
+					virtualThreads.execute(() -> {
+						active.incrementAndGet();
+						try {
+							task.run();
+						} finally {
+							active.decrementAndGet();
+							completed.incrementAndGet();
+						}
+					});
+				} catch (RejectedExecutionException exception) {
+					rejected.increment();
+					throw exception;
+				}
+			}
+
+			@Override
+			public void shutdown() {
+				virtualThreads.shutdown();
+			}
+
+			@Override
+			public List<Runnable> shutdownNow() {
+				return virtualThreads.shutdownNow();
+			}
+
+			@Override
+			public boolean isShutdown() {
+				return virtualThreads.isShutdown();
+			}
+
+			@Override
+			public boolean isTerminated() {
+				return virtualThreads.isTerminated();
+			}
+
+			@Override
+			public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+				return virtualThreads.awaitTermination(timeout, unit);
+			}
+		};
+		Gauge.builder("executor.active", active, AtomicInteger::get).tag("name", name).register(meterRegistry);
+		Gauge.builder("executor.pool.size", active, AtomicInteger::get).tag("name", name).register(meterRegistry);
+		Gauge.builder("executor.queued", () -> 0).tag("name", name).register(meterRegistry);
+		FunctionCounter.builder("executor.completed", completed, AtomicLong::get).tag("name", name)
+				.register(meterRegistry);
+		return executor;
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor, looked up at runtime since the
+	 * application is built for Java 8. Fails on a JDK without virtual threads.
+	 */
+	private ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException exception) {
+			throw new IllegalStateException("The " + name + " needs a JDK with virtual threads, Java 21 or later.",
+					exception);
+		}
 	}
 }
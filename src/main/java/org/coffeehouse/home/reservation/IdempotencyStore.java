@@ -0,0 +1,138 @@
+package org.coffeehouse.home.reservation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/*
+ * Responses of writes sent with an Idempotency-Key header, kept for EXPIRY_MINUTES and
+ * at most MAX_ENTRIES of them, the oldest going first. A request repeating a key gets
+ * the response of the first one without running again. While the first one is still
+ * running the repeats wait for it.
+ *
+ * Every key is stored with a fingerprint of its request, a key sent again with another
+ * request is answered with 422. Of the failures only those the request is to blame for
+ * are kept, a DateRangeException or ReservationNotFoundException. Any other failure is
+ * not, even when answered with a 4xx, the request can be retried with the same key once
+ * it is answered.
+ */
+@Component
+class IdempotencyStore {
+
+	public static final int MAX_ENTRIES = 10000;
+	public static final long EXPIRY_MINUTES = 24 * 60;
+	public static final int MAX_KEY_LENGTH = 255;
+
+	private static class Entry {
+		private final String mFingerprint;
+		private final CompletableFuture<?> mResponse;
+		private final long mExpiresAt;
+
+		private Entry(String fingerprint, CompletableFuture<?> response, long expiresAt) {
+			mFingerprint = fingerprint;
+			mResponse = response;
+			mExpiresAt = expiresAt;
+		}
+	}
+
+	// In insertion order, so the entries expire from the head. Guarded by itself.
+	private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+
+	/*
+	 * The response for the key, computed by request if the key is new or null. A
+	 * request throwing instead of returning a future leaves nothing behind.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> CompletableFuture<R> execute(String key, String fingerprint, Supplier<CompletableFuture<R>> request) {
+		if (key == null) {
+			return request.get();
+		}
+		if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Invalid Idempotency-Key, it has to be 1 to " + MAX_KEY_LENGTH + " characters long.");
+		}
+		long now = System.nanoTime();
+		CompletableFuture<R> response = new CompletableFuture<R>();
+		Entry entry = new Entry(fingerprint, response, now + TimeUnit.MINUTES.toNanos(EXPIRY_MINUTES));
+		synchronized (mEntries) {
+			expire(now);
+			Entry stored = mEntries.get(key);
+			if (stored != null) {
+				if (!stored.mFingerprint.equals(fingerprint)) {
+					throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+							"The Idempotency-Key was already used for a different request.");
+				}
+				return answer((CompletableFuture<R>) stored.mResponse);
+			}
+			mEntries.put(key, entry);
+			if (mEntries.size() > MAX_ENTRIES) {
+				Iterator<Entry> eldest = mEntries.values().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+
+		CompletableFuture<R> computed;
+		try {
+			computed = request.get();
+		} catch (RuntimeException exception) {
+			remove(key, entry);
+			response.completeExceptionally(exception);
+			throw exception;
+		}
+		computed.whenComplete((result, failure) -> {
+			if (failure == null) {
+				response.complete(result);
+				return;
+			}
+			if (!isClientError(failure)) {
+				remove(key, entry);
+			}
+			response.completeExceptionally(failure);
+		});
+		return answer(response);
+	}
+
+	public int size() {
+		synchronized (mEntries) {
+			return mEntries.size();
+		}
+	}
+
+	// A future of its own for every caller, nothing one of them does reaches the stored one.
+	private <R> CompletableFuture<R> answer(CompletableFuture<R> response) {
+		return response.thenApply(Function.identity());
+	}
+
+	private void expire(long now) {
+		Iterator<Entry> entries = mEntries.values().iterator();
+		while (entries.hasNext() && entries.next().mExpiresAt - now <= 0) {
+			entries.remove();
+		}
+	}
+
+	private void remove(String key, Entry entry) {
+		synchronized (mEntries) {
+			mEntries.remove(key, entry);
+		}
+	}
+
+	// Judged by what the job failed with, the controller answers most failures with a 400.
+	private boolean isClientError(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+		if (cause instanceof ResponseStatusException) {
+			cause = cause.getCause();
+		}
+		return cause instanceof DateRangeException || cause instanceof ReservationNotFoundException;
+	}
+}
@@ -2,8 +2,10 @@ package org.coffeehouse.home.reservation;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ReservationApplication {
 
   public static void main(String... args) {
@@ -1,20 +1,39 @@
 package org.coffeehouse.home.reservation;
 
+import java.nio.file.Paths;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
 import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationBatchWriter;
 import org.coffeehouse.home.reservation.data.ReservationCache;
 import org.coffeehouse.home.reservation.data.ReservationDao;
 import org.coffeehouse.home.reservation.data.ReservationH2DaoImpl;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.data.ReservationIdCache;
+import org.coffeehouse.home.reservation.data.ReservationIntervalTree;
+import org.coffeehouse.home.reservation.data.ReservationJournal;
+import org.coffeehouse.home.reservation.data.ReservationJournalDaoImpl;
 import org.coffeehouse.home.reservation.data.ReservationRepository;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
 import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.ConfirmHoldJob.ConfirmHoldJobFactory;
+import org.coffeehouse.home.reservation.job.JobMetrics;
+import org.coffeehouse.home.reservation.job.JoinWaitlistJob.JoinWaitlistJobFactory;
 import org.coffeehouse.home.reservation.job.LocalDateHelper;
 import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.coffeehouse.home.reservation.job.PlaceHoldJob.PlaceHoldJobFactory;
 import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityRangesJob.QueryAvailabilityRangesJobFactory;
+import org.coffeehouse.home.reservation.job.ReservationDateLocks;
 import org.coffeehouse.home.reservation.job.UpdateReservationJob.UpdateReservationJobFactory;
+import org.coffeehouse.home.reservation.job.WaitlistHandoff;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -23,6 +42,19 @@ public class ReservationConfig {
 
 	public final static Integer MAX_RESERVATION_LENGTH_DAYS = 3;
 	public final static Boolean ENABLE_RESERVATION_CACHING = false;
+	public final static Boolean ENABLE_GROUP_COMMIT = false;
+	public final static Boolean ENABLE_INTERVAL_TREE_LOOKUP = false;
+	public final static Integer MAX_CACHED_RESERVATIONS = 10000;
+	// Keeps the reservations in memory and in a journal under JOURNAL_DIRECTORY instead of H2.
+	public final static Boolean ENABLE_JOURNAL = false;
+	public final static String JOURNAL_DIRECTORY = "journal";
+	public final static Integer JOURNAL_SEGMENT_BYTES = 64 * 1024 * 1024;
+	public final static Boolean JOURNAL_FORCE_WRITES = true;
+	// Startup maps the latest snapshot and replays only the journal written after it.
+	public final static Integer SNAPSHOT_INTERVAL_MINUTES = 10;
+	// How long a tentative hold keeps its dates unless the request asks for less.
+	public final static Integer HOLD_MINUTES = 10;
+	public final static Integer MAX_HOLD_MINUTES = 30;
 	
 	private final ReservationRepository mReservationRepository;
 
@@ -32,14 +64,55 @@ public class ReservationConfig {
 
 	@Bean
 	public ReservationDao getReservationDao() {
+		if (ENABLE_JOURNAL) {
+			if (ENABLE_GROUP_COMMIT) {
+				throw new IllegalStateException("The batch writer persists through JPA and cannot be used with the journal.");
+			}
+			return new ReservationJournalDaoImpl(
+					new ReservationJournal(Paths.get(JOURNAL_DIRECTORY), JOURNAL_SEGMENT_BYTES, JOURNAL_FORCE_WRITES),
+					Paths.get(JOURNAL_DIRECTORY, "reservations.snapshot"), SNAPSHOT_INTERVAL_MINUTES);
+		}
 		return new ReservationH2DaoImpl(mReservationRepository);
 	}
 
+	@Bean
+	public AvailabilityFeed getAvailabilityFeed(@Qualifier("availabilityFeedExecutor") ExecutorService executor) {
+		return new AvailabilityFeed(executor);
+	}
+
+	// Waiters are notified on the feed executor, never on the thread that committed.
+	@Bean
+	public ReservationWaitlist getReservationWaitlist(@Qualifier("availabilityFeedExecutor") ExecutorService executor) {
+		return new ReservationWaitlist(executor);
+	}
+
+	@Bean
+	public ReservationIntervalTree getReservationIntervalTree() {
+		return new ReservationIntervalTree();
+	}
+
+	@Bean
+	public ReservationIdCache getReservationIdCache() {
+		return new ReservationIdCache(MAX_CACHED_RESERVATIONS);
+	}
+
+	// Each writer queue holds as many writes as the update executor, the admission bounds both together.
+	@Bean
+	public ReservationBatchWriter getReservationBatchWriter(
+			@Value("${reservation.executor.update-queue-capacity:500}") int queueCapacity) {
+		return new ReservationBatchWriter(queueCapacity);
+	}
+
 	@Bean
 	public QueryAvailabilityJobFactory getQueryAvailabilityJobFactory() {
 		return new QueryAvailabilityJobFactory();
 	}
 
+	@Bean
+	public QueryAvailabilityRangesJobFactory getQueryAvailabilityRangesJobFactory() {
+		return new QueryAvailabilityRangesJobFactory();
+	}
+
 	@Bean
 	public NewReservationJobFactory getNewReservationJobFactory() {
 		return new NewReservationJobFactory();
@@ -55,26 +128,68 @@ public class ReservationConfig {
 		return new CancelReservationJobFactory();
 	}
 
+	@Bean
+	public PlaceHoldJobFactory getPlaceHoldJobFactory() {
+		return new PlaceHoldJobFactory();
+	}
+
+	@Bean
+	public ConfirmHoldJobFactory getConfirmHoldJobFactory() {
+		return new ConfirmHoldJobFactory();
+	}
+
+	@Bean
+	public JoinWaitlistJobFactory getJoinWaitlistJobFactory() {
+		return new JoinWaitlistJobFactory();
+	}
+
+	@Bean
+	public WaitlistHandoff getWaitlistHandoff() {
+		return new WaitlistHandoff();
+	}
+
 	@Bean
 	public LocalDateHelper getLocalDateHelper() {
 		return new LocalDateHelper();
 	}
 
 	@Bean
-	public ReservationCache getReservationCacheMap() {
-		LocalDate mStartDate = LocalDate.now().plusDays(1);
-		LocalDate mEndDate = LocalDate.now().plusMonths(1);
-		Map<LocalDate, Reservation> reservationMap = new HashMap<LocalDate, Reservation>();
+	public JobMetrics getJobMetrics() {
+		return new JobMetrics();
+	}
 
-		getLocalDateHelper().getDatesWithinRange(mStartDate, mEndDate).stream()
-				.forEach(date -> reservationMap.put(date, null));
+	@Bean
+	public ReservationDateLocks getReservationDateLocks() {
+		return new ReservationDateLocks();
+	}
+
+	// Today for the availability window.
+	@Bean
+	public Clock getClock() {
+		return Clock.systemDefaultZone();
+	}
+
+	@Bean
+	public ReservationHolds getReservationHolds(Clock clock) {
+		return new ReservationHolds(clock);
+	}
+
+	@Bean
+	public ReservationCache getReservationCacheMap(Clock clock) {
+		LocalDate mToday = LocalDate.now(clock);
+		LocalDate mStartDate = mToday.plusDays(1);
+		LocalDate mEndDate = mToday.plusMonths(1);
+		ReservationCache reservationCache = new ReservationCache(new AvailabilityIndex(mToday), mStartDate, mEndDate,
+				clock);
 
-		Collection<Reservation> reservations = getReservationDao().findReservationInRange(mStartDate, mEndDate);
+		// Straight from the table, the DAO may still be waiting for this cache to be injected.
+		// The journal DAO loads the cache itself once it has replayed the journal.
+		Collection<Reservation> reservations = mReservationRepository.findReservationsWithinDates(mStartDate, mEndDate);
 
 		for (Reservation reservation : reservations) {
-			getLocalDateHelper().getReservedDates(reservation).stream()
-					.forEach(date -> reservationMap.put(date, reservation));
+			// Into the partition of its site.
+			reservationCache.add(reservation);
 		}
-		return new ReservationCache(reservationMap, getLocalDateHelper());
+		return reservationCache;
 	}
 }
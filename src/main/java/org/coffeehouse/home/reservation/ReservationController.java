@@ -3,38 +3,89 @@ package org.coffeehouse.home.reservation;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
+import org.coffeehouse.home.reservation.data.DateRange;
 import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationBatchWriter;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHold;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
 import org.coffeehouse.home.reservation.data.ReservationRepository;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
 import org.coffeehouse.home.reservation.exceptions.DateRangeException;
 import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.coffeehouse.home.reservation.exceptions.ServiceOverloadedException;
 import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.ConfirmHoldJob.ConfirmHoldJobFactory;
+import org.coffeehouse.home.reservation.job.JobAdmission;
+import org.coffeehouse.home.reservation.job.JobMetrics;
+import org.coffeehouse.home.reservation.job.JoinWaitlistJob.JoinWaitlistJobFactory;
 import org.coffeehouse.home.reservation.job.LocalDateHelper;
 import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
 import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.coffeehouse.home.reservation.job.PlaceHoldJob.PlaceHoldJobFactory;
 import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityRangesJob.QueryAvailabilityRangesJobFactory;
 import org.coffeehouse.home.reservation.job.UpdateReservationJob.UpdateReservationJobFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.MediaTypes;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.Resources;
+import org.springframework.hateoas.core.Relation;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -42,6 +93,37 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 class ReservationController {
 
+	public static final int DEFAULT_PAGE_SIZE = 100;
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	public static final long FEED_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+	public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+	// Ranges one availability batch may ask for.
+	public static final int MAX_AVAILABILITY_RANGES = 31;
+
+	static final Pattern SITE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+	public static final MediaType JSON_LINES = MediaType.valueOf("application/x-ndjson");
+
+	public static final MediaType CSV = MediaType.valueOf("text/csv");
+
+	// One range of an availability batch with its available dates.
+	@Relation(collectionRelation = "availabilities")
+	public static class RangeAvailability extends DateRange {
+		private final List<LocalDate> mAvailable;
+
+		RangeAvailability(DateRange range, List<LocalDate> available) {
+			super(range.getStartDate(), range.getEndDate());
+			mAvailable = available;
+		}
+
+		public List<LocalDate> getAvailable() {
+			return mAvailable;
+		}
+	}
+
 	private final ReservationRepository mRepository;
 
 	private final ReservationResourceAssembler mAssembler;
@@ -49,6 +131,9 @@ class ReservationController {
 	@Autowired
 	private QueryAvailabilityJobFactory mQueryAvailabilityJobFactory;
 
+	@Autowired
+	private QueryAvailabilityRangesJobFactory mQueryAvailabilityRangesJobFactory;
+
 	@Autowired
 	private NewReservationJobFactory mReservationJobFactory;
 
@@ -58,16 +143,62 @@ class ReservationController {
 	@Autowired
 	private CancelReservationJobFactory mCancelReservationJobFactory;
 
+	@Autowired
+	private PlaceHoldJobFactory mPlaceHoldJobFactory;
+
+	@Autowired
+	private ConfirmHoldJobFactory mConfirmHoldJobFactory;
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
+
+	@Autowired
+	private JoinWaitlistJobFactory mJoinWaitlistJobFactory;
+
+	@Autowired
+	private ReservationWaitlist mReservationWaitlist;
+
 	@Autowired
 	private LocalDateHelper mLocalDateHelper;
 
 	@Autowired
-	@Qualifier("reservationUpdateExecutor")
-	private ExecutorService updateExecutorService;
+	private JobMetrics mJobMetrics;
+
+	@Autowired
+	private ReservationBatchWriter mReservationBatchWriter;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private ObjectMapper mObjectMapper;
+
+	@Autowired
+	private AvailabilityResponseCache mAvailabilityResponseCache;
+
+	@Autowired
+	private IdempotencyStore mIdempotencyStore;
 
 	@Autowired
-	@Qualifier("reservationQueryExecutor")
-	private ExecutorService queryExecutorService;
+	private ReservationImporter mReservationImporter;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
+	@Autowired
+	@Qualifier("reservationUpdateAdmission")
+	private JobAdmission mUpdateAdmission;
+
+	@Autowired
+	@Qualifier("reservationQueryAdmission")
+	private JobAdmission mQueryAdmission;
+
+	// Jobs carry it as their deadline, nobody waits for them longer.
+	@Value("${spring.mvc.async.request-timeout:30000}")
+	private long mRequestTimeoutMillis;
 
 	ReservationController(ReservationRepository repository, ReservationResourceAssembler assembler) {
 		this.mAssembler = assembler;
@@ -79,7 +210,7 @@ class ReservationController {
 		try {
 			log.info("Looking up reservation with id " + id);
 			UUID uuid = UUID.fromString(id);
-			Reservation reservation = mRepository.findById(uuid).orElseThrow(() -> new ReservationNotFoundException());
+			Reservation reservation = mReservationDao.findById(uuid).orElseThrow(() -> new ReservationNotFoundException());
 			return mAssembler.toResource(reservation);
 		} catch (IllegalArgumentException exception) {
 			log.error(exception.getMessage());
@@ -88,129 +219,593 @@ class ReservationController {
 		}
 	}
 
+	/*
+	 * One page of reservations ordered by id. The next link carries the last id of the
+	 * page as the cursor and is left out on the last page.
+	 */
 	@GetMapping("/reservation")
-	public Resources<Resource<Reservation>> all() {
-		log.info("Returning all reservations");
-		List<Object> reservations = mRepository.findAll().stream().map(mAssembler::toResource)
-				.collect(Collectors.toList());
-		return new Resources(reservations, linkTo(methodOn(ReservationController.class).all()).withSelfRel());
+	public Resources<Resource<Reservation>> all(@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "size", required = false) Integer size) {
+		int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+		if (pageSize < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size should be at least 1.");
+		}
+		try {
+			log.info("Returning " + pageSize + " reservations after " + after);
+			UUID cursor = after == null ? null : UUID.fromString(after);
+			List<Reservation> page = mReservationDao.findPage(cursor, pageSize);
+			List<Link> links = new ArrayList<Link>();
+			links.add(linkTo(methodOn(ReservationController.class).all(after, pageSize)).withSelfRel().expand());
+			if (page.size() == pageSize) {
+				String last = page.get(page.size() - 1).getId().toString();
+				links.add(linkTo(methodOn(ReservationController.class).all(last, pageSize)).withRel("next"));
+			}
+			return new Resources<Resource<Reservation>>(
+					page.stream().map(mAssembler::toResource).collect(Collectors.toList()), links);
+		} catch (IllegalArgumentException exception) {
+			log.error(exception.getMessage());
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Id, Id should be in the form if a UUID.",
+					exception);
+		}
+	}
+
+	/*
+	 * Every reservation as one JSON array, written row by row while the table is
+	 * scrolled, so the memory used does not grow with the number of reservations.
+	 */
+	@GetMapping("/reservation/export")
+	public ResponseEntity<StreamingResponseBody> export() {
+		log.info("Exporting all reservations");
+		StreamingResponseBody body = outputStream -> {
+			try (JsonGenerator generator = mObjectMapper.getFactory().createGenerator(outputStream)) {
+				generator.writeStartArray();
+				mReservationDao.forEachReservation(reservation -> {
+					try {
+						generator.writeObject(reservation);
+					} catch (IOException exception) {
+						throw new UncheckedIOException(exception);
+					}
+				});
+				generator.writeEndArray();
+			} catch (UncheckedIOException exception) {
+				throw exception.getCause();
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+	}
+
+	/*
+	 * Imports the reservations in the body: JSON lines, or CSV with a header row when the
+	 * body is text/csv. The body is read and the per row report streamed back while the
+	 * import runs, see ReservationImporter.
+	 */
+	@PostMapping("/reservation/import")
+	public ResponseEntity<StreamingResponseBody> importReservations(InputStream body,
+			@RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
+		return importReservations(null, body, contentType);
+	}
+
+	// Every row goes to the site, whatever site it names.
+	@PostMapping("/site/{siteId}/reservation/import")
+	public ResponseEntity<StreamingResponseBody> siteImportReservations(@PathVariable("siteId") String siteId,
+			InputStream body, @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType) {
+		checkSiteId(siteId);
+		return importReservations(siteId, body, contentType);
 	}
 
 	@GetMapping("/reservation/availability/{startDate}/{endDate}")
-	public Resources<List<LocalDate>> availability(@PathVariable("startDate") String startDate,
+	public CompletableFuture<ResponseEntity<byte[]>> availability(@PathVariable("startDate") String startDate,
 			@PathVariable("endDate") String endDate) {
-		try {
-			LocalDate mStartDate = LocalDate.parse(startDate);
-			LocalDate mEndDate = LocalDate.parse(endDate);
-
-			if (mEndDate.isBefore(mStartDate)) {
-				throw new DateRangeException("End date cannot be before start date");
-			}
+		return availabilityInRange(Reservation.DEFAULT_SITE, startDate, endDate, () -> new Link[] {
+				linkTo(methodOn(ReservationController.class).availability(startDate, endDate)).withSelfRel(),
+				linkTo(methodOn(ReservationController.class).availability()).withRel("availabilities") });
+	}
 
-			RESULT validation = mLocalDateHelper.areDatesValid(mStartDate, mEndDate);
-			switch (validation) {
-			case INVALID_START:
-				throw new DateRangeException(
-						"Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
-			case INVALID_END:
-				throw new DateRangeException(
-						"Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
-			default:
-				log.info("Querying Availability from StartDate: " + mStartDate + " to " + mEndDate);
-				List<LocalDate> availableDates = queryExecutorService
-						.submit(mQueryAvailabilityJobFactory.getJob(mStartDate, mEndDate)).get();
-				return new Resources(availableDates,
-						linkTo(methodOn(ReservationController.class).availability(startDate, endDate)).withSelfRel(),
-						linkTo(methodOn(ReservationController.class).availability()).withRel("availabilities"));
-			}
-		} catch (InterruptedException | ExecutionException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
-		} catch (DateRangeException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
-		} catch (DateTimeParseException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dates must be in the form YYYY-MM-DD", e);
-		}
+	@GetMapping("/site/{siteId}/reservation/availability/{startDate}/{endDate}")
+	public CompletableFuture<ResponseEntity<byte[]>> siteAvailability(@PathVariable("siteId") String siteId,
+			@PathVariable("startDate") String startDate, @PathVariable("endDate") String endDate) {
+		checkSiteId(siteId);
+		return availabilityInRange(siteId, startDate, endDate, () -> new Link[] {
+				linkTo(methodOn(ReservationController.class).siteAvailability(siteId, startDate, endDate))
+						.withSelfRel(),
+				linkTo(methodOn(ReservationController.class).siteAvailability(siteId)).withRel("availabilities") });
 	}
 
 	@GetMapping("/reservation/availability")
-	public Resources<List<LocalDate>> availability() {
-		try {
-			LocalDate mStartDate = LocalDate.now().plusDays(1);
-			LocalDate mEndDate = LocalDate.now().plusMonths(1);
+	public CompletableFuture<ResponseEntity<byte[]>> availability() {
+		LocalDate mStartDate = LocalDate.now().plusDays(1);
+		LocalDate mEndDate = LocalDate.now().plusMonths(1);
 
-			log.info("Querying Availability from StartDate: " + mStartDate + " to " + mEndDate);
+		log.info("Querying Availability from StartDate: " + mStartDate + " to " + mEndDate);
 
-			List<LocalDate> availableDates = queryExecutorService
-					.submit(mQueryAvailabilityJobFactory.getJob(mStartDate, mEndDate)).get();
+		return cachedAvailability(Reservation.DEFAULT_SITE, mStartDate, mEndDate,
+				() -> new Link[] { linkTo(methodOn(ReservationController.class).availability()).withSelfRel() });
+	}
 
-			return new Resources(availableDates,
-					linkTo(methodOn(ReservationController.class).availability()).withSelfRel());
-		} catch (InterruptedException | ExecutionException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
-		} catch (DateTimeParseException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dates must be in the form YYYY-MM-DD", e);
-		}
+	@GetMapping("/site/{siteId}/reservation/availability")
+	public CompletableFuture<ResponseEntity<byte[]>> siteAvailability(@PathVariable("siteId") String siteId) {
+		checkSiteId(siteId);
+		LocalDate mStartDate = LocalDate.now().plusDays(1);
+		LocalDate mEndDate = LocalDate.now().plusMonths(1);
+
+		log.info("Querying Availability of site " + siteId + " from StartDate: " + mStartDate + " to " + mEndDate);
+
+		return cachedAvailability(siteId, mStartDate, mEndDate, () -> new Link[] {
+				linkTo(methodOn(ReservationController.class).siteAvailability(siteId)).withSelfRel() });
+	}
+
+	/*
+	 * The availability of every range in the body, in the same order, all read at once
+	 * by one query job. Each range is checked like a single one, the first that is not
+	 * valid fails the request.
+	 */
+	@PostMapping("/reservation/availability/batch")
+	public CompletableFuture<Resources<RangeAvailability>> availabilityBatch(@RequestBody List<DateRange> ranges) {
+		return availabilityOfRanges(Reservation.DEFAULT_SITE, ranges,
+				() -> linkTo(methodOn(ReservationController.class).availabilityBatch(null)).withSelfRel());
+	}
+
+	@PostMapping("/site/{siteId}/reservation/availability/batch")
+	public CompletableFuture<Resources<RangeAvailability>> siteAvailabilityBatch(@PathVariable("siteId") String siteId,
+			@RequestBody List<DateRange> ranges) {
+		checkSiteId(siteId);
+		return availabilityOfRanges(siteId, ranges,
+				() -> linkTo(methodOn(ReservationController.class).siteAvailabilityBatch(siteId, null)).withSelfRel());
+	}
+
+	@GetMapping("/reservation/availability/feed")
+	public SseEmitter availabilityFeed() {
+		return feed(Reservation.DEFAULT_SITE);
 	}
 
+	@GetMapping("/site/{siteId}/reservation/availability/feed")
+	public SseEmitter siteAvailabilityFeed(@PathVariable("siteId") String siteId) {
+		checkSiteId(siteId);
+		return feed(siteId);
+	}
+
+	/*
+	 * Reserves on the site given in the body, or DEFAULT_SITE if it has none. A retry
+	 * sending the Idempotency-Key of an earlier request is answered as that one was.
+	 */
 	@PostMapping("/reservation/reserve")
-	public Resource<Reservation> reserve(@RequestBody Reservation newReservation) {
-		try {
-			log.info("Attempting to create a new reservation");
-			Reservation reservation = updateExecutorService.submit(mReservationJobFactory.getJob(newReservation)).get();
-			return mAssembler.toResource(reservation);
-		} catch (InterruptedException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
-		} catch (ExecutionException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+	public CompletableFuture<Resource<Reservation>> reserve(@RequestBody Reservation newReservation,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+		log.info("Attempting to create a new reservation");
+		if (newReservation.getSiteId() == null) {
+			newReservation.setSiteId(Reservation.DEFAULT_SITE);
+		}
+		checkSiteId(newReservation.getSiteId());
+		if (newReservation.getId() == null) {
+			newReservation.setId(UUID.randomUUID());
 		}
+		return mIdempotencyStore.execute(idempotencyKey, fingerprint("reserve", newReservation), () -> {
+			List<Link> links = mAssembler.getLinks(newReservation.getId());
+			if (ReservationConfig.ENABLE_GROUP_COMMIT) {
+				return write(deadline -> mReservationBatchWriter.reserve(newReservation, deadline),
+						reservation -> mAssembler.toResource(reservation, links), HttpStatus.BAD_REQUEST);
+			}
+			return submit(mUpdateAdmission, mReservationJobFactory.getJob(newReservation),
+					reservation -> mAssembler.toResource(reservation, links), HttpStatus.BAD_REQUEST);
+		});
+	}
+
+	@PostMapping("/site/{siteId}/reservation/reserve")
+	public CompletableFuture<Resource<Reservation>> siteReserve(@PathVariable("siteId") String siteId,
+			@RequestBody Reservation newReservation,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+		newReservation.setSiteId(siteId);
+		return reserve(newReservation, idempotencyKey);
 	}
 
 	@PutMapping("/reservation/modify/{id}")
-	public Resource<Reservation> modify(@RequestBody Reservation modReservation, @PathVariable String id) {
+	public CompletableFuture<Resource<Reservation>> modify(@RequestBody Reservation modReservation,
+			@PathVariable String id, @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
 		try {
 			log.info("Attempting to modify reservation with id " + id);
 			UUID uuid = UUID.fromString(id);
-			Reservation reservation = updateExecutorService
-					.submit(mUpdateReservationJobFactory.getJob(uuid, modReservation)).get();
-			return mAssembler.toResource(reservation);
-		} catch (InterruptedException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+			List<Link> links = mAssembler.getLinks(uuid);
+			return mIdempotencyStore.execute(idempotencyKey, fingerprint("modify " + uuid, modReservation), () -> {
+				if (ReservationConfig.ENABLE_GROUP_COMMIT) {
+					return write(deadline -> mReservationBatchWriter.modify(uuid, modReservation, deadline),
+							reservation -> mAssembler.toResource(reservation, links), HttpStatus.BAD_REQUEST);
+				}
+				return submit(mUpdateAdmission, mUpdateReservationJobFactory.getJob(uuid, modReservation),
+						reservation -> mAssembler.toResource(reservation, links), HttpStatus.BAD_REQUEST);
+			});
 		} catch (IllegalArgumentException exception) {
 			log.error(exception.getMessage());
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Id, Id should be in the form if a UUID.",
 					exception);
-		} catch (ExecutionException exception) {
-			log.error(exception.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage(), exception);
 		}
 	}
 
 	@DeleteMapping("/reservation/cancel/{id}")
-	ResponseEntity<?> cancel(@PathVariable String id) {
+	CompletableFuture<ResponseEntity<?>> cancel(@PathVariable String id) {
 		try {
 			log.info("Attempting to cancel reservation with id " + id);
 			UUID uuid = UUID.fromString(id);
-			updateExecutorService.submit(mCancelReservationJobFactory.getJob(uuid)).get();
-			return ResponseEntity.noContent().build();
-		} catch (InterruptedException e) {
-			log.error(e.getMessage());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+			if (ReservationConfig.ENABLE_GROUP_COMMIT) {
+				return write(deadline -> mReservationBatchWriter.cancel(uuid, deadline), none -> ResponseEntity.noContent().build(),
+						HttpStatus.BAD_REQUEST);
+			}
+			return submit(mUpdateAdmission, mCancelReservationJobFactory.getJob(uuid),
+					none -> ResponseEntity.noContent().build(), HttpStatus.BAD_REQUEST);
 		} catch (IllegalArgumentException exception) {
 			log.error(exception.getMessage());
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Id, Id should be in the form if a UUID.",
 					exception);
-		} catch (ExecutionException exception) {
+		}
+	}
+
+	/*
+	 * Holds the dates of the reservation in the body for the given minutes, HOLD_MINUTES
+	 * by default, up to MAX_HOLD_MINUTES. Confirming the hold before it expires makes the
+	 * reservation, with the id of the hold.
+	 */
+	@PostMapping("/reservation/hold")
+	public CompletableFuture<Resource<ReservationHold>> hold(@RequestBody Reservation reservation,
+			@RequestParam(value = "minutes", required = false) Integer minutes) {
+		log.info("Attempting to hold dates for a new reservation");
+		if (reservation.getSiteId() == null) {
+			reservation.setSiteId(Reservation.DEFAULT_SITE);
+		}
+		checkSiteId(reservation.getSiteId());
+		int holdMinutes = minutes == null ? ReservationConfig.HOLD_MINUTES : minutes;
+		if (holdMinutes < 1 || holdMinutes > ReservationConfig.MAX_HOLD_MINUTES) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"A hold lasts 1 to " + ReservationConfig.MAX_HOLD_MINUTES + " minutes.");
+		}
+		if (reservation.getId() == null) {
+			reservation.setId(UUID.randomUUID());
+		}
+		List<Link> links = getHoldLinks(reservation.getId());
+		return submit(mUpdateAdmission,
+				mPlaceHoldJobFactory.getJob(reservation, Duration.ofMinutes(holdMinutes)),
+				hold -> new Resource<ReservationHold>(hold, links), HttpStatus.BAD_REQUEST);
+	}
+
+	@PostMapping("/site/{siteId}/reservation/hold")
+	public CompletableFuture<Resource<ReservationHold>> siteHold(@PathVariable("siteId") String siteId,
+			@RequestBody Reservation reservation, @RequestParam(value = "minutes", required = false) Integer minutes) {
+		reservation.setSiteId(siteId);
+		return hold(reservation, minutes);
+	}
+
+	@GetMapping("/reservation/hold/{id}")
+	public Resource<ReservationHold> findHoldById(@PathVariable String id) {
+		UUID uuid = uuid(id);
+		ReservationHold hold = mReservationHolds.get(uuid).orElseThrow(
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No such hold, it may have expired."));
+		return new Resource<ReservationHold>(hold, getHoldLinks(uuid));
+	}
+
+	@PostMapping("/reservation/hold/{id}/confirm")
+	public CompletableFuture<Resource<Reservation>> confirmHold(@PathVariable String id) {
+		log.info("Attempting to confirm hold with id " + id);
+		UUID uuid = uuid(id);
+		List<Link> links = mAssembler.getLinks(uuid);
+		return submit(mUpdateAdmission, mConfirmHoldJobFactory.getJob(uuid),
+				reservation -> mAssembler.toResource(reservation, links), HttpStatus.BAD_REQUEST);
+	}
+
+	// Frees the dates at once, without waiting for the hold to expire.
+	@DeleteMapping("/reservation/hold/{id}")
+	public ResponseEntity<?> releaseHold(@PathVariable String id) {
+		log.info("Releasing hold with id " + id);
+		if (!mReservationHolds.release(uuid(id))) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such hold, it may have expired.");
+		}
+		return ResponseEntity.noContent().build();
+	}
+
+	/*
+	 * Reserves the dates in the body if they are free, answered with the reservation.
+	 * Otherwise joins the waitlist, answered with 202 and the waiter: a cancellation or
+	 * modification freeing the dates hands them to the first waiter they fit, with the id
+	 * the waiter got here. The reservation link waits for that.
+	 */
+	@PostMapping("/reservation/waitlist")
+	public CompletableFuture<ResponseEntity<?>> joinWaitlist(@RequestBody Reservation reservation) {
+		log.info("Attempting to reserve or join the waitlist");
+		if (reservation.getSiteId() == null) {
+			reservation.setSiteId(Reservation.DEFAULT_SITE);
+		}
+		checkSiteId(reservation.getSiteId());
+		reservation.setId(UUID.randomUUID());
+		List<Link> reservationLinks = mAssembler.getLinks(reservation.getId());
+		List<Link> waiterLinks = getWaiterLinks(reservation.getId());
+		return submit(mUpdateAdmission, mJoinWaitlistJobFactory.getJob(reservation), waiter -> {
+			if (waiter.getStatus() == ReservationWaitlist.STATUS.RESERVED) {
+				return ResponseEntity.ok(mAssembler.toResource(waiter.whenReserved().join(), reservationLinks));
+			}
+			return ResponseEntity.accepted().body(new Resource<Waiter>(waiter, waiterLinks));
+		}, HttpStatus.BAD_REQUEST);
+	}
+
+	@PostMapping("/site/{siteId}/reservation/waitlist")
+	public CompletableFuture<ResponseEntity<?>> siteJoinWaitlist(@PathVariable("siteId") String siteId,
+			@RequestBody Reservation reservation) {
+		reservation.setSiteId(siteId);
+		return joinWaitlist(reservation);
+	}
+
+	@GetMapping("/reservation/waitlist/{id}")
+	public Resource<Waiter> findWaiterById(@PathVariable String id) {
+		UUID uuid = uuid(id);
+		Waiter waiter = mReservationWaitlist.get(uuid).orElseThrow(
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Not waiting, it may have been reserved."));
+		return new Resource<Waiter>(waiter, getWaiterLinks(uuid));
+	}
+
+	/*
+	 * Answered once the waiter is handed its dates, or with 410 if it leaves or its dates
+	 * can no longer be booked. A waiter that got its reservation already is answered at
+	 * once.
+	 */
+	@GetMapping("/reservation/waitlist/{id}/reservation")
+	public CompletableFuture<Resource<Reservation>> waitlistReservation(@PathVariable String id) {
+		UUID uuid = uuid(id);
+		List<Link> links = mAssembler.getLinks(uuid);
+		Optional<Waiter> waiter = mReservationWaitlist.get(uuid);
+		if (waiter.isPresent()) {
+			return respond(waiter.get().whenReserved(), reservation -> mAssembler.toResource(reservation, links),
+					HttpStatus.GONE);
+		}
+		Reservation reservation = mReservationDao.findById(uuid).orElseThrow(
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Not on the waitlist."));
+		return CompletableFuture.completedFuture(mAssembler.toResource(reservation, links));
+	}
+
+	@DeleteMapping("/reservation/waitlist/{id}")
+	public ResponseEntity<?> leaveWaitlist(@PathVariable String id) {
+		log.info("Leaving the waitlist with id " + id);
+		if (!mReservationWaitlist.leave(uuid(id))) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Not waiting, it may have been reserved.");
+		}
+		return ResponseEntity.noContent().build();
+	}
+
+	// Built on the request thread, as the links of a reservation.
+	private List<Link> getWaiterLinks(UUID id) {
+		return Arrays.asList(
+				linkTo(methodOn(ReservationController.class).findWaiterById(id.toString())).withSelfRel(),
+				linkTo(methodOn(ReservationController.class).waitlistReservation(id.toString())).withRel("reservation"),
+				linkTo(methodOn(ReservationController.class).leaveWaitlist(id.toString())).withRel("leave"));
+	}
+
+	private UUID uuid(String id) {
+		try {
+			return UUID.fromString(id);
+		} catch (IllegalArgumentException exception) {
 			log.error(exception.getMessage());
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, exception.getMessage(), exception);
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Id, Id should be in the form if a UUID.",
+					exception);
+		}
+	}
+
+	// Built on the request thread, as the links of a reservation.
+	private List<Link> getHoldLinks(UUID id) {
+		return Arrays.asList(linkTo(methodOn(ReservationController.class).findHoldById(id.toString())).withSelfRel(),
+				linkTo(methodOn(ReservationController.class).confirmHold(id.toString())).withRel("confirm"),
+				linkTo(methodOn(ReservationController.class).releaseHold(id.toString())).withRel("release"));
+	}
+
+	private ResponseEntity<StreamingResponseBody> importReservations(String siteId, InputStream body,
+			String contentType) {
+		ReservationImporter.FORMAT format;
+		try {
+			format = contentType != null && CSV.includes(MediaType.parseMediaType(contentType))
+					? ReservationImporter.FORMAT.CSV
+					: ReservationImporter.FORMAT.JSON_LINES;
+		} catch (InvalidMediaTypeException exception) {
+			throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, exception.getMessage(), exception);
 		}
+		StreamingResponseBody report = outputStream -> mReservationImporter.importReservations(body, format, siteId,
+				outputStream);
+		return ResponseEntity.ok().contentType(JSON_LINES).body(report);
+	}
+
+	private CompletableFuture<ResponseEntity<byte[]>> availabilityInRange(String siteId, String startDate,
+			String endDate, Supplier<Link[]> links) {
+		try {
+			LocalDate mStartDate = LocalDate.parse(startDate);
+			LocalDate mEndDate = LocalDate.parse(endDate);
+			checkRange(mStartDate, mEndDate);
+
+			log.info("Querying Availability of site " + siteId + " from StartDate: " + mStartDate + " to " + mEndDate);
+			return cachedAvailability(siteId, mStartDate, mEndDate, links);
+		} catch (DateRangeException e) {
+			log.error(e.getMessage());
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+		} catch (DateTimeParseException e) {
+			log.error(e.getMessage());
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dates must be in the form YYYY-MM-DD", e);
+		}
+	}
+
+	private CompletableFuture<Resources<RangeAvailability>> availabilityOfRanges(String siteId, List<DateRange> ranges,
+			Supplier<Link> link) {
+		if (ranges.isEmpty() || ranges.size() > MAX_AVAILABILITY_RANGES) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"A batch asks for 1 to " + MAX_AVAILABILITY_RANGES + " ranges.");
+		}
+		for (int i = 0; i < ranges.size(); i++) {
+			DateRange range = ranges.get(i);
+			try {
+				if (range == null || range.getStartDate() == null || range.getEndDate() == null) {
+					throw new DateRangeException("Dates must be in the form YYYY-MM-DD");
+				}
+				checkRange(range.getStartDate(), range.getEndDate());
+			} catch (DateRangeException e) {
+				log.error(e.getMessage());
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Range " + i + ": " + e.getMessage(), e);
+			}
+		}
+		log.info("Querying Availability of site " + siteId + " for " + ranges.size() + " ranges");
+
+		Link self = link.get();
+		return submit(mQueryAdmission, mQueryAvailabilityRangesJobFactory.getJob(siteId, ranges), availability -> {
+			List<RangeAvailability> results = new ArrayList<RangeAvailability>(ranges.size());
+			for (int i = 0; i < ranges.size(); i++) {
+				results.add(new RangeAvailability(ranges.get(i), availability.get(i)));
+			}
+			return new Resources<RangeAvailability>(results, self);
+		}, HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	// Only the date limits matter here, the query itself reports what is reserved.
+	private void checkRange(LocalDate startDate, LocalDate endDate) throws DateRangeException {
+		if (endDate.isBefore(startDate)) {
+			throw new DateRangeException("End date cannot be before start date");
+		}
+		RESULT validation = mLocalDateHelper.areDatesWithinLimits(startDate, endDate);
+		switch (validation) {
+		case INVALID_START:
+			throw new DateRangeException(
+					"Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_END:
+			throw new DateRangeException(
+					"Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		default:
+			return;
+		}
+	}
+
+	/*
+	 * Serves the availability response from the AvailabilityResponseCache while the
+	 * availability version of the site it was computed at is current. Otherwise the
+	 * links are built here, on the request thread, and the query job runs on the executor.
+	 *
+	 * The version also makes the ETag, a request whose If-None-Match still matches it is
+	 * answered with 304 before anything else.
+	 */
+	private CompletableFuture<ResponseEntity<byte[]>> cachedAvailability(String siteId, LocalDate startDate,
+			LocalDate endDate, Supplier<Link[]> links) {
+		long version = mReservationCache.getVersion(siteId);
+		String eTag = mAvailabilityResponseCache.getETag(startDate, endDate, version);
+		ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+		if (AvailabilityResponseCache.matches(attributes.getRequest().getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+		}
+		String baseUri = ServletUriComponentsBuilder.fromCurrentContextPath().toUriString();
+		byte[] cached = mAvailabilityResponseCache.get(baseUri, siteId, startDate, endDate, version);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(
+					ResponseEntity.ok().contentType(MediaTypes.HAL_JSON_UTF8).eTag(eTag).body(cached));
+		}
+		Link[] resourceLinks = links.get();
+		return submit(mQueryAdmission, mQueryAvailabilityJobFactory.getJob(siteId, startDate, endDate),
+				availableDates -> ResponseEntity.ok().contentType(MediaTypes.HAL_JSON_UTF8).eTag(eTag)
+						.body(mAvailabilityResponseCache.put(baseUri, siteId, startDate, endDate, version,
+								new Resources(availableDates, resourceLinks))),
+				HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	/*
+	 * Server-sent events of the site's availability changes. An "availability" event
+	 * lists the dates that became available and the ones that were taken since the last
+	 * one, a "resync" event means changes were dropped and the availability has to be
+	 * read again. The stream ends after FEED_TIMEOUT_MILLIS, clients reconnect.
+	 */
+	private SseEmitter feed(String siteId) {
+		SseEmitter emitter = new SseEmitter(FEED_TIMEOUT_MILLIS);
+		AvailabilityFeed.Subscription subscription = mAvailabilityFeed.subscribe(siteId,
+				new AvailabilityFeed.Listener() {
+					@Override
+					public void onChanges(String site, SortedMap<LocalDate, Boolean> changes) throws IOException {
+						Map<String, Object> event = new LinkedHashMap<String, Object>();
+						event.put("siteId", site);
+						event.put("available", dates(changes, true));
+						event.put("unavailable", dates(changes, false));
+						emitter.send(SseEmitter.event().name("availability").data(event, MediaType.APPLICATION_JSON));
+					}
+
+					@Override
+					public void onResync(String site) throws IOException {
+						emitter.send(SseEmitter.event().name("resync")
+								.data(Collections.singletonMap("siteId", site), MediaType.APPLICATION_JSON));
+					}
+				});
+		emitter.onCompletion(subscription::cancel);
+		emitter.onTimeout(subscription::cancel);
+		return emitter;
+	}
+
+	private List<String> dates(SortedMap<LocalDate, Boolean> changes, boolean available) {
+		return changes.entrySet().stream().filter(change -> change.getValue() == available)
+				.map(change -> change.getKey().toString()).collect(Collectors.toList());
+	}
+
+	private void checkSiteId(String siteId) {
+		if (!SITE_ID.matcher(siteId).matches()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Invalid site, a site id is made of up to 64 letters, digits, '-' and '_'.");
+		}
+	}
+
+	/*
+	 * What an Idempotency-Key is checked against when it comes again. Not the id, every
+	 * request body gets a new one.
+	 */
+	private String fingerprint(String operation, Reservation reservation) {
+		return String.join("|", operation, reservation.getSiteId(),
+				reservation.getName(), reservation.getEmail(), String.valueOf(reservation.getStartDate()),
+				String.valueOf(reservation.getEndDate()));
+	}
+
+	/*
+	 * Runs the job on the executor without holding the request thread. Requests still
+	 * waiting after spring.mvc.async.request-timeout are answered with 503, and so are
+	 * the ones admission control turns away.
+	 */
+	private <T, R> CompletableFuture<R> submit(JobAdmission admission, Callable<T> job, Function<T, R> onSuccess,
+			HttpStatus errorStatus) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mRequestTimeoutMillis);
+		return respond(admission.submit(mJobMetrics.instrument(job), deadline), onSuccess, errorStatus);
+	}
+
+	/*
+	 * Queues the write on the ReservationBatchWriter, admitted by the same admission
+	 * control and with the same deadline as the update jobs.
+	 */
+	private <T, R> CompletableFuture<R> write(LongFunction<CompletableFuture<T>> write, Function<T, R> onSuccess,
+			HttpStatus errorStatus) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mRequestTimeoutMillis);
+		return respond(mUpdateAdmission.admit(write, deadline), onSuccess, errorStatus);
+	}
+
+	/*
+	 * Completes with the job result passed through onSuccess, or with a
+	 * ResponseStatusException of errorStatus if the job failed.
+	 */
+	private <T, R> CompletableFuture<R> respond(CompletableFuture<T> job, Function<T, R> onSuccess,
+			HttpStatus errorStatus) {
+		CompletableFuture<R> response = new CompletableFuture<R>();
+		job.whenComplete((result, failure) -> {
+			Throwable exception = failure instanceof CompletionException ? failure.getCause() : failure;
+			if (exception == null) {
+				try {
+					response.complete(onSuccess.apply(result));
+					return;
+				} catch (RuntimeException mappingFailure) {
+					exception = mappingFailure;
+				}
+			}
+			log.error(exception.getMessage());
+			if (exception instanceof ServiceOverloadedException) {
+				response.completeExceptionally(exception);
+				return;
+			}
+			response.completeExceptionally(new ResponseStatusException(errorStatus, exception.toString(), exception));
+		});
+		return response;
+	}
+
+	@ExceptionHandler(ServiceOverloadedException.class)
+	ResponseEntity<?> overloaded(ServiceOverloadedException exception) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds())).build();
 	}
 
-}
\ No newline at end of file
+}
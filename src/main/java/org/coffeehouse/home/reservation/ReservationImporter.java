@@ -0,0 +1,324 @@
+package org.coffeehouse.home.reservation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.job.JobMetrics;
+import org.coffeehouse.home.reservation.job.LocalDateHelper;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.coffeehouse.home.reservation.job.ReservationDateLocks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Bulk import of new reservations, streamed: rows are read one at a time and handled
+ * BATCH_SIZE at a time, so only one batch is ever held in memory.
+ *
+ * A batch takes the date locks of all its rows at once, validates every row like a
+ * single reservation against the cache, which also holds the rows accepted before it in
+ * the batch, and saves the accepted ones with one ReservationDao.saveAll(). Every row
+ * gets a new id, ids in the input are ignored.
+ *
+ * The report has one JSON object per line and row, in row order, written after each
+ * batch, and a last line with the totals. JSON lines input that is not well formed
+ * stops the import at that row, a bad CSV row is only rejected itself.
+ */
+@Component
+@Slf4j
+class ReservationImporter {
+
+	public static final int BATCH_SIZE = 500;
+
+	public static enum FORMAT {
+		JSON_LINES, CSV
+	}
+
+	private static class Row {
+		private final long mNumber;
+		private Reservation mReservation;
+		private String mError;
+
+		private Row(long number) {
+			mNumber = number;
+		}
+	}
+
+	private interface RowReader {
+		// Null after the last row.
+		Row next() throws IOException;
+	}
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private LocalDateHelper mLocalDateHelper;
+
+	@Autowired
+	private ReservationDateLocks mReservationDateLocks;
+
+	@Autowired
+	private JobMetrics mJobMetrics;
+
+	@Autowired
+	private ObjectMapper mObjectMapper;
+
+	// The rows go to the given site, or to the site they name when siteId is null.
+	public void importReservations(InputStream input, FORMAT format, String siteId, OutputStream output)
+			throws IOException {
+		RowReader rows = format == FORMAT.CSV ? csvRows(input, siteId) : jsonRows(input, siteId);
+		long accepted = 0;
+		long rejected = 0;
+		try (JsonGenerator report = mObjectMapper.getFactory().createGenerator(output)) {
+			report.setRootValueSeparator(new SerializedString("\n"));
+			List<Row> batch = new ArrayList<Row>(BATCH_SIZE);
+			boolean more = true;
+			while (more) {
+				Row row = rows.next();
+				more = row != null;
+				if (more) {
+					batch.add(row);
+				}
+				if (batch.size() == BATCH_SIZE || (!more && !batch.isEmpty())) {
+					commit(batch);
+					for (Row done : batch) {
+						if (done.mError == null) {
+							accepted++;
+						} else {
+							rejected++;
+						}
+						write(report, done);
+					}
+					report.flush();
+					batch.clear();
+				}
+			}
+			report.writeStartObject();
+			report.writeNumberField("accepted", accepted);
+			report.writeNumberField("rejected", rejected);
+			report.writeEndObject();
+			report.writeRaw('\n');
+		}
+		log.info("Imported " + accepted + " reservations, rejected " + rejected);
+	}
+
+	private void commit(List<Row> batch) {
+		List<Reservation> candidates = batch.stream().filter(row -> row.mError == null).map(row -> row.mReservation)
+				.collect(Collectors.toList());
+		long[] stripes = mReservationDateLocks.lockAll(candidates);
+		try {
+			List<Row> accepted = new ArrayList<Row>(candidates.size());
+			Map<String, Set<Long>> claimed = new HashMap<String, Set<Long>>();
+			for (Row row : batch) {
+				if (row.mError == null) {
+					row.mError = validate(row.mReservation, claimed);
+					if (row.mError == null) {
+						accepted.add(row);
+					}
+				}
+			}
+			if (accepted.isEmpty()) {
+				return;
+			}
+			try {
+				mReservationDao.saveAll(accepted.stream().map(row -> row.mReservation).collect(Collectors.toList()));
+			} catch (RuntimeException exception) {
+				log.error("Failed to save an import batch: " + exception.getMessage());
+				accepted.forEach(row -> row.mError = "Not saved: " + exception.getMessage());
+			}
+		} finally {
+			mReservationDateLocks.unlockAll(stripes);
+		}
+	}
+
+	/*
+	 * The checks of a single reservation, with availability from the cache plus the days
+	 * claimed by the rows accepted before in the batch. Returns the reason it is
+	 * rejected, or null.
+	 */
+	private String validate(Reservation reservation, Map<String, Set<Long>> claimed) {
+		LocalDate startDate = reservation.getStartDate();
+		LocalDate endDate = reservation.getEndDate();
+		if (endDate.isBefore(startDate)) {
+			return "End date cannot be before start date";
+		}
+		RESULT validation = mLocalDateHelper.areDatesWithinLimits(startDate, endDate);
+		Set<Long> days = claimed.computeIfAbsent(reservation.getSiteId(), site -> new HashSet<Long>());
+		if (validation == RESULT.OK) {
+			boolean taken = !mReservationCache.isAvailable(reservation.getSiteId(), startDate, endDate);
+			for (long day = startDate.toEpochDay(); !taken && day <= endDate.toEpochDay(); day++) {
+				taken = days.contains(day);
+			}
+			if (taken) {
+				validation = RESULT.DATE_IN_RANGE_UNAVAILABLE;
+			}
+		}
+		mJobMetrics.recordValidation(validation);
+		switch (validation) {
+		case INVALID_START:
+			return "Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ";
+		case INVALID_END:
+			return "Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ";
+		case INVALID_RANGE:
+			return "Invalid date range. The campsite can be reserved for max 3 days.";
+		case DATE_IN_RANGE_UNAVAILABLE:
+			return "One ore more requested dates in desired range have already been reserved.";
+		default:
+			for (long day = startDate.toEpochDay(); day <= endDate.toEpochDay(); day++) {
+				days.add(day);
+			}
+			return null;
+		}
+	}
+
+	private void write(JsonGenerator report, Row row) throws IOException {
+		report.writeStartObject();
+		report.writeNumberField("row", row.mNumber);
+		if (row.mError == null) {
+			report.writeStringField("status", "accepted");
+			report.writeStringField("id", row.mReservation.getId().toString());
+		} else {
+			report.writeStringField("status", "rejected");
+			report.writeStringField("error", row.mError);
+		}
+		report.writeEndObject();
+	}
+
+	private RowReader jsonRows(InputStream input, String siteId) throws IOException {
+		JsonParser parser = mObjectMapper.getFactory().createParser(input);
+		long[] number = { 0 };
+		boolean[] stopped = { false };
+		return () -> {
+			if (stopped[0]) {
+				return null;
+			}
+			Row row = new Row(++number[0]);
+			try {
+				JsonToken token = parser.nextToken();
+				if (token == null) {
+					parser.close();
+					return null;
+				}
+				if (token != JsonToken.START_OBJECT) {
+					throw new IllegalArgumentException("Each line holds one JSON object.");
+				}
+				toReservation(row, parser.readValueAsTree(), siteId);
+			} catch (JsonProcessingException | IllegalArgumentException exception) {
+				stopped[0] = true;
+				row.mError = "Malformed JSON, the import stopped here: " + exception.getMessage();
+			}
+			return row;
+		};
+	}
+
+	// A header row names the columns: name, email, startDate, endDate and optionally siteId.
+	private RowReader csvRows(InputStream input, String siteId) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		String headerLine = reader.readLine();
+		List<String> header = headerLine != null ? splitCsv(headerLine) : new ArrayList<String>();
+		long[] number = { 0 };
+		return () -> {
+			String line;
+			do {
+				line = reader.readLine();
+				if (line == null) {
+					return null;
+				}
+			} while (line.isEmpty());
+			Row row = new Row(++number[0]);
+			List<String> values = splitCsv(line);
+			if (values.size() != header.size()) {
+				row.mError = "Expected " + header.size() + " columns, got " + values.size() + ".";
+				return row;
+			}
+			ObjectNode node = mObjectMapper.createObjectNode();
+			for (int column = 0; column < header.size(); column++) {
+				node.put(header.get(column).trim(), values.get(column));
+			}
+			toReservation(row, node, siteId);
+			return row;
+		};
+	}
+
+	private void toReservation(Row row, JsonNode node, String siteId) {
+		Reservation reservation;
+		try {
+			reservation = mObjectMapper.treeToValue(node, Reservation.class);
+		} catch (JsonProcessingException exception) {
+			row.mError = "Invalid row: " + exception.getOriginalMessage();
+			return;
+		}
+		reservation.setId(UUID.randomUUID());
+		if (siteId != null) {
+			reservation.setSiteId(siteId);
+		} else if (reservation.getSiteId() == null) {
+			reservation.setSiteId(Reservation.DEFAULT_SITE);
+		}
+		if (!ReservationController.SITE_ID.matcher(reservation.getSiteId()).matches()) {
+			row.mError = "Invalid site, a site id is made of up to 64 letters, digits, '-' and '_'.";
+		} else if (reservation.getStartDate() == null || reservation.getEndDate() == null) {
+			row.mError = "startDate and endDate are required.";
+		} else {
+			row.mReservation = reservation;
+		}
+	}
+
+	// Comma separated, a value in double quotes may hold commas and "" for a quote.
+	private static List<String> splitCsv(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString());
+		return values;
+	}
+}
@@ -3,7 +3,12 @@ package org.coffeehouse.home.reservation;
 
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.*;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
 import org.coffeehouse.home.reservation.data.Reservation;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.ResourceAssembler;
 import org.springframework.stereotype.Component;
@@ -14,8 +19,22 @@ class ReservationResourceAssembler implements ResourceAssembler<Reservation, Res
   @Override
   public Resource<Reservation> toResource(Reservation reservation) {
 
-    return new Resource<>(reservation,
-      linkTo(methodOn(ReservationController.class).findById(reservation.getId().toString())).withSelfRel(),
-      linkTo(methodOn(ReservationController.class).all()).withRel("reservations"));
+    return toResource(reservation, getLinks(reservation.getId()));
+  }
+
+  public Resource<Reservation> toResource(Reservation reservation, List<Link> links) {
+
+    return new Resource<>(reservation, links);
+  }
+
+  /*
+   * Building links needs the current request, so asynchronous endpoints call this on
+   * the request thread and attach the links once their job has finished.
+   */
+  public List<Link> getLinks(UUID id) {
+
+    return Arrays.asList(
+      linkTo(methodOn(ReservationController.class).findById(id.toString())).withSelfRel(),
+      linkTo(methodOn(ReservationController.class).all(null, null)).withRel("reservations").expand());
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Availability changes of every site, pushed to the listeners subscribed to it. The
+ * write paths publish the dates a committed write freed or took and the cache rotation
+ * publishes the dates entering and leaving the window.
+ *
+ * Publishing never waits for a listener. Every subscription buffers the changes not
+ * delivered yet, one per date, so a later change of a date replaces the earlier one
+ * and a slow listener gets the latest state in one go. Once more than
+ * MAX_PENDING_DATES dates are buffered the buffer is dropped for a resync, the
+ * listener then has to read the whole availability again.
+ *
+ * Deliveries run on the executor, one at a time per subscription. An idle subscription
+ * is an object in a set, without a buffer or a thread.
+ */
+@Slf4j
+public class AvailabilityFeed {
+
+	public static final int MAX_PENDING_DATES = 64;
+
+	public interface Listener {
+		// Each date mapped to whether it is available now, in date order.
+		void onChanges(String siteId, SortedMap<LocalDate, Boolean> changes) throws IOException;
+
+		// Changes were dropped, the listener has to read the availability again.
+		void onResync(String siteId) throws IOException;
+	}
+
+	public class Subscription {
+		private final String mSiteId;
+		private final Listener mListener;
+
+		// Guarded by this. No buffer while nothing is pending.
+		private TreeMap<LocalDate, Boolean> mPending;
+		private boolean mResync;
+		private boolean mDelivering;
+		private boolean mCancelled;
+
+		private Subscription(String siteId, Listener listener) {
+			mSiteId = siteId;
+			mListener = listener;
+		}
+
+		// No delivery starts afterwards, one running may still complete.
+		public void cancel() {
+			synchronized (this) {
+				mCancelled = true;
+				mPending = null;
+			}
+			mSubscriptions.computeIfPresent(mSiteId, (site, subscriptions) -> {
+				subscriptions.remove(this);
+				return subscriptions.isEmpty() ? null : subscriptions;
+			});
+		}
+
+		private void offer(LocalDate startDate, LocalDate endDate, boolean available) {
+			synchronized (this) {
+				if (mCancelled) {
+					return;
+				}
+				if (!mResync) {
+					if (mPending == null) {
+						mPending = new TreeMap<LocalDate, Boolean>();
+					}
+					for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+						mPending.put(date, available);
+					}
+					if (mPending.size() > MAX_PENDING_DATES) {
+						mPending = null;
+						mResync = true;
+					}
+				}
+				if (mDelivering) {
+					return;
+				}
+				mDelivering = true;
+			}
+			try {
+				mExecutor.execute(this::deliver);
+			} catch (RejectedExecutionException exception) {
+				log.warn("Dropping availability subscription of site " + mSiteId + ": " + exception.getMessage());
+				cancel();
+			}
+		}
+
+		// Until nothing is pending, what is published meanwhile goes out with the next round.
+		private void deliver() {
+			while (true) {
+				TreeMap<LocalDate, Boolean> changes;
+				boolean resync;
+				synchronized (this) {
+					changes = mPending;
+					resync = mResync;
+					mPending = null;
+					mResync = false;
+					if (mCancelled || (changes == null && !resync)) {
+						mDelivering = false;
+						return;
+					}
+				}
+				try {
+					if (resync) {
+						mListener.onResync(mSiteId);
+					} else {
+						mListener.onChanges(mSiteId, changes);
+					}
+				} catch (IOException | RuntimeException exception) {
+					log.debug("Availability listener of site " + mSiteId + " failed: " + exception.getMessage());
+					cancel();
+				}
+			}
+		}
+	}
+
+	private final ConcurrentHashMap<String, Set<Subscription>> mSubscriptions = new ConcurrentHashMap<String, Set<Subscription>>();
+
+	private final Executor mExecutor;
+
+	public AvailabilityFeed(Executor executor) {
+		mExecutor = executor;
+	}
+
+	public Subscription subscribe(@NotNull String siteId, @NotNull Listener listener) {
+		Subscription subscription = new Subscription(siteId, listener);
+		mSubscriptions.compute(siteId, (site, subscriptions) -> {
+			Set<Subscription> set = subscriptions != null ? subscriptions : ConcurrentHashMap.newKeySet();
+			set.add(subscription);
+			return set;
+		});
+		return subscription;
+	}
+
+	// The dates from startDate to endDate became available or were taken.
+	public void publish(@NotNull String siteId, @NotNull LocalDate startDate, @NotNull LocalDate endDate,
+			boolean available) {
+		Set<Subscription> subscriptions = mSubscriptions.get(siteId);
+		if (subscriptions == null) {
+			return;
+		}
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(startDate, endDate, available);
+		}
+	}
+
+	public void publish(@NotNull Reservation reservation, boolean available) {
+		publish(reservation.getSiteId(), reservation.getStartDate(), reservation.getEndDate(), available);
+	}
+
+	// Sites someone is subscribed to.
+	public Set<String> getSites() {
+		return mSubscriptions.keySet();
+	}
+
+	public int getSubscriptionCount() {
+		return mSubscriptions.values().stream().mapToInt(Set::size).sum();
+	}
+}
@@ -0,0 +1,279 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+import javax.validation.constraints.NotNull;
+
+/*
+ * Availability index keyed by epoch day. Every tracked day maps onto a slot of a
+ * ring buffer, a bitmap marks the reserved slots and a parallel int array holds the
+ * handle of the reservation occupying each slot. Day checks are O(1), range checks
+ * and scans walk the bitmap one 64 bit word at a time and never box a LocalDate.
+ *
+ * The ring tracks mCapacity consecutive days starting at mFirstDay. Days outside of
+ * that range are ignored by add() and reported as unreserved.
+ *
+ * An index is not thread safe. copy() gives an independent one to change while others
+ * keep reading the original.
+ */
+public class AvailabilityIndex {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static final int WORD_BITS = 64;
+	private static final int NO_HANDLE = -1;
+
+	private final int mCapacity;
+	private final int mMask;
+	private final long[] mReservedBits;
+	private final int[] mSlots;
+
+	// Each live handle occupies at least one slot, so capacity + 1 handles is enough
+	// to hold a full ring plus the reservation currently being added.
+	private final Reservation[] mHandles;
+	private final int[] mHandleRefs;
+	private final int[] mFreeHandles;
+	private int mFreeCount;
+
+	private long mFirstDay;
+
+	public AvailabilityIndex(@NotNull LocalDate firstDay) {
+		this(firstDay, DEFAULT_CAPACITY);
+	}
+
+	public AvailabilityIndex(@NotNull LocalDate firstDay, int days) {
+		if (days <= 0) {
+			throw new IllegalArgumentException("An availability index must track at least one day.");
+		}
+		// Round up to a power of two that fills whole words so slots can be masked.
+		mCapacity = Math.max(WORD_BITS, Integer.highestOneBit(days - 1) << 1);
+		mMask = mCapacity - 1;
+		mReservedBits = new long[mCapacity / WORD_BITS];
+		mSlots = new int[mCapacity];
+		mHandles = new Reservation[mCapacity + 1];
+		mHandleRefs = new int[mCapacity + 1];
+		mFreeHandles = new int[mCapacity + 1];
+		for (int handle = mCapacity; handle >= 0; handle--) {
+			mFreeHandles[mFreeCount++] = handle;
+		}
+		mFirstDay = firstDay.toEpochDay();
+	}
+
+	private AvailabilityIndex(AvailabilityIndex other) {
+		mCapacity = other.mCapacity;
+		mMask = other.mMask;
+		mReservedBits = other.mReservedBits.clone();
+		mSlots = other.mSlots.clone();
+		mHandles = other.mHandles.clone();
+		mHandleRefs = other.mHandleRefs.clone();
+		mFreeHandles = other.mFreeHandles.clone();
+		mFreeCount = other.mFreeCount;
+		mFirstDay = other.mFirstDay;
+	}
+
+	// Shares the reservations, which are never changed through an index.
+	public AvailabilityIndex copy() {
+		return new AvailabilityIndex(this);
+	}
+
+	public int getCapacity() {
+		return mCapacity;
+	}
+
+	public long getFirstDay() {
+		return mFirstDay;
+	}
+
+	public long getLastDay() {
+		return mFirstDay + mCapacity - 1;
+	}
+
+	public boolean isTracked(long epochDay) {
+		return epochDay >= mFirstDay && epochDay <= getLastDay();
+	}
+
+	public boolean isReserved(long epochDay) {
+		return isTracked(epochDay) && isBitSet(slot(epochDay));
+	}
+
+	public Optional<Reservation> get(long epochDay) {
+		if (!isReserved(epochDay)) {
+			return Optional.empty();
+		}
+		return Optional.of(mHandles[mSlots[slot(epochDay)]]);
+	}
+
+	/*
+	 * Marks every tracked day of the reservation as reserved. A day already held by
+	 * another reservation is handed over to the new one.
+	 */
+	public void add(@NotNull Reservation reservation) {
+		long from = Math.max(reservation.getStartDate().toEpochDay(), mFirstDay);
+		long to = Math.min(reservation.getEndDate().toEpochDay(), getLastDay());
+		if (from > to) {
+			return;
+		}
+		int handle = mFreeHandles[--mFreeCount];
+		mHandles[handle] = reservation;
+		for (long day = from; day <= to; day++) {
+			int slot = slot(day);
+			if (isBitSet(slot)) {
+				releaseSlot(slot);
+			}
+			mReservedBits[slot / WORD_BITS] |= 1L << slot;
+			mSlots[slot] = handle;
+			mHandleRefs[handle]++;
+		}
+	}
+
+	/*
+	 * Frees every day held by a reservation with the same id. Only reserved slots are
+	 * visited so the cost is bounded by the number of reserved days.
+	 */
+	public void remove(@NotNull Reservation reservation) {
+		for (int word = 0; word < mReservedBits.length; word++) {
+			long bits = mReservedBits[word];
+			while (bits != 0) {
+				int slot = word * WORD_BITS + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (mHandles[mSlots[slot]].getId().equals(reservation.getId())) {
+					releaseSlot(slot);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Moves the start of the ring forward, releasing every day that falls out of it.
+	 * Any number of days can be skipped at once.
+	 */
+	public void advanceTo(long firstDay) {
+		if (firstDay <= mFirstDay) {
+			return;
+		}
+		long dropped = Math.min(firstDay - mFirstDay, mCapacity);
+		for (long day = mFirstDay; day < mFirstDay + dropped; day++) {
+			int slot = slot(day);
+			if (isBitSet(slot)) {
+				releaseSlot(slot);
+			}
+		}
+		mFirstDay = firstDay;
+	}
+
+	/*
+	 * Returns true if any tracked day between startDay and endDay (inclusive) is
+	 * reserved.
+	 */
+	public boolean isAnyReserved(long startDay, long endDay) {
+		long from = Math.max(startDay, mFirstDay);
+		long to = Math.min(endDay, getLastDay());
+		if (from > to) {
+			return false;
+		}
+		int fromSlot = slot(from);
+		int toSlot = fromSlot + (int) (to - from);
+		if (toSlot < mCapacity) {
+			return isAnyBitSet(fromSlot, toSlot);
+		}
+		return isAnyBitSet(fromSlot, mCapacity - 1) || isAnyBitSet(0, toSlot - mCapacity);
+	}
+
+	public int countAvailable(long startDay, long endDay) {
+		return forEachAvailable(startDay, endDay, null);
+	}
+
+	/*
+	 * Calls the consumer with every tracked, unreserved day between startDay and
+	 * endDay (inclusive) in ascending order and returns the number of such days. The
+	 * consumer may be null to only count.
+	 */
+	public int forEachAvailable(long startDay, long endDay, LongConsumer consumer) {
+		long from = Math.max(startDay, mFirstDay);
+		long to = Math.min(endDay, getLastDay());
+		if (from > to) {
+			return 0;
+		}
+		int fromSlot = slot(from);
+		int toSlot = fromSlot + (int) (to - from);
+		if (toSlot < mCapacity) {
+			return scanFree(fromSlot, toSlot, from, consumer);
+		}
+		int count = scanFree(fromSlot, mCapacity - 1, from, consumer);
+		return count + scanFree(0, toSlot - mCapacity, from + (mCapacity - fromSlot), consumer);
+	}
+
+	public List<LocalDate> getAvailability(@NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		long startDay = startDate.toEpochDay();
+		long endDay = endDate.toEpochDay();
+		List<LocalDate> available = new ArrayList<LocalDate>(countAvailable(startDay, endDay));
+		forEachAvailable(startDay, endDay, day -> available.add(LocalDate.ofEpochDay(day)));
+		return available;
+	}
+
+	private int slot(long epochDay) {
+		return (int) (epochDay & mMask);
+	}
+
+	private boolean isBitSet(int slot) {
+		return (mReservedBits[slot / WORD_BITS] & (1L << slot)) != 0;
+	}
+
+	private boolean isAnyBitSet(int fromSlot, int toSlot) {
+		int fromWord = fromSlot / WORD_BITS;
+		int toWord = toSlot / WORD_BITS;
+		long firstMask = -1L << fromSlot;
+		long lastMask = -1L >>> (WORD_BITS - 1 - (toSlot % WORD_BITS));
+		if (fromWord == toWord) {
+			return (mReservedBits[fromWord] & firstMask & lastMask) != 0;
+		}
+		if ((mReservedBits[fromWord] & firstMask) != 0) {
+			return true;
+		}
+		for (int word = fromWord + 1; word < toWord; word++) {
+			if (mReservedBits[word] != 0) {
+				return true;
+			}
+		}
+		return (mReservedBits[toWord] & lastMask) != 0;
+	}
+
+	// Scans the contiguous slots fromSlot..toSlot, where fromSlot holds firstDay.
+	private int scanFree(int fromSlot, int toSlot, long firstDay, LongConsumer consumer) {
+		int count = 0;
+		for (int word = fromSlot / WORD_BITS; word <= toSlot / WORD_BITS; word++) {
+			long free = ~mReservedBits[word];
+			if (word == fromSlot / WORD_BITS) {
+				free &= -1L << fromSlot;
+			}
+			if (word == toSlot / WORD_BITS) {
+				free &= -1L >>> (WORD_BITS - 1 - (toSlot % WORD_BITS));
+			}
+			if (consumer == null) {
+				count += Long.bitCount(free);
+				continue;
+			}
+			while (free != 0) {
+				int slot = word * WORD_BITS + Long.numberOfTrailingZeros(free);
+				free &= free - 1;
+				consumer.accept(firstDay + (slot - fromSlot));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void releaseSlot(int slot) {
+		mReservedBits[slot / WORD_BITS] &= ~(1L << slot);
+		int handle = mSlots[slot];
+		mSlots[slot] = NO_HANDLE;
+		if (--mHandleRefs[handle] == 0) {
+			mHandles[handle] = null;
+			mFreeHandles[mFreeCount++] = handle;
+		}
+	}
+}
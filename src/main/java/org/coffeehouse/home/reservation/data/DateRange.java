@@ -0,0 +1,17 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// From the start to the end date inclusive.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DateRange {
+
+	private LocalDate startDate;
+	private LocalDate endDate;
+}
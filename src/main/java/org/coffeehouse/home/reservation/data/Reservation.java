@@ -3,16 +3,32 @@ package org.coffeehouse.home.reservation.data;
 import java.time.LocalDate;
 import java.util.UUID;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import lombok.Data;
 
+/*
+ * Every reservation belongs to a campsite, reservations without one are for
+ * DEFAULT_SITE.
+ *
+ * The date index leads with the site and then endDate. Range lookups ask for the
+ * reservations of one site ending on or after the start of the range, which skips all
+ * of the history in one index seek.
+ */
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_reservation_site_end_start", columnList = "siteId, endDate, startDate"))
 public class Reservation {
 
+	public static final String DEFAULT_SITE = "main";
+
 	private @Id UUID id;
+	@Column(nullable = false)
+	private String siteId = DEFAULT_SITE;
 	private String name;
 	private String email;
 	private LocalDate startDate;
@@ -30,6 +46,18 @@ public class Reservation {
 		this.id = UUID.randomUUID();
 	}
 
+	public Reservation(String siteId, String name, String email, LocalDate startDate, LocalDate endDate) {
+		this(name, email, startDate, endDate);
+		this.siteId = siteId;
+	}
+
+	// Detached copy, with the same id.
+	public Reservation(Reservation reservation) {
+		this(reservation.getSiteId(), reservation.getName(), reservation.getEmail(), reservation.getStartDate(),
+				reservation.getEndDate());
+		this.id = reservation.getId();
+	}
+
 	public UUID getId() {
 		return id;
 	}
@@ -38,6 +66,14 @@ public class Reservation {
 		this.id = id;
 	}
 
+	public String getSiteId() {
+		return siteId;
+	}
+
+	public void setSiteId(String siteId) {
+		this.siteId = siteId;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -70,4 +106,4 @@ public class Reservation {
 		this.endDate = endDate;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
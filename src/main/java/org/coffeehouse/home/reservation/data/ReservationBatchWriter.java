@@ -0,0 +1,495 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.coffeehouse.home.reservation.ReservationConfig;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.exceptions.ReservationAlreadyExistsException;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.coffeehouse.home.reservation.exceptions.ServiceOverloadedException;
+import org.coffeehouse.home.reservation.job.JobAdmission;
+import org.coffeehouse.home.reservation.job.JobMetrics;
+import org.coffeehouse.home.reservation.job.LocalDateHelper;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.coffeehouse.home.reservation.job.ReservationDateLocks;
+import org.coffeehouse.home.reservation.job.WaitlistHandoff;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Group commit writer for reservations. Callers queue reserve, modify and cancel
+ * requests and get a future back. A writer thread drains everything that is queued,
+ * validates the requests in order against the ReservationCache (applying each
+ * accepted request so the next one sees it) and persists the whole batch in one
+ * transaction, which Hibernate sends as batched inserts, updates and deletes.
+ *
+ * Requests are partitioned by site over WRITER_PARTITIONS queues, each with its own
+ * writer thread. All requests of a site go through the same queue and stay in order,
+ * sites on different queues commit in parallel. Modify and cancel are routed by the
+ * site of the existing reservation, which may still be queued itself.
+ *
+ * The queues are bounded, a write that finds its queue full or is still queued past its
+ * deadline fails with a ServiceOverloadedException. The controller admits the writes
+ * through the JobAdmission of the update jobs, which turns them away before that.
+ *
+ * Each batch takes the ReservationDateLocks of the dates it claims or frees before it
+ * validates, the same locks the jobs, holds and the importer take, so none of them
+ * can claim dates between the check of a request and the commit of its batch.
+ *
+ * The dates a cancel or modify frees go to the ReservationWaitlist through the
+ * WaitlistHandoff, as the jobs do: the waiters are claimed right after the request
+ * is applied and their reservations saved in the transaction of the batch.
+ *
+ * Each future completes with its own result: the saved reservation, or the
+ * DateRangeException / ReservationNotFoundException the request was rejected with.
+ * If the transaction fails the cache changes are undone and every accepted request
+ * of the batch fails with the cause.
+ */
+@Slf4j
+public class ReservationBatchWriter {
+
+	public static final int MAX_BATCH_SIZE = 500;
+	public static final int WRITER_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
+	private static enum OPERATION {
+		RESERVE, MODIFY, CANCEL
+	}
+
+	private static class WriteRequest {
+		private final OPERATION mOperation;
+		private final String mSiteId;
+		private final UUID mUUID;
+		private final Reservation mReservation;
+		// In System.nanoTime() terms, null if the write may wait for as long as it takes.
+		private final Long mDeadline;
+		private final CompletableFuture<Reservation> mFuture = new CompletableFuture<Reservation>();
+
+		private WriteRequest(OPERATION operation, String siteId, UUID uuid, Reservation reservation, Long deadline) {
+			mOperation = operation;
+			mSiteId = siteId;
+			mUUID = uuid;
+			mReservation = reservation;
+			mDeadline = deadline;
+		}
+
+		private boolean isExpired(long now) {
+			return mDeadline != null && now - mDeadline > 0;
+		}
+	}
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
+	@Autowired
+	private LocalDateHelper mLocalDateHelper;
+
+	@Autowired
+	private JobMetrics mJobMetrics;
+
+	@Autowired
+	private ReservationIntervalTree mIntervalTree;
+
+	@Autowired
+	private ReservationIdCache mIdCache;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationDateLocks mReservationDateLocks;
+
+	@Autowired
+	private WaitlistHandoff mWaitlistHandoff;
+
+	@Autowired
+	private PlatformTransactionManager mTransactionManager;
+
+	@Autowired
+	private MeterRegistry mMeterRegistry;
+
+	@PersistenceContext
+	private EntityManager mEntityManager;
+
+	private final List<BlockingQueue<WriteRequest>> mQueues = new ArrayList<BlockingQueue<WriteRequest>>();
+
+	private final List<Thread> mWriterThreads = new ArrayList<Thread>();
+
+	// Sites of the reservations queued but not committed yet, by id.
+	private final ConcurrentHashMap<UUID, String> mQueuedSites = new ConcurrentHashMap<UUID, String>();
+
+	private TransactionTemplate mTransactionTemplate;
+
+	private Counter mShedExpired;
+
+	private final int mQueueCapacity;
+
+	public ReservationBatchWriter(int queueCapacity) {
+		mQueueCapacity = queueCapacity;
+	}
+
+	@PostConstruct
+	public void start() {
+		mTransactionTemplate = new TransactionTemplate(mTransactionManager);
+		mShedExpired = Counter.builder(JobAdmission.JOB_SHED).tag("name", "reservationBatchWriter")
+				.tag("reason", "expired").register(mMeterRegistry);
+		for (int partition = 0; partition < WRITER_PARTITIONS; partition++) {
+			BlockingQueue<WriteRequest> queue = new ArrayBlockingQueue<WriteRequest>(mQueueCapacity);
+			Thread writerThread = new Thread(() -> drain(queue), "reservation-batch-writer-" + partition);
+			writerThread.setDaemon(true);
+			mQueues.add(queue);
+			mWriterThreads.add(writerThread);
+		}
+		mWriterThreads.forEach(Thread::start);
+	}
+
+	@PreDestroy
+	public void stop() {
+		mWriterThreads.forEach(Thread::interrupt);
+	}
+
+	public CompletableFuture<Reservation> reserve(Reservation reservation) {
+		return reserve(reservation, null);
+	}
+
+	public CompletableFuture<Reservation> modify(UUID uuid, Reservation reservation) {
+		return modify(uuid, reservation, null);
+	}
+
+	public CompletableFuture<Reservation> cancel(UUID uuid) {
+		return cancel(uuid, null);
+	}
+
+	// The deadline is in System.nanoTime() terms, the write is dropped if still queued then.
+	public CompletableFuture<Reservation> reserve(Reservation reservation, Long deadline) {
+		mQueuedSites.put(reservation.getId(), reservation.getSiteId());
+		return enqueue(new WriteRequest(OPERATION.RESERVE, reservation.getSiteId(), reservation.getId(), reservation,
+				deadline));
+	}
+
+	public CompletableFuture<Reservation> modify(UUID uuid, Reservation reservation, Long deadline) {
+		return enqueue(OPERATION.MODIFY, uuid, reservation, deadline);
+	}
+
+	public CompletableFuture<Reservation> cancel(UUID uuid, Long deadline) {
+		return enqueue(OPERATION.CANCEL, uuid, null, deadline);
+	}
+
+	// Queued reservations are only dropped once committed, so one of the two lookups finds it.
+	private CompletableFuture<Reservation> enqueue(OPERATION operation, UUID uuid, Reservation reservation,
+			Long deadline) {
+		String siteId = mQueuedSites.get(uuid);
+		if (siteId == null) {
+			Optional<Reservation> existing = mReservationDao.findById(uuid);
+			if (!existing.isPresent()) {
+				CompletableFuture<Reservation> notFound = new CompletableFuture<Reservation>();
+				notFound.completeExceptionally(new ReservationNotFoundException());
+				return notFound;
+			}
+			siteId = existing.get().getSiteId();
+		}
+		return enqueue(new WriteRequest(operation, siteId, uuid, reservation, deadline));
+	}
+
+	private CompletableFuture<Reservation> enqueue(WriteRequest request) {
+		if (!mQueues.get((request.mSiteId.hashCode() & Integer.MAX_VALUE) % mQueues.size()).offer(request)) {
+			forget(request);
+			request.mFuture.completeExceptionally(new ServiceOverloadedException("The write queue is full.", 1));
+		}
+		return request.mFuture;
+	}
+
+	// A reservation that will never be committed, findById answers for it again.
+	private void forget(WriteRequest request) {
+		if (request.mOperation == OPERATION.RESERVE) {
+			mQueuedSites.remove(request.mUUID, request.mSiteId);
+		}
+	}
+
+	private void drain(BlockingQueue<WriteRequest> queue) {
+		List<WriteRequest> batch = new ArrayList<WriteRequest>(MAX_BATCH_SIZE);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+			long now = System.nanoTime();
+			batch.removeIf(request -> {
+				if (!request.isExpired(now)) {
+					return false;
+				}
+				mShedExpired.increment();
+				forget(request);
+				request.mFuture.completeExceptionally(
+						new ServiceOverloadedException("The write waited past its deadline.", 1));
+				return true;
+			});
+			if (batch.isEmpty()) {
+				continue;
+			}
+			long[] stripes = lockBatch(batch);
+			try {
+				commit(batch);
+			} catch (RuntimeException e) {
+				log.error("Failed to commit reservation batch: " + e.getMessage());
+			} finally {
+				mReservationDateLocks.unlockAll(stripes);
+			}
+			batch.clear();
+		}
+		// Nothing will drain the queue anymore.
+		for (WriteRequest request : queue) {
+			request.mFuture.completeExceptionally(new IllegalStateException("Reservation writer stopped."));
+		}
+	}
+
+	private void commit(List<WriteRequest> batch) {
+		List<WriteRequest> accepted = new ArrayList<WriteRequest>(batch.size());
+		Deque<Runnable> undo = new ArrayDeque<Runnable>();
+		Map<WriteRequest, Reservation> results = new HashMap<WriteRequest, Reservation>();
+		Map<WriteRequest, Reservation> previousReservations = new HashMap<WriteRequest, Reservation>();
+		List<Waiter> claimed = new ArrayList<Waiter>();
+		List<Reservation> successors = new ArrayList<Reservation>();
+		try {
+			mTransactionTemplate.execute(status -> {
+				Map<UUID, Reservation> reservations = load(batch);
+				for (WriteRequest request : batch) {
+					Reservation freed = null;
+					try {
+						Reservation previous = reservations.get(request.mUUID);
+						if (previous != null) {
+							previousReservations.put(request, copy(previous));
+						}
+						results.put(request, copy(apply(request, reservations, undo)));
+						accepted.add(request);
+						if (request.mOperation != OPERATION.RESERVE) {
+							freed = previousReservations.get(request);
+						}
+					} catch (DateRangeException | ReservationAlreadyExistsException | RuntimeException exception) {
+						// Rejected before it touched the cache or the persistence context.
+						request.mFuture.completeExceptionally(exception);
+					}
+					// Outside the catch, a failure here rolls back the batch and puts the waiters back.
+					if (freed != null) {
+						handOff(freed, reservations, undo, claimed, successors);
+					}
+				}
+				return null;
+			});
+		} catch (RuntimeException exception) {
+			while (!undo.isEmpty()) {
+				undo.pop().run();
+			}
+			mWaitlistHandoff.failed(claimed);
+			accepted.forEach(request -> request.mFuture.completeExceptionally(exception));
+			throw exception;
+		} finally {
+			// Also after a rollback, availability may have been read while the batch was applied.
+			batch.stream().map(request -> request.mSiteId).distinct().forEach(mReservationCache::bumpVersion);
+			// Committed or rejected, either way findById answers for them now.
+			batch.stream().filter(request -> request.mOperation == OPERATION.RESERVE)
+					.forEach(request -> mQueuedSites.remove(request.mUUID, request.mSiteId));
+		}
+		log.debug("Committed " + accepted.size() + " of " + batch.size() + " reservation writes in one transaction");
+		if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+			for (WriteRequest request : accepted) {
+				if (previousReservations.containsKey(request)) {
+					mIntervalTree.remove(request.mUUID, previousReservations.get(request).getStartDate());
+				}
+				if (results.get(request) != null) {
+					mIntervalTree.add(results.get(request));
+				}
+			}
+			successors.forEach(mIntervalTree::add);
+		}
+		for (WriteRequest request : accepted) {
+			if (previousReservations.containsKey(request)) {
+				mAvailabilityFeed.publish(previousReservations.get(request), true);
+			}
+			if (results.get(request) != null) {
+				mIdCache.put(results.get(request));
+				mAvailabilityFeed.publish(results.get(request), false);
+			} else {
+				mIdCache.invalidate(request.mUUID);
+			}
+			request.mFuture.complete(results.get(request));
+		}
+		for (Reservation successor : successors) {
+			mIdCache.put(successor);
+			mAvailabilityFeed.publish(successor, false);
+		}
+		mWaitlistHandoff.committed(claimed, successors);
+	}
+
+	/*
+	 * Claims the waiters the freed dates let in and reserves their dates like a request
+	 * of the batch, so the requests after it see them taken. Their dates are free if the
+	 * cache, which has the batch applied so far, says so.
+	 */
+	private void handOff(Reservation freed, Map<UUID, Reservation> reservations, Deque<Runnable> undo,
+			List<Waiter> claimed, List<Reservation> successors) {
+		List<Waiter> waiters = mWaitlistHandoff.claimAvailable(freed, wanted -> mReservationCache
+				.isAvailable(freed.getSiteId(), wanted.getStartDate(), wanted.getEndDate()));
+		claimed.addAll(waiters);
+		for (Reservation successor : mWaitlistHandoff.successors(waiters)) {
+			mEntityManager.persist(successor);
+			mReservationCache.add(successor);
+			undo.push(() -> mReservationCache.remove(successor));
+			reservations.put(successor.getId(), successor);
+			successors.add(successor);
+		}
+	}
+
+	/*
+	 * Takes the date locks of the batch. If it modifies or cancels, any of its dates may
+	 * be freed, so WaitlistHandoff.lockAll() adds those of the waiters wanting them.
+	 */
+	private long[] lockBatch(List<WriteRequest> batch) {
+		List<Reservation> dates = lockedDates(batch);
+		if (batch.stream().anyMatch(request -> request.mOperation != OPERATION.RESERVE)) {
+			return mWaitlistHandoff.lockAll(dates);
+		}
+		return mReservationDateLocks.lockAll(dates);
+	}
+
+	/*
+	 * The dates of the batch for lockAll(), per site: the ones asked for and, for modify
+	 * and cancel, the ones the reservation has. Those only change through the writer of
+	 * its site, so they still hold when the batch is applied. A reservation made earlier
+	 * in the same batch is not found, its dates are in the batch already.
+	 */
+	private List<Reservation> lockedDates(List<WriteRequest> batch) {
+		List<Reservation> dates = new ArrayList<Reservation>(batch.size());
+		for (WriteRequest request : batch) {
+			Reservation wanted = request.mReservation;
+			if (wanted != null && wanted.getStartDate() != null && wanted.getEndDate() != null) {
+				dates.add(new Reservation(request.mSiteId, wanted.getName(), wanted.getEmail(), wanted.getStartDate(),
+						wanted.getEndDate()));
+			}
+			if (request.mOperation != OPERATION.RESERVE) {
+				mReservationDao.findById(request.mUUID).ifPresent(dates::add);
+			}
+		}
+		return dates;
+	}
+
+	/*
+	 * Loads every reservation the batch refers to with a single query. Reservations
+	 * created by the batch are added to the map as it is applied.
+	 */
+	private Map<UUID, Reservation> load(List<WriteRequest> batch) {
+		Set<UUID> ids = new HashSet<UUID>();
+		batch.forEach(request -> ids.add(request.mUUID));
+		Map<UUID, Reservation> reservations = new HashMap<UUID, Reservation>();
+		mEntityManager.createQuery("select r from Reservation r where r.id in :ids", Reservation.class)
+				.setParameter("ids", ids).getResultList()
+				.forEach(reservation -> reservations.put(reservation.getId(), reservation));
+		return reservations;
+	}
+
+	private Reservation apply(WriteRequest request, Map<UUID, Reservation> reservations, Deque<Runnable> undo)
+			throws DateRangeException, ReservationAlreadyExistsException {
+		switch (request.mOperation) {
+		case RESERVE:
+			if (reservations.containsKey(request.mUUID)) {
+				throw new ReservationAlreadyExistsException();
+			}
+			Reservation reservation = request.mReservation;
+			validate(reservation.getSiteId(), reservation);
+			mEntityManager.persist(reservation);
+			mReservationCache.add(reservation);
+			undo.push(() -> mReservationCache.remove(reservation));
+			reservations.put(reservation.getId(), reservation);
+			return reservation;
+		case MODIFY:
+			Reservation existing = reservations.get(request.mUUID);
+			if (existing == null) {
+				throw new ReservationNotFoundException();
+			}
+			validate(existing.getSiteId(), request.mReservation);
+			Reservation original = copy(existing);
+			existing.setName(request.mReservation.getName());
+			existing.setEmail(request.mReservation.getEmail());
+			existing.setStartDate(request.mReservation.getStartDate());
+			existing.setEndDate(request.mReservation.getEndDate());
+			mReservationCache.replace(existing);
+			undo.push(() -> mReservationCache.replace(original));
+			return existing;
+		default:
+			Reservation cancelled = reservations.remove(request.mUUID);
+			if (cancelled == null) {
+				throw new ReservationNotFoundException();
+			}
+			mEntityManager.remove(cancelled);
+			mReservationCache.remove(cancelled);
+			undo.push(() -> mReservationCache.add(cancelled));
+			return null;
+		}
+	}
+
+	// Later requests of the batch may change the managed entity, callers get a snapshot.
+	private Reservation copy(Reservation reservation) {
+		if (reservation == null) {
+			return null;
+		}
+		return new Reservation(reservation);
+	}
+
+	/*
+	 * Same checks as LocalDateHelper.isReservationValid, except that availability comes
+	 * from the cache, which already holds the writes accepted earlier in the batch. The
+	 * dates are checked on the given site, the site of the reservation being modified.
+	 */
+	private void validate(String siteId, Reservation reservation) throws DateRangeException {
+		RESULT validation = mLocalDateHelper.areDatesWithinLimits(reservation.getStartDate(), reservation.getEndDate());
+		if (validation == RESULT.OK
+				&& !mReservationCache.isAvailable(siteId, reservation.getStartDate(), reservation.getEndDate())) {
+			validation = RESULT.DATE_IN_RANGE_UNAVAILABLE;
+		}
+		mJobMetrics.recordValidation(validation);
+		switch (validation) {
+		case INVALID_START:
+			throw new DateRangeException(
+					"Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_END:
+			throw new DateRangeException(
+					"Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_RANGE:
+			throw new DateRangeException("Invalid date range. The campsite can be reserved for max 3 days.");
+		case DATE_IN_RANGE_UNAVAILABLE:
+			throw new DateRangeException("One ore more requested dates in desired range have already been reserved.");
+		default:
+			return;
+		}
+	}
+}
@@ -1,58 +1,238 @@
 package org.coffeehouse.home.reservation.data;
 
+import java.time.Clock;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.NotNull;
 
-import org.coffeehouse.home.reservation.job.LocalDateHelper;
-
+/*
+ * Caches the reserved dates of the bookable window, tomorrow up to one month in
+ * advance, on top of one AvailabilityIndex per site.
+ *
+ * A partition publishes its index as an immutable snapshot. A writer copies the
+ * current one under the partition's monitor, changes the copy and publishes it with a
+ * single volatile write, so writers of a site go one at a time and sites never wait
+ * for each other. Readers take no lock: they read the snapshot once and see every
+ * change either completely or not at all. replace() moves a reservation in one step.
+ *
+ * A partition is created by the first reservation added for its site. A site without
+ * one has nothing reserved, looking it up does not create it.
+ *
+ * The window is one immutable Window shared by all sites. rotate() builds the window of
+ * today on the clock and swaps it in with a single reference update, so a reader takes
+ * it once and never sees the start of one window with the end of another.
+ *
+ * Every partition also carries the availability version of its site. Writers bump it
+ * once their change is committed and rotate() bumps all of them, so anything computed
+ * from availability can be tagged with the version it was read at and dropped once
+ * that is no longer current. The methods without a site are for DEFAULT_SITE.
+ */
 public class ReservationCache {
 
-	@NotNull
-	private LocalDateHelper mLocalDateHelper;
+	// The bookable dates, from the start to the end date inclusive.
+	public static final class Window {
+		private final LocalDate mStartDate;
+		private final LocalDate mEndDate;
+		private final long mRotations;
+
+		private Window(LocalDate startDate, LocalDate endDate, long rotations) {
+			mStartDate = startDate;
+			mEndDate = endDate;
+			mRotations = rotations;
+		}
+
+		public LocalDate getStartDate() {
+			return mStartDate;
+		}
+
+		public LocalDate getEndDate() {
+			return mEndDate;
+		}
+	}
+
+	private static class Partition {
+		// Never changed once published, writers replace it under the partition's monitor.
+		private volatile AvailabilityIndex mAvailabilityIndex;
+		private final AtomicLong mVersion = new AtomicLong();
+
+		private Partition(AvailabilityIndex availabilityIndex) {
+			mAvailabilityIndex = availabilityIndex;
+		}
+
+		private void update(Consumer<AvailabilityIndex> change) {
+			synchronized (this) {
+				AvailabilityIndex next = mAvailabilityIndex.copy();
+				change.accept(next);
+				mAvailabilityIndex = next;
+			}
+		}
+	}
+
+	private final ConcurrentHashMap<String, Partition> mPartitions = new ConcurrentHashMap<String, Partition>();
+
+	private final AtomicReference<Window> mWindow;
 
-	@NotNull
-	private Map<LocalDate, Reservation> mReservationMap;
+	private final Clock mClock;
 
-	public ReservationCache(Map<LocalDate, Reservation> reservationMap, LocalDateHelper localDateHelper) {
-		mReservationMap = reservationMap;
-		mLocalDateHelper = localDateHelper;
+	public ReservationCache(AvailabilityIndex availabilityIndex, LocalDate windowStart, LocalDate windowEnd) {
+		this(availabilityIndex, windowStart, windowEnd, Clock.systemDefaultZone());
+	}
+
+	public ReservationCache(AvailabilityIndex availabilityIndex, LocalDate windowStart, LocalDate windowEnd,
+			Clock clock) {
+		mPartitions.put(Reservation.DEFAULT_SITE, new Partition(availabilityIndex));
+		mWindow = new AtomicReference<Window>(new Window(windowStart, windowEnd, 0));
+		mClock = clock;
 	}
 
 	public void add(Reservation reservation) {
-		List<LocalDate> reserveDates = mLocalDateHelper.getDatesWithinRange(reservation.getStartDate(),
-				reservation.getEndDate());
-		reserveDates.stream().forEach(date -> mReservationMap.put(date, reservation));
+		mPartitions.computeIfAbsent(reservation.getSiteId(), this::newPartition).update(index -> index.add(reservation));
 	}
 
 	public void remove(Reservation reservation) {
-		mReservationMap.keySet().stream().filter(date -> mReservationMap.get(date) != null)
-				.filter(date -> mReservationMap.get(date).getId() == reservation.getId())
-				.forEach(date -> mReservationMap.put(date, null));
+		Partition partition = mPartitions.get(reservation.getSiteId());
+		if (partition != null) {
+			partition.update(index -> index.remove(reservation));
+		}
+	}
+
+	// Frees the days of all of them, with one change per site.
+	public void removeAll(Collection<Reservation> reservations) {
+		Map<String, List<Reservation>> sites = reservations.stream()
+				.collect(Collectors.groupingBy(Reservation::getSiteId));
+		sites.forEach((siteId, removed) -> {
+			Partition partition = mPartitions.get(siteId);
+			if (partition != null) {
+				partition.update(index -> removed.forEach(index::remove));
+			}
+		});
+	}
+
+	// Frees the days held by a reservation with the same id and takes its current dates, visible at once.
+	public void replace(Reservation reservation) {
+		mPartitions.computeIfAbsent(reservation.getSiteId(), this::newPartition).update(index -> {
+			index.remove(reservation);
+			index.add(reservation);
+		});
 	}
 
 	public List<LocalDate> getAvailability() {
-		return mReservationMap.keySet().stream().sorted().filter(date -> mReservationMap.get(date) == null)
-				.collect(Collectors.toList());
+		Window window = mWindow.get();
+		return index(Reservation.DEFAULT_SITE).getAvailability(window.mStartDate, window.mEndDate);
 	}
 
 	public List<LocalDate> getAvailability(@NotNull LocalDate startRange, @NotNull LocalDate endRange) {
-		return mReservationMap.keySet().stream().sorted().filter(date -> mReservationMap.get(date) == null)
-				.filter(date -> (date.equals(startRange) || date.isAfter(startRange))
-						&& (date.equals(endRange) || date.isBefore(endRange)))
-				.collect(Collectors.toList());
+		return getAvailability(Reservation.DEFAULT_SITE, startRange, endRange);
+	}
+
+	public List<LocalDate> getAvailability(@NotNull String siteId, @NotNull LocalDate startRange,
+			@NotNull LocalDate endRange) {
+		Window window = mWindow.get();
+		LocalDate start = startRange.isBefore(window.mStartDate) ? window.mStartDate : startRange;
+		LocalDate end = endRange.isAfter(window.mEndDate) ? window.mEndDate : endRange;
+		return index(siteId).getAvailability(start, end);
+	}
+
+	// Every range clipped to the window, all read from the same snapshot of the site.
+	public List<List<LocalDate>> getAvailability(@NotNull String siteId, @NotNull List<DateRange> ranges) {
+		Window window = mWindow.get();
+		AvailabilityIndex index = index(siteId);
+		List<List<LocalDate>> availability = new ArrayList<List<LocalDate>>(ranges.size());
+		for (DateRange range : ranges) {
+			LocalDate start = range.getStartDate().isBefore(window.mStartDate) ? window.mStartDate : range.getStartDate();
+			LocalDate end = range.getEndDate().isAfter(window.mEndDate) ? window.mEndDate : range.getEndDate();
+			availability.add(index.getAvailability(start, end));
+		}
+		return availability;
+	}
+
+	public boolean isAvailable(@NotNull LocalDate startRange, @NotNull LocalDate endRange) {
+		return isAvailable(Reservation.DEFAULT_SITE, startRange, endRange);
+	}
+
+	public boolean isAvailable(@NotNull String siteId, @NotNull LocalDate startRange, @NotNull LocalDate endRange) {
+		Partition partition = mPartitions.get(siteId);
+		return partition == null
+				|| !partition.mAvailabilityIndex.isAnyReserved(startRange.toEpochDay(), endRange.toEpochDay());
 	}
 
 	public Optional<Reservation> get(LocalDate date) {
-		return Optional.ofNullable(mReservationMap.get(date));
+		return get(Reservation.DEFAULT_SITE, date);
+	}
+
+	public Optional<Reservation> get(@NotNull String siteId, LocalDate date) {
+		Partition partition = mPartitions.get(siteId);
+		return partition != null ? partition.mAvailabilityIndex.get(date.toEpochDay()) : Optional.empty();
+	}
+
+	public Window getWindow() {
+		return mWindow.get();
+	}
+
+	/*
+	 * Moves the window to the one of today on the clock, however many days were missed,
+	 * and returns the window it replaced. The partitions drop the days before today only
+	 * once the new window is published, a reader still holding the old window finds
+	 * those days untracked and leaves them out rather than listing them as free.
+	 */
+	public Window rotate() {
+		LocalDate today = LocalDate.now(mClock);
+		Window previous;
+		Window next;
+		do {
+			previous = mWindow.get();
+			next = new Window(today.plusDays(1), today.plusMonths(1), previous.mRotations + 1);
+		} while (!mWindow.compareAndSet(previous, next));
+
+		for (Partition partition : mPartitions.values()) {
+			partition.update(index -> index.advanceTo(today.toEpochDay()));
+			partition.mVersion.incrementAndGet();
+		}
+		return previous;
+	}
+
+	public long getVersion() {
+		return getVersion(Reservation.DEFAULT_SITE);
+	}
+
+	/*
+	 * A site without a partition only changes when the window rotates. Its versions are
+	 * negative, so they never match those of a partition created later.
+	 */
+	public long getVersion(@NotNull String siteId) {
+		Partition partition = mPartitions.get(siteId);
+		return partition != null ? partition.mVersion.get() : Long.MIN_VALUE + mWindow.get().mRotations;
+	}
+
+	public void bumpVersion() {
+		bumpVersion(Reservation.DEFAULT_SITE);
+	}
+
+	// Nothing to bump for a site without a partition, nothing was added for it.
+	public void bumpVersion(@NotNull String siteId) {
+		Partition partition = mPartitions.get(siteId);
+		if (partition != null) {
+			partition.mVersion.incrementAndGet();
+		}
+	}
+
+	// Sites without a partition read as an empty index.
+	private AvailabilityIndex index(String siteId) {
+		Partition partition = mPartitions.get(siteId);
+		return (partition != null ? partition : newPartition(siteId)).mAvailabilityIndex;
 	}
 
-	public void rotate() {
-		mReservationMap.remove(LocalDate.now()); // Remove Today
-		mReservationMap.put(LocalDate.now().plusMonths(1), null); // Add one month from Tomorrow
+	private Partition newPartition(String siteId) {
+		return new Partition(new AvailabilityIndex(mWindow.get().mStartDate.minusDays(1)));
 	}
 }
@@ -1,21 +1,60 @@
 package org.coffeehouse.home.reservation.data;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 
 public interface ReservationDao {
 
 	public Reservation save( Reservation reservation );
+
+	// One at a time unless the implementation writes them in one go.
+	public default List<Reservation> saveAll( List<Reservation> reservations ) {
+		List<Reservation> saved = new ArrayList<Reservation>( reservations.size() );
+		for ( Reservation reservation : reservations ) {
+			saved.add( save( reservation ) );
+		}
+		return saved;
+	}
 	
+	// Keeps the site of the reservation, a reservation never moves to another site.
 	public Reservation modify( UUID uuid, Reservation reservation ) throws ReservationNotFoundException ;
 	
 	public void cancel( UUID uuid ) throws ReservationNotFoundException ;
+
+	/*
+	 * The successors take over dates the change frees, they are saved with it in one
+	 * commit where the implementation can.
+	 */
+	public default Reservation modify( UUID uuid, Reservation reservation, List<Reservation> successors )
+			throws ReservationNotFoundException {
+		Reservation modified = modify( uuid, reservation );
+		saveAll( successors );
+		return modified;
+	}
+
+	public default void cancel( UUID uuid, List<Reservation> successors ) throws ReservationNotFoundException {
+		cancel( uuid );
+		saveAll( successors );
+	}
 	
 	public Optional<Reservation> findById( UUID uuid );
 	
-	public Collection<Reservation> findReservationInRange( LocalDate startDate, LocalDate endDate );
+	public Collection<Reservation> findReservationInRange( String siteId, LocalDate startDate, LocalDate endDate );
+
+	public default Collection<Reservation> findReservationInRange( LocalDate startDate, LocalDate endDate ) {
+		return findReservationInRange( Reservation.DEFAULT_SITE, startDate, endDate );
+	}
+
+	// Up to size reservations ordered by id, starting after the given id or from the first one if it is null.
+	public List<Reservation> findPage( UUID after, int size );
+
+	// Hands every reservation to the consumer one at a time, without loading the whole table.
+	public void forEachReservation( Consumer<Reservation> consumer );
 }
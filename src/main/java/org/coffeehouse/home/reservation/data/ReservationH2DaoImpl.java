@@ -2,11 +2,22 @@ package org.coffeehouse.home.reservation.data;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.coffeehouse.home.reservation.ReservationConfig;
 import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,6 +29,24 @@ public class ReservationH2DaoImpl implements ReservationDao {
 	@Autowired
 	private ReservationCache mReservationCache;
 
+	@Autowired
+	private ReservationIntervalTree mIntervalTree;
+
+	@Autowired
+	private ReservationIdCache mIdCache;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
+	@Autowired
+	private PlatformTransactionManager mTransactionManager;
+
+	@PersistenceContext
+	private EntityManager mEntityManager;
+
+	// Guarded by mIntervalTree.
+	private boolean mIntervalTreeLoaded;
+
 	public ReservationH2DaoImpl(ReservationRepository repository) {
 		this.repository = repository;
 	}
@@ -25,28 +54,81 @@ public class ReservationH2DaoImpl implements ReservationDao {
 	@Override
 	public Reservation save(Reservation reservation) {
 		mReservationCache.add(reservation);
-		Reservation saved = repository.save(reservation);
+		Reservation saved;
+		try {
+			saved = repository.save(reservation);
+			mIdCache.put(saved);
+			if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+				getIntervalTree().add(saved);
+			}
+		} finally {
+			mReservationCache.bumpVersion(reservation.getSiteId());
+		}
+		mAvailabilityFeed.publish(saved, false);
 		log.debug("Saved reservation with uuid: " + saved.getId());
 		return saved;
 	}
 
+	/*
+	 * Persists the new reservations in one transaction, which Hibernate sends as batched
+	 * inserts. As with save() they are in the cache before the commit, they are taken out
+	 * again if it fails. They are detached once flushed, an entity manager kept open for
+	 * the request would otherwise check every earlier batch again on each flush.
+	 */
+	@Override
+	public List<Reservation> saveAll(List<Reservation> reservations) {
+		reservations.forEach(mReservationCache::add);
+		try {
+			new TransactionTemplate(mTransactionManager).execute(status -> {
+				persistAll(reservations);
+				return null;
+			});
+		} catch (RuntimeException exception) {
+			reservations.forEach(mReservationCache::remove);
+			throw exception;
+		} finally {
+			reservations.stream().map(Reservation::getSiteId).distinct().forEach(mReservationCache::bumpVersion);
+		}
+		for (Reservation saved : reservations) {
+			mIdCache.put(saved);
+			if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+				getIntervalTree().add(saved);
+			}
+			mAvailabilityFeed.publish(saved, false);
+		}
+		log.debug("Saved " + reservations.size() + " reservations in one transaction");
+		return reservations;
+	}
+
 	@Override
 	public Reservation modify(UUID uuid, Reservation modified) throws ReservationNotFoundException {
 		log.debug("Modifying reservation with uuid: " + uuid);
-		try {
-			return repository.findById(uuid).map(reservation -> {
-				mReservationCache.remove(reservation);
-				reservation.setName(modified.getName());
-				reservation.setEmail(modified.getEmail());
-				reservation.setStartDate(modified.getStartDate());
-				reservation.setEndDate(modified.getEndDate());
-				mReservationCache.add(reservation);
-				return repository.save(reservation);
-			}).orElseThrow(ReservationNotFoundException::new);
-		} catch( ReservationNotFoundException exception ) {
+		Optional<Reservation> found = repository.findById(uuid);
+		if (!found.isPresent()) {
 			log.error("Failed to modify reservation with uuid: " + uuid);
 			throw new ReservationNotFoundException();
 		}
+		Reservation reservation = found.get();
+		try {
+			LocalDate previousStartDate = reservation.getStartDate();
+			LocalDate previousEndDate = reservation.getEndDate();
+			reservation.setName(modified.getName());
+			reservation.setEmail(modified.getEmail());
+			reservation.setStartDate(modified.getStartDate());
+			reservation.setEndDate(modified.getEndDate());
+			mReservationCache.replace(reservation);
+			Reservation saved = repository.save(reservation);
+			mIdCache.put(saved);
+			if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+				getIntervalTree().remove(uuid, previousStartDate);
+				getIntervalTree().add(saved);
+			}
+			mAvailabilityFeed.publish(saved.getSiteId(), previousStartDate, previousEndDate, true);
+			mAvailabilityFeed.publish(saved, false);
+			return saved;
+		} finally {
+			mReservationCache.bumpVersion(reservation.getSiteId());
+		}
 	}
 
 	@Override
@@ -58,17 +140,188 @@ public class ReservationH2DaoImpl implements ReservationDao {
 			throw new ReservationNotFoundException();
 		}
 		mReservationCache.remove(reservation.get());
-		repository.deleteById(uuid);
+		try {
+			repository.deleteById(uuid);
+			mIdCache.invalidate(uuid);
+			if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+				getIntervalTree().remove(uuid, reservation.get().getStartDate());
+			}
+			mAvailabilityFeed.publish(reservation.get(), true);
+		} finally {
+			mReservationCache.bumpVersion(reservation.get().getSiteId());
+		}
+	}
+
+	/*
+	 * The change and the successors commit in one transaction. Like saveAll() the cache
+	 * takes the change before and gets it back should the commit fail. The version, the
+	 * lookups and the feed only learn about it once it is committed, so a read that
+	 * overlaps the commit never sees the new version with the old rows.
+	 */
+	@Override
+	public Reservation modify(UUID uuid, Reservation modified, List<Reservation> successors)
+			throws ReservationNotFoundException {
+		if (successors.isEmpty()) {
+			return modify(uuid, modified);
+		}
+		Reservation previous = previous(uuid);
+		Reservation changed = new Reservation(previous);
+		changed.setName(modified.getName());
+		changed.setEmail(modified.getEmail());
+		changed.setStartDate(modified.getStartDate());
+		changed.setEndDate(modified.getEndDate());
+		mReservationCache.replace(changed);
+		successors.forEach(mReservationCache::add);
+		try {
+			new TransactionTemplate(mTransactionManager).execute(status -> {
+				Reservation reservation = repository.findById(uuid).orElseThrow(ReservationNotFoundException::new);
+				reservation.setName(changed.getName());
+				reservation.setEmail(changed.getEmail());
+				reservation.setStartDate(changed.getStartDate());
+				reservation.setEndDate(changed.getEndDate());
+				persistAll(successors);
+				return null;
+			});
+		} catch (RuntimeException exception) {
+			restore(previous, successors);
+			throw exception;
+		} finally {
+			bumpVersions(previous, successors);
+		}
+		mIdCache.put(changed);
+		if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+			getIntervalTree().remove(uuid, previous.getStartDate());
+			getIntervalTree().add(changed);
+		}
+		mAvailabilityFeed.publish(previous, true);
+		mAvailabilityFeed.publish(changed, false);
+		committed(successors);
+		return changed;
+	}
+
+	@Override
+	public void cancel(UUID uuid, List<Reservation> successors) throws ReservationNotFoundException {
+		if (successors.isEmpty()) {
+			cancel(uuid);
+			return;
+		}
+		Reservation previous = previous(uuid);
+		mReservationCache.remove(previous);
+		successors.forEach(mReservationCache::add);
+		try {
+			new TransactionTemplate(mTransactionManager).execute(status -> {
+				repository.deleteById(uuid);
+				persistAll(successors);
+				return null;
+			});
+		} catch (RuntimeException exception) {
+			restore(previous, successors);
+			throw exception;
+		} finally {
+			bumpVersions(previous, successors);
+		}
+		mIdCache.invalidate(uuid);
+		if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+			getIntervalTree().remove(uuid, previous.getStartDate());
+		}
+		mAvailabilityFeed.publish(previous, true);
+		committed(successors);
 	}
 
 	@Override
 	public Optional<Reservation> findById(UUID uuid) {
-		return repository.findById(uuid);
+		return mIdCache.get(uuid, repository::findById);
+	}
+
+	@Override
+	public Collection<Reservation> findReservationInRange(String siteId, LocalDate startDate, LocalDate endDate) {
+		if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+			// One tree for every site, a range only overlaps a few reservations of each.
+			return getIntervalTree().findOverlapping(startDate, endDate).stream()
+					.filter(reservation -> reservation.getSiteId().equals(siteId)).collect(Collectors.toList());
+		}
+		return repository.findSiteReservationsWithinDates(siteId, startDate, endDate);
+	}
+
+	@Override
+	public List<Reservation> findPage(UUID after, int size) {
+		PageRequest page = PageRequest.of(0, size);
+		return after == null ? repository.findAllByOrderByIdAsc(page)
+				: repository.findByIdGreaterThanOrderByIdAsc(after, page);
 	}
 
+	/*
+	 * Scrolls through the table in a read-only transaction. Every reservation is
+	 * detached once the consumer is done with it, so the persistence context stays
+	 * empty however many rows there are.
+	 */
 	@Override
-	public Collection<Reservation> findReservationInRange(LocalDate startDate, LocalDate endDate) {
-		return repository.findReservationsWithinDates(startDate, endDate);
+	public void forEachReservation(Consumer<Reservation> consumer) {
+		TransactionTemplate transaction = new TransactionTemplate(mTransactionManager);
+		transaction.setReadOnly(true);
+		transaction.execute(status -> {
+			try (Stream<Reservation> reservations = repository.streamAll()) {
+				reservations.forEach(reservation -> {
+					consumer.accept(reservation);
+					mEntityManager.detach(reservation);
+				});
+			}
+			return null;
+		});
+	}
+
+	// A detached copy as it is in the table.
+	private Reservation previous(UUID uuid) {
+		return repository.findById(uuid).map(Reservation::new).orElseThrow(() -> {
+			log.error("Failed to change reservation with uuid: " + uuid);
+			return new ReservationNotFoundException();
+		});
+	}
+
+	// Inside the caller's transaction, detached once flushed as in saveAll().
+	private void persistAll(List<Reservation> reservations) {
+		reservations.forEach(mEntityManager::persist);
+		mEntityManager.flush();
+		reservations.forEach(mEntityManager::detach);
+	}
+
+	private void committed(List<Reservation> successors) {
+		for (Reservation saved : successors) {
+			mIdCache.put(saved);
+			if (ReservationConfig.ENABLE_INTERVAL_TREE_LOOKUP) {
+				getIntervalTree().add(saved);
+			}
+			mAvailabilityFeed.publish(saved, false);
+		}
+		log.debug("Saved " + successors.size() + " successors with their change in one transaction");
+	}
+
+	// Gives the cache back the reservation as it is in the table, without the successors.
+	private void restore(Reservation previous, List<Reservation> successors) {
+		mReservationCache.removeAll(successors);
+		mReservationCache.replace(previous);
+	}
+
+	// Also after a rollback, availability may have been read while the cache had the change.
+	private void bumpVersions(Reservation previous, List<Reservation> successors) {
+		successors.stream().map(Reservation::getSiteId).filter(siteId -> !siteId.equals(previous.getSiteId()))
+				.distinct().forEach(mReservationCache::bumpVersion);
+		mReservationCache.bumpVersion(previous.getSiteId());
+	}
+
+	/*
+	 * Loads the interval tree from the table on first use. The load holds the tree's
+	 * monitor, so writes committed meanwhile are applied after it and not lost.
+	 */
+	private ReservationIntervalTree getIntervalTree() {
+		synchronized (mIntervalTree) {
+			if (!mIntervalTreeLoaded) {
+				repository.findAll().forEach(mIntervalTree::add);
+				mIntervalTreeLoaded = true;
+				log.info("Loaded " + mIntervalTree.size() + " reservations into the interval tree");
+			}
+		}
+		return mIntervalTree;
 	}
 
 }
@@ -0,0 +1,26 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.Instant;
+
+/*
+ * Dates held for a reservation that is not made yet, until they are confirmed or the
+ * hold expires.
+ */
+public class ReservationHold {
+
+	private final Reservation mReservation;
+	private final Instant mExpiresAt;
+
+	public ReservationHold(Reservation reservation, Instant expiresAt) {
+		mReservation = reservation;
+		mExpiresAt = expiresAt;
+	}
+
+	public Reservation getReservation() {
+		return mReservation;
+	}
+
+	public Instant getExpiresAt() {
+		return mExpiresAt;
+	}
+}
@@ -0,0 +1,246 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.TimingWheel.Timeout;
+import org.coffeehouse.home.reservation.job.ReservationDateLocks;
+import org.coffeehouse.home.reservation.job.WaitlistHandoff;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Tentative holds: dates taken for a few minutes by a reservation that is not saved
+ * yet, until the hold is confirmed into a reservation, released or expires. A held
+ * reservation is added to the ReservationCache like a saved one, so the availability
+ * and the checks reading the cache see its dates taken. isHeld() and findHoldsInRange()
+ * are for the paths reading the database.
+ *
+ * Expiry runs on one TimingWheel ticked every TICK_MILLIS by a single thread, not on a
+ * task per hold. Expired holds are released from the cache RELEASE_BATCH_SIZE at a
+ * time, with one change of the availability index per site and batch.
+ *
+ * A hold is placed and confirmed under the date locks of its dates. Release and expiry
+ * take the locks of WaitlistHandoff.lock(), the dates of the hold and those of the
+ * waiters wanting them, and hand the freed dates to the ReservationWaitlist before
+ * anyone else can reserve them. Whoever takes a hold out of the map first owns it, a
+ * hold confirmed while it expires is either saved or released, never both.
+ */
+@Slf4j
+public class ReservationHolds {
+
+	public static final int WHEEL_BUCKETS = 512;
+	public static final long TICK_MILLIS = 1000;
+	public static final int RELEASE_BATCH_SIZE = 256;
+
+	private static class Hold {
+		private final ReservationHold mHold;
+		private volatile Timeout<Hold> mTimeout;
+
+		private Hold(ReservationHold hold) {
+			mHold = hold;
+		}
+
+		private Reservation reservation() {
+			return mHold.getReservation();
+		}
+	}
+
+	private final ConcurrentHashMap<UUID, Hold> mHolds = new ConcurrentHashMap<UUID, Hold>();
+
+	private final ConcurrentHashMap<String, Set<Hold>> mSites = new ConcurrentHashMap<String, Set<Hold>>();
+
+	private final Clock mClock;
+
+	private final TimingWheel<Hold> mWheel;
+
+	private ScheduledExecutorService mTicker;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
+	@Autowired
+	private ReservationDateLocks mReservationDateLocks;
+
+	@Autowired
+	private WaitlistHandoff mWaitlistHandoff;
+
+	public ReservationHolds(Clock clock) {
+		mClock = clock;
+		mWheel = new TimingWheel<Hold>(WHEEL_BUCKETS, TICK_MILLIS, clock.millis());
+	}
+
+	@PostConstruct
+	public void start() {
+		mTicker = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "reservation-hold-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		mTicker.scheduleAtFixedRate(() -> {
+			try {
+				expire();
+			} catch (RuntimeException exception) {
+				log.error("Failed to expire reservation holds", exception);
+			}
+		}, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		mTicker.shutdown();
+	}
+
+	// The caller holds the date locks of the reservation and has checked its dates are free.
+	public ReservationHold place(@NotNull Reservation reservation, @NotNull Duration ttl) {
+		long expiresAt = mClock.millis() + ttl.toMillis();
+		Hold hold = new Hold(new ReservationHold(reservation, Instant.ofEpochMilli(expiresAt)));
+		mHolds.put(reservation.getId(), hold);
+		mSites.compute(reservation.getSiteId(), (site, holds) -> {
+			Set<Hold> set = holds != null ? holds : ConcurrentHashMap.newKeySet();
+			set.add(hold);
+			return set;
+		});
+		mReservationCache.add(reservation);
+		mReservationCache.bumpVersion(reservation.getSiteId());
+		mAvailabilityFeed.publish(reservation, false);
+		// Only once it can be found, an expiry that does not find it would never release it.
+		hold.mTimeout = mWheel.schedule(hold, expiresAt);
+		return hold.mHold;
+	}
+
+	public Optional<ReservationHold> get(@NotNull UUID id) {
+		Hold hold = mHolds.get(id);
+		return hold != null ? Optional.of(hold.mHold) : Optional.empty();
+	}
+
+	/*
+	 * Takes the hold away for it to be confirmed, its dates stay taken in the cache until
+	 * the reservation is saved over them or they are handed to release(). Null if there
+	 * is no such hold, or not anymore.
+	 */
+	public Reservation take(@NotNull UUID id) {
+		Hold hold = mHolds.remove(id);
+		if (hold == null) {
+			return null;
+		}
+		forget(hold);
+		return hold.reservation();
+	}
+
+	// False if there is no such hold, or not anymore.
+	public boolean release(@NotNull UUID id) {
+		Hold hold = mHolds.get(id);
+		if (hold == null) {
+			return false;
+		}
+		String siteId = hold.reservation().getSiteId();
+		long stripes = mWaitlistHandoff.lock(siteId, 0L, hold.reservation());
+		try {
+			Reservation reservation = take(id);
+			if (reservation == null) {
+				return false;
+			}
+			release(reservation);
+			return true;
+		} finally {
+			mReservationDateLocks.unlock(siteId, stripes);
+		}
+	}
+
+	// Frees the dates of a hold taken before, the caller holds the locks of WaitlistHandoff.lock().
+	public void release(@NotNull Reservation reservation) {
+		mReservationCache.remove(reservation);
+		mReservationCache.bumpVersion(reservation.getSiteId());
+		mAvailabilityFeed.publish(reservation, true);
+		mWaitlistHandoff.handOff(reservation);
+	}
+
+	public boolean isHeld(@NotNull String siteId, @NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		Set<Hold> holds = mSites.get(siteId);
+		return holds != null && holds.stream().anyMatch(hold -> overlaps(hold.reservation(), startDate, endDate));
+	}
+
+	public List<Reservation> findHoldsInRange(@NotNull String siteId, @NotNull LocalDate startDate,
+			@NotNull LocalDate endDate) {
+		Set<Hold> holds = mSites.get(siteId);
+		if (holds == null) {
+			return new ArrayList<Reservation>();
+		}
+		return holds.stream().map(Hold::reservation).filter(reservation -> overlaps(reservation, startDate, endDate))
+				.collect(Collectors.toList());
+	}
+
+	public int size() {
+		return mHolds.size();
+	}
+
+	/*
+	 * Advances the wheel to the clock and releases the holds that expired, returning how
+	 * many. Runs on the ticker, tests may call it after moving the clock.
+	 */
+	public synchronized int expire() {
+		List<Hold> due = mWheel.advance(mClock.millis());
+		int released = 0;
+		for (int from = 0; from < due.size(); from += RELEASE_BATCH_SIZE) {
+			List<Hold> holds = due.subList(from, Math.min(from + RELEASE_BATCH_SIZE, due.size()));
+			long[] stripes = mWaitlistHandoff
+					.lockAll(holds.stream().map(Hold::reservation).collect(Collectors.toList()));
+			try {
+				List<Reservation> batch = new ArrayList<Reservation>();
+				for (Hold hold : holds) {
+					if (mHolds.remove(hold.reservation().getId(), hold)) {
+						forget(hold);
+						batch.add(hold.reservation());
+					}
+				}
+				mReservationCache.removeAll(batch);
+				batch.stream().map(Reservation::getSiteId).distinct().forEach(mReservationCache::bumpVersion);
+				batch.forEach(reservation -> mAvailabilityFeed.publish(reservation, true));
+				batch.forEach(mWaitlistHandoff::handOff);
+				released += batch.size();
+			} finally {
+				mReservationDateLocks.unlockAll(stripes);
+			}
+		}
+		if (released > 0) {
+			log.info("Released " + released + " expired reservation holds");
+		}
+		return released;
+	}
+
+	private void forget(Hold hold) {
+		Timeout<Hold> timeout = hold.mTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		mSites.computeIfPresent(hold.reservation().getSiteId(), (site, holds) -> {
+			holds.remove(hold);
+			return holds.isEmpty() ? null : holds;
+		});
+	}
+
+	private static boolean overlaps(Reservation reservation, LocalDate startDate, LocalDate endDate) {
+		return !reservation.getStartDate().isAfter(endDate) && !reservation.getEndDate().isBefore(startDate);
+	}
+}
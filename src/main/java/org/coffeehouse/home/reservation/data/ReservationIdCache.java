@@ -0,0 +1,162 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Bounded id to reservation cache in front of findById. Lookups never lock, the
+ * reservations are kept as copies and handed out as copies.
+ *
+ * Eviction is second chance: ids are queued in insertion order and a hit marks the
+ * entry, so once the cache is full the oldest unmarked entry goes and marked ones are
+ * requeued with the mark cleared.
+ *
+ * Writers put or invalidate after their change is committed. Every write also moves
+ * the write count on, and a reservation loaded from the database is only cached if no
+ * write happened while it was loaded, so a load racing a write cannot bring back the
+ * old row.
+ *
+ * Published as cache.gets (tagged hit or miss), cache.evictions and cache.size, all
+ * tagged with cache=reservationById.
+ */
+public class ReservationIdCache {
+
+	public static final String CACHE_NAME = "reservationById";
+
+	private static class Entry {
+		private final Reservation mReservation;
+		private volatile boolean mReferenced;
+
+		private Entry(Reservation reservation) {
+			mReservation = reservation;
+		}
+	}
+
+	private final int mMaxEntries;
+
+	private final ConcurrentHashMap<UUID, Entry> mEntries = new ConcurrentHashMap<UUID, Entry>();
+
+	private final Queue<UUID> mEvictionQueue = new ConcurrentLinkedQueue<UUID>();
+
+	private final AtomicLong mWrites = new AtomicLong();
+
+	// Invalidated ids still in the eviction queue.
+	private final AtomicInteger mStale = new AtomicInteger();
+
+	private final LongAdder mHits = new LongAdder();
+	private final LongAdder mMisses = new LongAdder();
+	private final LongAdder mEvictions = new LongAdder();
+
+	@Autowired
+	private MeterRegistry mMeterRegistry;
+
+	public ReservationIdCache(int maxEntries) {
+		mMaxEntries = maxEntries;
+	}
+
+	@PostConstruct
+	public void init() {
+		FunctionCounter.builder("cache.gets", mHits, LongAdder::sum).tag("cache", CACHE_NAME).tag("result", "hit")
+				.register(mMeterRegistry);
+		FunctionCounter.builder("cache.gets", mMisses, LongAdder::sum).tag("cache", CACHE_NAME).tag("result", "miss")
+				.register(mMeterRegistry);
+		FunctionCounter.builder("cache.evictions", mEvictions, LongAdder::sum).tag("cache", CACHE_NAME)
+				.register(mMeterRegistry);
+		Gauge.builder("cache.size", mEntries, ConcurrentHashMap::size).tag("cache", CACHE_NAME)
+				.register(mMeterRegistry);
+	}
+
+	public int size() {
+		return mEntries.size();
+	}
+
+	/*
+	 * The cached reservation, or whatever loader finds for the id. A miss is cached
+	 * unless a write happened while it was loaded, ids that are not found are not.
+	 */
+	public Optional<Reservation> get(@NotNull UUID uuid, Function<UUID, Optional<Reservation>> loader) {
+		Entry entry = mEntries.get(uuid);
+		if (entry != null) {
+			mHits.increment();
+			entry.mReferenced = true;
+			return Optional.of(new Reservation(entry.mReservation));
+		}
+		mMisses.increment();
+		long writes = mWrites.get();
+		Optional<Reservation> loaded = loader.apply(uuid);
+		if (loaded.isPresent()) {
+			Reservation reservation = new Reservation(loaded.get());
+			boolean[] added = new boolean[1];
+			mEntries.computeIfAbsent(uuid, id -> {
+				if (mWrites.get() != writes) {
+					return null;
+				}
+				added[0] = true;
+				return new Entry(reservation);
+			});
+			if (added[0]) {
+				mEvictionQueue.add(uuid);
+				evict();
+			}
+		}
+		return loaded;
+	}
+
+	// Call once the reservation is committed.
+	public void put(@NotNull Reservation reservation) {
+		Entry entry = new Entry(new Reservation(reservation));
+		mWrites.incrementAndGet();
+		if (mEntries.put(reservation.getId(), entry) == null) {
+			mEvictionQueue.add(reservation.getId());
+			evict();
+		}
+	}
+
+	/*
+	 * Call once the cancellation is committed. The id stays in the eviction queue, once
+	 * there are as many of those as the cache holds they are purged in one pass.
+	 */
+	public void invalidate(@NotNull UUID uuid) {
+		mWrites.incrementAndGet();
+		if (mEntries.remove(uuid) != null && mStale.incrementAndGet() > mMaxEntries) {
+			mStale.set(0);
+			mEvictionQueue.removeIf(id -> !mEntries.containsKey(id));
+		}
+	}
+
+	// Queued ids without an entry were invalidated and are skipped.
+	private void evict() {
+		while (mEntries.size() > mMaxEntries) {
+			UUID uuid = mEvictionQueue.poll();
+			if (uuid == null) {
+				return;
+			}
+			Entry entry = mEntries.get(uuid);
+			if (entry == null) {
+				continue;
+			}
+			if (entry.mReferenced) {
+				entry.mReferenced = false;
+				mEvictionQueue.add(uuid);
+			} else if (mEntries.remove(uuid, entry)) {
+				mEvictions.increment();
+			}
+		}
+	}
+}
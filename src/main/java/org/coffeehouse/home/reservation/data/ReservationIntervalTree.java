@@ -0,0 +1,177 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import javax.validation.constraints.NotNull;
+
+/*
+ * In-memory interval tree over reservations, used by ReservationH2DaoImpl to answer
+ * range lookups when ENABLE_INTERVAL_TREE_LOOKUP is set, for databases where the date
+ * index is not available.
+ *
+ * The tree is a treap ordered by start day and id. Every node also keeps the latest
+ * end day of its subtree, so a lookup skips every subtree that ends before the range
+ * and every right subtree that starts after it. Adding, removing and looking up are
+ * logarithmic in the number of reservations, plus the number of results.
+ *
+ * The tree keeps its own copies, a Reservation handed in or returned can be changed
+ * freely. Every access goes through the tree's monitor.
+ */
+public class ReservationIntervalTree {
+
+	private static class Node {
+		private final long mStartDay;
+		private final long mEndDay;
+		private final Reservation mReservation;
+		private final int mPriority;
+		private long mMaxEndDay;
+		private Node mLeft;
+		private Node mRight;
+
+		private Node(Reservation reservation, int priority) {
+			mStartDay = reservation.getStartDate().toEpochDay();
+			mEndDay = reservation.getEndDate().toEpochDay();
+			mReservation = reservation;
+			mPriority = priority;
+			mMaxEndDay = mEndDay;
+		}
+	}
+
+	private final Random mRandom = new Random();
+
+	private Node mRoot;
+
+	private int mSize;
+
+	public synchronized int size() {
+		return mSize;
+	}
+
+	/*
+	 * Adds a copy of the reservation. A reservation with the same id and start date is
+	 * replaced.
+	 */
+	public synchronized void add(@NotNull Reservation reservation) {
+		mRoot = insert(mRoot, new Node(new Reservation(reservation), mRandom.nextInt()));
+	}
+
+	// The start date has to be the one the reservation was added with.
+	public synchronized void remove(@NotNull UUID id, @NotNull LocalDate startDate) {
+		mRoot = delete(mRoot, startDate.toEpochDay(), id);
+	}
+
+	// Reservations overlapping startDate up to and including endDate, ordered by start date.
+	public synchronized List<Reservation> findOverlapping(@NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		List<Reservation> overlapping = new ArrayList<Reservation>();
+		collect(mRoot, startDate.toEpochDay(), endDate.toEpochDay(), overlapping);
+		return overlapping;
+	}
+
+	private Node insert(Node node, Node inserted) {
+		if (node == null) {
+			mSize++;
+			return inserted;
+		}
+		int order = compare(inserted.mStartDay, inserted.mReservation.getId(), node);
+		if (order == 0) {
+			// Keeps the priority, so the heap order still holds.
+			Node replaced = new Node(inserted.mReservation, node.mPriority);
+			replaced.mLeft = node.mLeft;
+			replaced.mRight = node.mRight;
+			return update(replaced);
+		}
+		if (order < 0) {
+			node.mLeft = insert(node.mLeft, inserted);
+			if (node.mLeft.mPriority > node.mPriority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.mRight = insert(node.mRight, inserted);
+			if (node.mRight.mPriority > node.mPriority) {
+				node = rotateLeft(node);
+			}
+		}
+		return update(node);
+	}
+
+	private Node delete(Node node, long startDay, UUID id) {
+		if (node == null) {
+			return null;
+		}
+		int order = compare(startDay, id, node);
+		if (order == 0) {
+			mSize--;
+			return merge(node.mLeft, node.mRight);
+		}
+		if (order < 0) {
+			node.mLeft = delete(node.mLeft, startDay, id);
+		} else {
+			node.mRight = delete(node.mRight, startDay, id);
+		}
+		return update(node);
+	}
+
+	private void collect(Node node, long startDay, long endDay, List<Reservation> overlapping) {
+		if (node == null || node.mMaxEndDay < startDay) {
+			return;
+		}
+		collect(node.mLeft, startDay, endDay, overlapping);
+		if (node.mStartDay > endDay) {
+			return;
+		}
+		if (node.mEndDay >= startDay) {
+			overlapping.add(new Reservation(node.mReservation));
+		}
+		collect(node.mRight, startDay, endDay, overlapping);
+	}
+
+	private int compare(long startDay, UUID id, Node node) {
+		int order = Long.compare(startDay, node.mStartDay);
+		return order != 0 ? order : id.compareTo(node.mReservation.getId());
+	}
+
+	private Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.mPriority > right.mPriority) {
+			left.mRight = merge(left.mRight, right);
+			return update(left);
+		}
+		right.mLeft = merge(left, right.mLeft);
+		return update(right);
+	}
+
+	private Node rotateRight(Node node) {
+		Node left = node.mLeft;
+		node.mLeft = left.mRight;
+		left.mRight = update(node);
+		return left;
+	}
+
+	private Node rotateLeft(Node node) {
+		Node right = node.mRight;
+		node.mRight = right.mLeft;
+		right.mLeft = update(node);
+		return right;
+	}
+
+	private Node update(Node node) {
+		long maxEndDay = node.mEndDay;
+		if (node.mLeft != null && node.mLeft.mMaxEndDay > maxEndDay) {
+			maxEndDay = node.mLeft.mMaxEndDay;
+		}
+		if (node.mRight != null && node.mRight.mMaxEndDay > maxEndDay) {
+			maxEndDay = node.mRight.mMaxEndDay;
+		}
+		node.mMaxEndDay = maxEndDay;
+		return node;
+	}
+}
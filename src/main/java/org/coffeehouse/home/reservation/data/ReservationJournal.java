@@ -0,0 +1,374 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Append-only journal of reservation writes, kept in memory-mapped segment files of
+ * segmentBytes each. A segment starts with its magic and index, followed by records:
+ *
+ *   int length, int crc32 of the payload, payload
+ *
+ * The payload is the operation, the id and for reserve and modify the dates as epoch
+ * days, the site, the name and the email. A zero length marks the end of the written
+ * records, a record that does not fit into the current segment starts the next one.
+ *
+ * open() replays every record in order and appends after the last one. A record cut
+ * short or failing its checksum at the end of the last segment is what a crash in the
+ * middle of an append leaves behind, it is dropped and overwritten. Anywhere else it
+ * means the journal is damaged and open() fails.
+ *
+ * A position in the journal is the segment index in the upper and the offset in the
+ * lower 32 bits. open() can start at the position a snapshot was taken at, and the
+ * segments before it can be deleted once the snapshot is on disk.
+ *
+ * append() only copies the record into the mapped segment. sync() forces it to disk,
+ * and callers syncing at the same time share one force: whoever gets to force first
+ * covers every record appended up to then. A segment is forced before the next one is
+ * started. Without forceWrites sync() does nothing and the OS writes the pages back in
+ * its own time, which survives the process but not the machine going down.
+ */
+@Slf4j
+public class ReservationJournal {
+
+	public static enum OPERATION {
+		RESERVE, MODIFY, CANCEL
+	}
+
+	public static class Record {
+		private final OPERATION mOperation;
+		private final UUID mId;
+		private final Reservation mReservation;
+
+		private Record(OPERATION operation, UUID id, Reservation reservation) {
+			mOperation = operation;
+			mId = id;
+			mReservation = reservation;
+		}
+
+		public OPERATION getOperation() {
+			return mOperation;
+		}
+
+		public UUID getId() {
+			return mId;
+		}
+
+		// Null for CANCEL.
+		public Reservation getReservation() {
+			return mReservation;
+		}
+	}
+
+	public static final int MIN_SEGMENT_BYTES = 4096;
+
+	private static final int MAGIC = 0x52534a31;
+	private static final int SEGMENT_HEADER_BYTES = 8;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final Pattern SEGMENT_NAME = Pattern.compile("reservations-(\\d{10})\\.journal");
+
+	private final Path mDirectory;
+	private final int mSegmentBytes;
+	private final boolean mForceWrites;
+
+	private final Object mSyncLock = new Object();
+
+	// Guarded by this.
+	private MappedByteBuffer mSegment;
+	private int mSegmentIndex;
+	private long mAppended;
+	private boolean mClosed;
+
+	private volatile long mSynced;
+
+	public ReservationJournal(@NotNull Path directory, int segmentBytes, boolean forceWrites) {
+		if (segmentBytes < MIN_SEGMENT_BYTES) {
+			throw new IllegalArgumentException("A journal segment must hold at least " + MIN_SEGMENT_BYTES + " bytes.");
+		}
+		mDirectory = directory;
+		mSegmentBytes = segmentBytes;
+		mForceWrites = forceWrites;
+	}
+
+	/*
+	 * Hands every record of the journal to the consumer, oldest first, and opens the
+	 * last segment for appending. Starts an empty journal if the directory has none.
+	 */
+	public void open(Consumer<Record> consumer) throws IOException {
+		open(0L, consumer);
+	}
+
+	// Same as open(consumer), but the records before position are skipped.
+	public synchronized void open(long position, Consumer<Record> consumer) throws IOException {
+		if (mSegment != null || mClosed) {
+			throw new IllegalStateException("The journal was already opened.");
+		}
+		Files.createDirectories(mDirectory);
+		int firstIndex = (int) (position >>> 32);
+		List<Integer> indexes = segmentIndexes();
+		indexes.removeIf(index -> index < firstIndex);
+		long replayed = 0;
+		for (int i = 0; i < indexes.size(); i++) {
+			boolean last = i == indexes.size() - 1;
+			// Crashed before a new segment was mapped, it is mapped again in full.
+			int size = last && Files.size(segmentPath(indexes.get(i))) < SEGMENT_HEADER_BYTES ? mSegmentBytes : 0;
+			MappedByteBuffer segment = map(indexes.get(i), last ? MapMode.READ_WRITE : MapMode.READ_ONLY, size);
+			if (segment.getInt(0) == 0 && last) {
+				// Crashed before the header of a new segment was written.
+				segment.putInt(0, MAGIC).putInt(4, indexes.get(i));
+			} else if (segment.getInt(0) != MAGIC || segment.getInt(4) != indexes.get(i)) {
+				throw new IOException("Journal segment " + segmentPath(indexes.get(i)) + " has no valid header.");
+			}
+			int offset = indexes.get(i) == firstIndex ? Math.max((int) position, SEGMENT_HEADER_BYTES)
+					: SEGMENT_HEADER_BYTES;
+			Record record;
+			while ((record = read(segment, offset)) != null) {
+				consumer.accept(record);
+				replayed++;
+				offset += RECORD_HEADER_BYTES + segment.getInt(offset);
+			}
+			if (offset + RECORD_HEADER_BYTES <= segment.limit() && segment.getInt(offset) != 0) {
+				if (!last) {
+					throw new IOException("Journal segment " + segmentPath(indexes.get(i)) + " is damaged at "
+							+ offset + ".");
+				}
+				log.warn("Dropping the incomplete record at " + offset + " of " + segmentPath(indexes.get(i)));
+				for (int zero = offset; zero < segment.limit(); zero++) {
+					segment.put(zero, (byte) 0);
+				}
+				segment.force();
+			}
+			if (last) {
+				mSegment = segment;
+				mSegmentIndex = indexes.get(i);
+				mSegment.position(offset);
+			}
+		}
+		if (mSegment == null) {
+			startSegment(firstIndex);
+		}
+		log.info("Replayed " + replayed + " journal records from " + indexes.size() + " segments in " + mDirectory);
+	}
+
+	/*
+	 * Appends the write and returns its sequence number, to be handed to sync(). The
+	 * reservation is required for RESERVE and MODIFY and ignored for CANCEL.
+	 */
+	public long append(@NotNull OPERATION operation, @NotNull UUID id, Reservation reservation) {
+		byte[] payload = encode(operation, id, reservation);
+		if (RECORD_HEADER_BYTES + payload.length > mSegmentBytes - SEGMENT_HEADER_BYTES) {
+			throw new IllegalArgumentException("The reservation is too large for a journal segment.");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		synchronized (this) {
+			if (mSegment == null || mClosed) {
+				throw new IllegalStateException("The journal is not open.");
+			}
+			if (mSegment.remaining() < RECORD_HEADER_BYTES + payload.length) {
+				try {
+					mSegment.force();
+					startSegment(mSegmentIndex + 1);
+				} catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+			}
+			int position = mSegment.position();
+			mSegment.position(position + RECORD_HEADER_BYTES);
+			mSegment.put(payload);
+			mSegment.putInt(position + 4, (int) crc.getValue());
+			mSegment.putInt(position, payload.length);
+			return ++mAppended;
+		}
+	}
+
+	// Returns once the record with the given sequence number and all before it are on disk.
+	public void sync(long sequence) {
+		if (!mForceWrites || mSynced >= sequence) {
+			return;
+		}
+		synchronized (mSyncLock) {
+			if (mSynced >= sequence) {
+				return;
+			}
+			MappedByteBuffer segment;
+			long appended;
+			synchronized (this) {
+				segment = mSegment;
+				appended = mAppended;
+			}
+			segment.force();
+			mSynced = appended;
+		}
+	}
+
+	// The position after the last record appended.
+	public synchronized long getPosition() {
+		if (mSegment == null) {
+			throw new IllegalStateException("The journal is not open.");
+		}
+		return ((long) mSegmentIndex << 32) | mSegment.position();
+	}
+
+	/*
+	 * Deletes the segments holding only records before position, once nothing needs
+	 * to replay them any more. The current segment is never deleted.
+	 */
+	public void deleteSegmentsBefore(long position) throws IOException {
+		int firstIndex = (int) (position >>> 32);
+		int current;
+		synchronized (this) {
+			current = mSegmentIndex;
+		}
+		for (int index : segmentIndexes()) {
+			if (index < firstIndex && index < current) {
+				Files.deleteIfExists(segmentPath(index));
+			}
+		}
+	}
+
+	public synchronized void close() {
+		if (mSegment != null && !mClosed) {
+			mSegment.force();
+		}
+		mClosed = true;
+	}
+
+	private void startSegment(int index) throws IOException {
+		MappedByteBuffer segment = map(index, MapMode.READ_WRITE, mSegmentBytes);
+		segment.putInt(0, MAGIC).putInt(4, index);
+		segment.position(SEGMENT_HEADER_BYTES);
+		mSegment = segment;
+		mSegmentIndex = index;
+	}
+
+	// Maps the whole segment, or size bytes of a new one. The mapping outlives the channel.
+	private MappedByteBuffer map(int index, MapMode mode, int size) throws IOException {
+		Path path = segmentPath(index);
+		StandardOpenOption[] options = mode == MapMode.READ_ONLY ? new StandardOpenOption[] { StandardOpenOption.READ }
+				: new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE };
+		try (FileChannel channel = FileChannel.open(path, options)) {
+			return channel.map(mode, 0, size > 0 ? size : channel.size());
+		}
+	}
+
+	private Path segmentPath(int index) {
+		return mDirectory.resolve(String.format("reservations-%010d.journal", index));
+	}
+
+	private List<Integer> segmentIndexes() throws IOException {
+		List<Integer> indexes = new ArrayList<Integer>();
+		try (Stream<Path> paths = Files.list(mDirectory)) {
+			paths.forEach(path -> {
+				Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+				if (matcher.matches()) {
+					indexes.add(Integer.parseInt(matcher.group(1)));
+				}
+			});
+		}
+		Collections.sort(indexes);
+		return indexes;
+	}
+
+	// The record at position, or null at the end of the records or at one that is not intact.
+	private Record read(MappedByteBuffer segment, int position) throws IOException {
+		if (position + RECORD_HEADER_BYTES > segment.limit()) {
+			return null;
+		}
+		int length = segment.getInt(position);
+		if (length <= 0 || length > segment.limit() - position - RECORD_HEADER_BYTES) {
+			return null;
+		}
+		byte[] payload = new byte[length];
+		ByteBuffer record = segment.duplicate();
+		record.position(position + RECORD_HEADER_BYTES);
+		record.get(payload);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		if ((int) crc.getValue() != segment.getInt(position + 4)) {
+			return null;
+		}
+		return decode(payload);
+	}
+
+	private static byte[] encode(OPERATION operation, UUID id, Reservation reservation) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(operation == OPERATION.CANCEL ? 17 : 96);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(operation.ordinal());
+			out.writeLong(id.getMostSignificantBits());
+			out.writeLong(id.getLeastSignificantBits());
+			if (operation != OPERATION.CANCEL) {
+				writeReservation(out, reservation);
+			}
+		} catch (IOException exception) {
+			// Only thrown for strings over 64KB once encoded.
+			throw new IllegalArgumentException("The reservation is too large for a journal record.", exception);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Record decode(byte[] payload) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			OPERATION operation = OPERATION.values()[in.readUnsignedByte()];
+			UUID id = new UUID(in.readLong(), in.readLong());
+			if (operation == OPERATION.CANCEL) {
+				return new Record(operation, id, null);
+			}
+			return new Record(operation, id, readReservation(in, id));
+		}
+	}
+
+	// Everything but the id, shared with ReservationSnapshot.
+	static void writeReservation(DataOutputStream out, Reservation reservation) throws IOException {
+		out.writeInt((int) reservation.getStartDate().toEpochDay());
+		out.writeInt((int) reservation.getEndDate().toEpochDay());
+		writeString(out, reservation.getSiteId());
+		writeString(out, reservation.getName());
+		writeString(out, reservation.getEmail());
+	}
+
+	static Reservation readReservation(DataInputStream in, UUID id) throws IOException {
+		LocalDate startDate = LocalDate.ofEpochDay(in.readInt());
+		LocalDate endDate = LocalDate.ofEpochDay(in.readInt());
+		Reservation reservation = new Reservation(readString(in), readString(in), readString(in), startDate, endDate);
+		reservation.setId(id);
+		return reservation;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
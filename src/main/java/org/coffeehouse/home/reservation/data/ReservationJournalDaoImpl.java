@@ -0,0 +1,464 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.coffeehouse.home.reservation.data.ReservationJournal.OPERATION;
+import org.coffeehouse.home.reservation.data.ReservationJournal.Record;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Keeps the reservations in memory and makes the writes durable through a
+ * ReservationJournal, selected with ENABLE_JOURNAL instead of ReservationH2DaoImpl.
+ *
+ * Reservations are looked up in three layers, the first one holding the id wins: the
+ * changes since the last snapshot, the changes being written into the next snapshot
+ * while that runs, and the memory-mapped ReservationSnapshot. A cancellation stays in
+ * the changes as CANCELLED until a snapshot drops it.
+ *
+ * On startup the latest snapshot is mapped and only the journal records after it are
+ * replayed. The ReservationCache and the interval tree are loaded from the snapshot's
+ * window and the replayed changes, so getting ready takes as long as the reservations
+ * still ahead and the writes since the snapshot, however long the history is. The
+ * first range lookup reaching back before the snapshot's horizon adds the history to
+ * the interval tree.
+ *
+ * A snapshot is taken every snapshotIntervalMinutes and on close, unless nothing
+ * changed, and the journal segments before it are deleted once it is on disk.
+ *
+ * A write is appended to the journal and applied in memory under the DAO's monitor, so
+ * the journal replays the writes in the order they were applied. The journal is synced
+ * after the monitor is released, writers arriving meanwhile share the force. A write
+ * is visible to readers before its sync returns, the same as the cache being updated
+ * ahead of the H2 save.
+ *
+ * The layers hold their own copies, which are never changed once they are in them, so
+ * reads take no lock and hand out copies of their own.
+ */
+@Slf4j
+public class ReservationJournalDaoImpl implements ReservationDao {
+
+	private static final Reservation CANCELLED = new Reservation();
+
+	private final ReservationJournal mJournal;
+
+	private final Path mSnapshotFile;
+
+	private final long mSnapshotIntervalMinutes;
+
+	/*
+	 * Replaced when a snapshot starts, mSnapshotting first, and when it is done,
+	 * mSnapshot first. Readers go through them in the opposite order and never miss a
+	 * layer.
+	 */
+	private volatile ConcurrentSkipListMap<UUID, Reservation> mChanges = new ConcurrentSkipListMap<UUID, Reservation>();
+	private volatile ConcurrentSkipListMap<UUID, Reservation> mSnapshotting = new ConcurrentSkipListMap<UUID, Reservation>();
+	private volatile ReservationSnapshot mSnapshot = ReservationSnapshot.empty();
+
+	// Reservations ending before it are in the interval tree once the history is loaded.
+	private volatile LocalDate mTreeHorizon = LocalDate.MIN;
+	private volatile boolean mHistoryLoaded;
+
+	private final Object mSnapshotLock = new Object();
+
+	private ScheduledExecutorService mSnapshotExecutor;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private ReservationIntervalTree mIntervalTree;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
+	// A snapshotIntervalMinutes of 0 only takes snapshots on close.
+	public ReservationJournalDaoImpl(ReservationJournal journal, Path snapshotFile, long snapshotIntervalMinutes) {
+		mJournal = journal;
+		mSnapshotFile = snapshotFile;
+		mSnapshotIntervalMinutes = snapshotIntervalMinutes;
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		ReservationSnapshot snapshot = ReservationSnapshot.open(mSnapshotFile);
+		mSnapshot = snapshot;
+		mJournal.open(snapshot.getJournalPosition(), this::replay);
+		snapshot.forEachInWindow(reservation -> {
+			if (!mChanges.containsKey(reservation.getId())) {
+				index(reservation);
+			}
+		});
+		mChanges.values().stream().filter(reservation -> reservation != CANCELLED).forEach(this::index);
+		mTreeHorizon = snapshot.getHorizon();
+		log.info("Loaded a snapshot of " + snapshot.size() + " reservations and " + mChanges.size()
+				+ " changes from the journal");
+
+		if (mSnapshotIntervalMinutes > 0) {
+			mSnapshotExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "reservation-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			mSnapshotExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					snapshot();
+				} catch (IOException | RuntimeException exception) {
+					log.error("Failed to take a reservation snapshot", exception);
+				}
+			}, mSnapshotIntervalMinutes, mSnapshotIntervalMinutes, TimeUnit.MINUTES);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		if (mSnapshotExecutor != null) {
+			mSnapshotExecutor.shutdown();
+		}
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException exception) {
+			log.error("Failed to take a reservation snapshot on close, the journal still has every write", exception);
+		}
+		mJournal.close();
+	}
+
+	/*
+	 * Writes the current reservations as the new snapshot and deletes the journal
+	 * segments it covers. Writes go on meanwhile, into a new layer of changes.
+	 */
+	public void snapshot() throws IOException {
+		synchronized (mSnapshotLock) {
+			ReservationSnapshot base;
+			ConcurrentSkipListMap<UUID, Reservation> changes;
+			long position;
+			synchronized (this) {
+				if (mChanges.isEmpty()) {
+					return;
+				}
+				position = mJournal.getPosition();
+				base = mSnapshot;
+				changes = mChanges;
+				mSnapshotting = changes;
+				mChanges = new ConcurrentSkipListMap<UUID, Reservation>();
+			}
+			ReservationSnapshot snapshot;
+			try {
+				Iterator<Reservation> reservations = stream(ids(null, changes, base)).map(id -> {
+					Reservation changed = changes.get(id);
+					return changed != null ? changed : base.find(id).get();
+				}).filter(reservation -> reservation != CANCELLED).iterator();
+				ReservationSnapshot.write(mSnapshotFile, position, LocalDate.now(), reservations);
+				snapshot = ReservationSnapshot.open(mSnapshotFile);
+			} catch (IOException | RuntimeException exception) {
+				synchronized (this) {
+					// Back into the changes, behind anything written since. mSnapshotting stays
+					// until the next snapshot, readers may still be on their way to it.
+					changes.forEach(mChanges::putIfAbsent);
+				}
+				throw exception;
+			}
+			synchronized (this) {
+				mSnapshot = snapshot;
+				mSnapshotting = new ConcurrentSkipListMap<UUID, Reservation>();
+			}
+			mJournal.deleteSegmentsBefore(position);
+			log.info("Took a snapshot of " + snapshot.size() + " reservations");
+		}
+	}
+
+	@Override
+	public Reservation save(Reservation reservation) {
+		Reservation saved = new Reservation(reservation);
+		long sequence;
+		synchronized (this) {
+			sequence = append(saved);
+		}
+		mJournal.sync(sequence);
+		mAvailabilityFeed.publish(saved, false);
+		log.debug("Saved reservation with uuid: " + saved.getId());
+		return new Reservation(saved);
+	}
+
+	// Appended together and made durable by a single sync.
+	@Override
+	public List<Reservation> saveAll(List<Reservation> reservations) {
+		List<Reservation> saved = new ArrayList<Reservation>(reservations.size());
+		if (reservations.isEmpty()) {
+			return saved;
+		}
+		long sequence;
+		synchronized (this) {
+			sequence = appendAll(reservations, saved, 0);
+		}
+		mJournal.sync(sequence);
+		for (int i = 0; i < saved.size(); i++) {
+			mAvailabilityFeed.publish(saved.get(i), false);
+			saved.set(i, new Reservation(saved.get(i)));
+		}
+		log.debug("Saved " + saved.size() + " reservations with one sync");
+		return saved;
+	}
+
+	// Guarded by this. Appends copies into saved and returns the last sequence, or the given one.
+	private long appendAll(List<Reservation> reservations, List<Reservation> saved, long sequence) {
+		for (Reservation reservation : reservations) {
+			Reservation copy = new Reservation(reservation);
+			sequence = append(copy);
+			saved.add(copy);
+		}
+		return sequence;
+	}
+
+	// Guarded by this.
+	private long append(Reservation saved) {
+		try {
+			Reservation previous = current(saved.getId());
+			long sequence = mJournal.append(OPERATION.RESERVE, saved.getId(), saved);
+			mChanges.put(saved.getId(), saved);
+			if (previous != null) {
+				unindex(previous);
+			}
+			index(saved);
+			return sequence;
+		} finally {
+			mReservationCache.bumpVersion(saved.getSiteId());
+		}
+	}
+
+	@Override
+	public Reservation modify(UUID uuid, Reservation modified) throws ReservationNotFoundException {
+		return modify(uuid, modified, Collections.<Reservation>emptyList());
+	}
+
+	// The change and the successors are appended together and made durable by a single sync.
+	@Override
+	public Reservation modify(UUID uuid, Reservation modified, List<Reservation> successors)
+			throws ReservationNotFoundException {
+		log.debug("Modifying reservation with uuid: " + uuid);
+		Reservation existing;
+		Reservation reservation;
+		List<Reservation> saved = new ArrayList<Reservation>(successors.size());
+		long sequence;
+		synchronized (this) {
+			existing = current(uuid);
+			if (existing == null) {
+				log.error("Failed to modify reservation with uuid: " + uuid);
+				throw new ReservationNotFoundException();
+			}
+			reservation = new Reservation(existing);
+			reservation.setName(modified.getName());
+			reservation.setEmail(modified.getEmail());
+			reservation.setStartDate(modified.getStartDate());
+			reservation.setEndDate(modified.getEndDate());
+			try {
+				sequence = mJournal.append(OPERATION.MODIFY, uuid, reservation);
+				mChanges.put(uuid, reservation);
+				mReservationCache.replace(reservation);
+				mIntervalTree.remove(uuid, existing.getStartDate());
+				mIntervalTree.add(reservation);
+			} finally {
+				mReservationCache.bumpVersion(existing.getSiteId());
+			}
+			sequence = appendAll(successors, saved, sequence);
+		}
+		mJournal.sync(sequence);
+		mAvailabilityFeed.publish(existing, true);
+		mAvailabilityFeed.publish(reservation, false);
+		saved.forEach(successor -> mAvailabilityFeed.publish(successor, false));
+		return new Reservation(reservation);
+	}
+
+	@Override
+	public void cancel(UUID uuid) throws ReservationNotFoundException {
+		cancel(uuid, Collections.<Reservation>emptyList());
+	}
+
+	@Override
+	public void cancel(UUID uuid, List<Reservation> successors) throws ReservationNotFoundException {
+		log.debug("Cancelling reservation with uuid: " + uuid);
+		Reservation existing;
+		List<Reservation> saved = new ArrayList<Reservation>(successors.size());
+		long sequence;
+		synchronized (this) {
+			existing = current(uuid);
+			if (existing == null) {
+				log.error("Failed to cancel reservation with uuid: " + uuid);
+				throw new ReservationNotFoundException();
+			}
+			try {
+				sequence = mJournal.append(OPERATION.CANCEL, uuid, null);
+				mChanges.put(uuid, CANCELLED);
+				unindex(existing);
+			} finally {
+				mReservationCache.bumpVersion(existing.getSiteId());
+			}
+			sequence = appendAll(successors, saved, sequence);
+		}
+		mJournal.sync(sequence);
+		mAvailabilityFeed.publish(existing, true);
+		saved.forEach(successor -> mAvailabilityFeed.publish(successor, false));
+	}
+
+	@Override
+	public Optional<Reservation> findById(UUID uuid) {
+		return Optional.ofNullable(current(uuid)).map(Reservation::new);
+	}
+
+	@Override
+	public Collection<Reservation> findReservationInRange(String siteId, LocalDate startDate, LocalDate endDate) {
+		if (!mHistoryLoaded && startDate.isBefore(mTreeHorizon)) {
+			loadHistory();
+		}
+		return mIntervalTree.findOverlapping(startDate, endDate).stream()
+				.filter(reservation -> reservation.getSiteId().equals(siteId)).collect(Collectors.toList());
+	}
+
+	@Override
+	public List<Reservation> findPage(UUID after, int size) {
+		return reservations(after).limit(size).map(Reservation::new).collect(Collectors.toList());
+	}
+
+	@Override
+	public void forEachReservation(Consumer<Reservation> consumer) {
+		reservations(null).forEach(reservation -> consumer.accept(new Reservation(reservation)));
+	}
+
+	// Only runs before the DAO is in use, the indexes are loaded once the replay is done.
+	private void replay(Record record) {
+		mChanges.put(record.getId(), record.getOperation() == OPERATION.CANCEL ? CANCELLED : record.getReservation());
+	}
+
+	// The latest version of the reservation, or null if there is none.
+	private Reservation current(UUID uuid) {
+		Reservation reservation = mChanges.get(uuid);
+		if (reservation == null) {
+			reservation = mSnapshotting.get(uuid);
+		}
+		if (reservation == null) {
+			reservation = mSnapshot.find(uuid).orElse(null);
+		}
+		return reservation == CANCELLED ? null : reservation;
+	}
+
+	// Ordered by id, starting after the given one or from the first one if it is null.
+	private Stream<Reservation> reservations(UUID after) {
+		return stream(ids(after, mChanges, mSnapshotting, mSnapshot)).map(this::current).filter(Objects::nonNull);
+	}
+
+	private Iterator<UUID> ids(UUID after, ConcurrentSkipListMap<UUID, Reservation> changes,
+			ConcurrentSkipListMap<UUID, Reservation> snapshotting, ReservationSnapshot snapshot) {
+		return new MergedIds(Arrays.asList(tail(changes, after), tail(snapshotting, after), snapshot.ids(after)));
+	}
+
+	private Iterator<UUID> ids(UUID after, ConcurrentSkipListMap<UUID, Reservation> changes,
+			ReservationSnapshot snapshot) {
+		return new MergedIds(Arrays.asList(tail(changes, after), snapshot.ids(after)));
+	}
+
+	private static Iterator<UUID> tail(ConcurrentSkipListMap<UUID, Reservation> changes, UUID after) {
+		return (after == null ? changes : changes.tailMap(after, false)).keySet().iterator();
+	}
+
+	private static <T> Stream<T> stream(Iterator<T> iterator) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+	}
+
+	/*
+	 * Adds the reservations ending before the snapshot's horizon to the interval tree.
+	 * Holds the DAO's monitor, the writes meanwhile are applied after it and not lost.
+	 */
+	private synchronized void loadHistory() {
+		if (mHistoryLoaded) {
+			return;
+		}
+		reservations(null).filter(reservation -> reservation.getEndDate().isBefore(mTreeHorizon))
+				.forEach(mIntervalTree::add);
+		mHistoryLoaded = true;
+		log.info("Loaded the reservations before " + mTreeHorizon + " into the interval tree");
+	}
+
+	private void index(Reservation reservation) {
+		mReservationCache.add(reservation);
+		mIntervalTree.add(reservation);
+	}
+
+	private void unindex(Reservation reservation) {
+		mReservationCache.remove(reservation);
+		mIntervalTree.remove(reservation.getId(), reservation.getStartDate());
+	}
+
+	// Merges ordered id iterators into one, an id found in several of them comes once.
+	private static class MergedIds implements Iterator<UUID> {
+		private final List<Iterator<UUID>> mIterators;
+		private final UUID[] mHeads;
+
+		private MergedIds(List<Iterator<UUID>> iterators) {
+			mIterators = iterators;
+			mHeads = new UUID[iterators.size()];
+			for (int i = 0; i < mHeads.length; i++) {
+				advance(i);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			for (UUID head : mHeads) {
+				if (head != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public UUID next() {
+			UUID next = null;
+			for (UUID head : mHeads) {
+				if (head != null && (next == null || head.compareTo(next) < 0)) {
+					next = head;
+				}
+			}
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			for (int i = 0; i < mHeads.length; i++) {
+				if (next.equals(mHeads[i])) {
+					advance(i);
+				}
+			}
+			return next;
+		}
+
+		private void advance(int i) {
+			mHeads[i] = mIterators.get(i).hasNext() ? mIterators.get(i).next() : null;
+		}
+	}
+}
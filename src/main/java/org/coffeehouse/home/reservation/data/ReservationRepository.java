@@ -1,15 +1,40 @@
 package org.coffeehouse.home.reservation.data;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 public interface ReservationRepository extends JpaRepository<Reservation, UUID> {
 
-	@Query("select r from Reservation r where not ( r.startDate > ?2 or r.endDate < ?1 )")
+	// Reservations of every site, only used to fill the ReservationCache at startup.
+	@Query("select r from Reservation r where r.endDate >= ?1 and r.startDate <= ?2")
 	Collection<Reservation> findReservationsWithinDates(LocalDate startDate, LocalDate endDate);
 
-}
\ No newline at end of file
+	// Same overlap test as not ( r.startDate > ?3 or r.endDate < ?2 ), written so it can use the date index.
+	@Query("select r from Reservation r where r.siteId = ?1 and r.endDate >= ?2 and r.startDate <= ?3")
+	Collection<Reservation> findSiteReservationsWithinDates(String siteId, LocalDate startDate, LocalDate endDate);
+
+	// Keyset pages on the primary key, neither needs a count or an offset.
+	List<Reservation> findAllByOrderByIdAsc(Pageable pageable);
+
+	List<Reservation> findByIdGreaterThanOrderByIdAsc(UUID after, Pageable pageable);
+
+	// Has to be consumed inside a transaction and closed afterwards.
+	@Query("select r from Reservation r")
+	@QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+			@QueryHint(name = HINT_READONLY, value = "true") })
+	Stream<Reservation> streamAll();
+
+}
\ No newline at end of file
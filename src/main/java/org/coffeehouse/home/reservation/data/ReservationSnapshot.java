@@ -0,0 +1,266 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import javax.validation.constraints.NotNull;
+
+/*
+ * Read-only, memory-mapped image of every reservation at one journal position. The
+ * file is laid out as
+ *
+ *   header: magic, journal position, horizon, count, window count, table offsets
+ *   records: id and reservation, as the journal writes them
+ *   id table: count times id and record offset, ordered by id
+ *   window table: record offsets of the reservations ending on or after the horizon
+ *
+ * Opening maps the file and reads the header only. A lookup by id is a binary search
+ * of the id table and the window table lists what the ReservationCache and the
+ * interval tree need at startup, so neither depends on how many reservations the
+ * snapshot holds. Records are decoded when they are asked for.
+ *
+ * write() fills a temporary file, forces it and moves it over the snapshot, so a
+ * snapshot is either complete or not there. Offsets are ints, a snapshot is limited to
+ * 2GB.
+ */
+public class ReservationSnapshot {
+
+	private static final int MAGIC = 0x52535331;
+	private static final int HEADER_BYTES = 44;
+	private static final int ID_ENTRY_BYTES = 20;
+
+	private static final ReservationSnapshot EMPTY = new ReservationSnapshot(null, 0L, LocalDate.MIN, 0, 0, 0, 0);
+
+	private final ByteBuffer mBuffer;
+	private final long mJournalPosition;
+	private final LocalDate mHorizon;
+	private final int mCount;
+	private final int mWindowCount;
+	private final int mIdTable;
+	private final int mWindowTable;
+
+	private ReservationSnapshot(ByteBuffer buffer, long journalPosition, LocalDate horizon, int count, int windowCount,
+			int idTable, int windowTable) {
+		mBuffer = buffer;
+		mJournalPosition = journalPosition;
+		mHorizon = horizon;
+		mCount = count;
+		mWindowCount = windowCount;
+		mIdTable = idTable;
+		mWindowTable = windowTable;
+	}
+
+	// No reservations, taken before the first journal record. Its window holds everything.
+	public static ReservationSnapshot empty() {
+		return EMPTY;
+	}
+
+	// The snapshot in file, or the empty one if there is none yet.
+	public static ReservationSnapshot open(@NotNull Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return EMPTY;
+		}
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Snapshot " + file + " has no valid header.");
+		}
+		return new ReservationSnapshot(buffer, buffer.getLong(4), LocalDate.ofEpochDay(buffer.getLong(12)),
+				buffer.getInt(20), buffer.getInt(24), (int) buffer.getLong(28), (int) buffer.getLong(36));
+	}
+
+	/*
+	 * Writes the reservations, which have to come ordered by id, as the snapshot at the
+	 * given journal position. The window holds the ones ending on or after horizon.
+	 */
+	public static void write(@NotNull Path file, long journalPosition, @NotNull LocalDate horizon,
+			Iterator<Reservation> reservations) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		ByteArrayOutputStream idTable = new ByteArrayOutputStream();
+		ByteArrayOutputStream windowTable = new ByteArrayOutputStream();
+		DataOutputStream ids = new DataOutputStream(idTable);
+		DataOutputStream window = new DataOutputStream(windowTable);
+		int count = 0;
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+			out.write(new byte[HEADER_BYTES]);
+			UUID previous = null;
+			while (reservations.hasNext()) {
+				Reservation reservation = reservations.next();
+				if (previous != null && previous.compareTo(reservation.getId()) >= 0) {
+					throw new IllegalArgumentException("Snapshot reservations have to be ordered by id.");
+				}
+				previous = reservation.getId();
+				int offset = out.size();
+				out.writeLong(reservation.getId().getMostSignificantBits());
+				out.writeLong(reservation.getId().getLeastSignificantBits());
+				ReservationJournal.writeReservation(out, reservation);
+				ids.writeLong(reservation.getId().getMostSignificantBits());
+				ids.writeLong(reservation.getId().getLeastSignificantBits());
+				ids.writeInt(offset);
+				if (!reservation.getEndDate().isBefore(horizon)) {
+					window.writeInt(offset);
+				}
+				count++;
+			}
+			long idTableOffset = out.size();
+			idTable.writeTo(out);
+			long windowTableOffset = out.size();
+			windowTable.writeTo(out);
+			// The count stops at Integer.MAX_VALUE.
+			if (out.size() == Integer.MAX_VALUE) {
+				throw new IOException("The snapshot does not fit into 2GB.");
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putLong(journalPosition).putLong(horizon.toEpochDay()).putInt(count)
+					.putInt(windowTable.size() / 4).putLong(idTableOffset).putLong(windowTableOffset).flip();
+			channel.write(header, 0);
+			channel.force(true);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public long getJournalPosition() {
+		return mJournalPosition;
+	}
+
+	// The reservations ending before the horizon are not in the window.
+	public LocalDate getHorizon() {
+		return mHorizon;
+	}
+
+	public int size() {
+		return mCount;
+	}
+
+	public Optional<Reservation> find(@NotNull UUID id) {
+		int index = indexOf(id);
+		return index >= 0 ? Optional.of(reservation(recordOffset(index))) : Optional.empty();
+	}
+
+	// Ids in order, starting after the given one or from the first one if it is null.
+	public Iterator<UUID> ids(UUID after) {
+		int index = after == null ? -1 : indexOf(after);
+		int start = index >= 0 ? index + 1 : -index - 1;
+		return new Iterator<UUID>() {
+			private int mNext = start;
+
+			@Override
+			public boolean hasNext() {
+				return mNext < mCount;
+			}
+
+			@Override
+			public UUID next() {
+				return id(mNext++);
+			}
+		};
+	}
+
+	// In id order.
+	public Iterator<Reservation> reservations() {
+		return new Iterator<Reservation>() {
+			private int mNext;
+
+			@Override
+			public boolean hasNext() {
+				return mNext < mCount;
+			}
+
+			@Override
+			public Reservation next() {
+				return reservation(recordOffset(mNext++));
+			}
+		};
+	}
+
+	public void forEachInWindow(Consumer<Reservation> consumer) {
+		for (int i = 0; i < mWindowCount; i++) {
+			consumer.accept(reservation(mBuffer.getInt(mWindowTable + i * 4)));
+		}
+	}
+
+	// Binary search of the id table, the index or -(insertion point) - 1 as in Arrays.
+	private int indexOf(UUID id) {
+		int low = 0;
+		int high = mCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int order = id(middle).compareTo(id);
+			if (order < 0) {
+				low = middle + 1;
+			} else if (order > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -low - 1;
+	}
+
+	private UUID id(int index) {
+		int entry = mIdTable + index * ID_ENTRY_BYTES;
+		return new UUID(mBuffer.getLong(entry), mBuffer.getLong(entry + 8));
+	}
+
+	private int recordOffset(int index) {
+		return mBuffer.getInt(mIdTable + index * ID_ENTRY_BYTES + 16);
+	}
+
+	private Reservation reservation(int offset) {
+		ByteBuffer record = mBuffer.duplicate();
+		record.position(offset);
+		try (DataInputStream in = new DataInputStream(new ByteBufferInputStream(record))) {
+			return ReservationJournal.readReservation(in, new UUID(in.readLong(), in.readLong()));
+		} catch (IOException exception) {
+			throw new IllegalStateException("Snapshot record at " + offset + " is damaged.", exception);
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer mBuffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			mBuffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!mBuffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, mBuffer.remaining());
+			mBuffer.get(bytes, offset, read);
+			return read;
+		}
+	}
+}
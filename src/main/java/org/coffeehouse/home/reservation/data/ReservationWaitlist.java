@@ -0,0 +1,169 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Requests waiting for dates that are taken, per site in the order they joined. The
+ * cancel and modify jobs hand the dates they free to the first waiters they fit, in
+ * the same commit, so freed dates go to whoever asked first rather than to whoever
+ * polls the availability fastest.
+ *
+ * A waiter joins under the date locks of its dates and the jobs read the waiters under
+ * the locks of the dates they free, so a waiter either is seen by the handoff or sees
+ * the dates free and reserves them at once.
+ *
+ * Whoever takes a waiter off the list owns it: a handoff claims it before the commit
+ * and puts it back in its place if the commit fails. Waiters learn the outcome through
+ * whenReserved(), completed on the executor, never on the thread that committed.
+ */
+@Slf4j
+public class ReservationWaitlist {
+
+	public static enum STATUS {
+		WAITING, RESERVED, LEFT, DROPPED
+	}
+
+	public static class Waiter {
+		private final long mSequence;
+		private final Reservation mReservation;
+		private final CompletableFuture<Reservation> mReserved = new CompletableFuture<Reservation>();
+
+		private Waiter(long sequence, Reservation reservation) {
+			mSequence = sequence;
+			mReservation = reservation;
+		}
+
+		// The reservation asked for, it is saved with the same id.
+		public Reservation getReservation() {
+			return mReservation;
+		}
+
+		public STATUS getStatus() {
+			if (!mReserved.isDone()) {
+				return STATUS.WAITING;
+			}
+			if (mReserved.isCancelled()) {
+				return STATUS.LEFT;
+			}
+			return mReserved.isCompletedExceptionally() ? STATUS.DROPPED : STATUS.RESERVED;
+		}
+
+		// Completes with the saved reservation, is cancelled when the waiter leaves.
+		public CompletableFuture<Reservation> whenReserved() {
+			return mReserved;
+		}
+	}
+
+	private final ConcurrentHashMap<UUID, Waiter> mWaiters = new ConcurrentHashMap<UUID, Waiter>();
+
+	private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Waiter>> mSites = new ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Waiter>>();
+
+	private final AtomicLong mSequence = new AtomicLong();
+
+	private final Executor mExecutor;
+
+	public ReservationWaitlist(Executor executor) {
+		mExecutor = executor;
+	}
+
+	// The caller holds the date locks of the reservation and found its dates taken.
+	public Waiter join(@NotNull Reservation reservation) {
+		Waiter waiter = new Waiter(mSequence.incrementAndGet(), reservation);
+		enqueue(waiter);
+		return waiter;
+	}
+
+	// A waiter that got its dates without waiting.
+	public Waiter reserved(@NotNull Reservation reservation) {
+		Waiter waiter = new Waiter(mSequence.incrementAndGet(), reservation);
+		waiter.mReserved.complete(reservation);
+		return waiter;
+	}
+
+	public Optional<Waiter> get(@NotNull UUID id) {
+		return Optional.ofNullable(mWaiters.get(id));
+	}
+
+	// False if it is not waiting, it may just have been handed its dates.
+	public boolean leave(@NotNull UUID id) {
+		Waiter waiter = mWaiters.get(id);
+		if (waiter == null || !claim(waiter)) {
+			return false;
+		}
+		waiter.mReserved.cancel(false);
+		return true;
+	}
+
+	// The waiters of the site wanting any of the dates, in the order they joined.
+	public List<Waiter> find(@NotNull String siteId, @NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		ConcurrentSkipListMap<Long, Waiter> waiters = mSites.getOrDefault(siteId, new ConcurrentSkipListMap<Long, Waiter>());
+		return waiters.values().stream()
+				.filter(waiter -> !waiter.mReservation.getStartDate().isAfter(endDate)
+						&& !waiter.mReservation.getEndDate().isBefore(startDate))
+				.collect(Collectors.toList());
+	}
+
+	// Takes the waiter off the list, false if someone else did first.
+	public boolean claim(@NotNull Waiter waiter) {
+		if (!mWaiters.remove(waiter.mReservation.getId(), waiter)) {
+			return false;
+		}
+		mSites.computeIfPresent(waiter.mReservation.getSiteId(), (site, waiters) -> {
+			waiters.remove(waiter.mSequence);
+			return waiters.isEmpty() ? null : waiters;
+		});
+		return true;
+	}
+
+	// Puts a claimed waiter back where it was, after the commit handing it dates failed.
+	public void requeue(@NotNull Waiter waiter) {
+		enqueue(waiter);
+	}
+
+	// The waiter was claimed and its reservation saved.
+	public void notifyReserved(@NotNull Waiter waiter, @NotNull Reservation reservation) {
+		complete(waiter, () -> waiter.mReserved.complete(reservation));
+	}
+
+	// The waiter was claimed and can never get its dates, they are no longer bookable.
+	public void notifyDropped(@NotNull Waiter waiter, @NotNull Exception reason) {
+		complete(waiter, () -> waiter.mReserved.completeExceptionally(reason));
+	}
+
+	public int size() {
+		return mWaiters.size();
+	}
+
+	private void enqueue(Waiter waiter) {
+		mWaiters.put(waiter.mReservation.getId(), waiter);
+		mSites.compute(waiter.mReservation.getSiteId(), (site, waiters) -> {
+			ConcurrentSkipListMap<Long, Waiter> map = waiters != null ? waiters
+					: new ConcurrentSkipListMap<Long, Waiter>();
+			map.put(waiter.mSequence, waiter);
+			return map;
+		});
+	}
+
+	private void complete(Waiter waiter, Runnable completion) {
+		try {
+			mExecutor.execute(completion);
+		} catch (RejectedExecutionException exception) {
+			log.warn("Notifying waiter " + waiter.mReservation.getId() + " in place: " + exception.getMessage());
+			completion.run();
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package org.coffeehouse.home.reservation.data;
 
+import java.time.LocalDate;
+
+import org.coffeehouse.home.reservation.data.ReservationCache.Window;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -9,7 +12,9 @@ import lombok.extern.slf4j.Slf4j;
 /*
  * This scheduled task runs every morning at 12:05. It rotates out today from
  * the ReservationCache as it is no longer eligible for availability. It adds the 
- * newly available reservation date, today plus 1 month;
+ * newly available reservation date, today plus 1 month. The window is taken from
+ * the cache's clock, so the days missed by earlier runs are rotated at once. Both
+ * changes are published to the AvailabilityFeed.
  */
 @Component
 @Slf4j
@@ -17,11 +22,30 @@ public class RotateReservationCacheTask {
 
 	@Autowired
 	private ReservationCache mReservationCache;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
 	
-	@Scheduled(cron="5 0 * * *")
+	// Seconds first, as Spring wants six fields.
+	@Scheduled(cron = "0 5 0 * * *")
 	public void rotateReservationCache() {
 		log.info("Rotating Cache.");
-		mReservationCache.rotate();
-		
+		Window previous = mReservationCache.rotate();
+		Window current = mReservationCache.getWindow();
+
+		// The days before the window can no longer be booked, the new days at its end can unless they are taken.
+		LocalDate lastDropped = current.getStartDate().minusDays(1);
+		LocalDate firstAdded = previous.getEndDate().plusDays(1);
+		if (firstAdded.isBefore(current.getStartDate())) {
+			firstAdded = current.getStartDate();
+		}
+		for (String siteId : mAvailabilityFeed.getSites()) {
+			if (previous.getStartDate().isBefore(current.getStartDate())) {
+				mAvailabilityFeed.publish(siteId, previous.getStartDate(), lastDropped, false);
+			}
+			for (LocalDate date = firstAdded; !date.isAfter(current.getEndDate()); date = date.plusDays(1)) {
+				mAvailabilityFeed.publish(siteId, date, date, mReservationCache.isAvailable(siteId, date, date));
+			}
+		}
 	}
 }
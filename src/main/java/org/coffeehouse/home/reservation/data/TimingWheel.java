@@ -0,0 +1,125 @@
+package org.coffeehouse.home.reservation.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.validation.constraints.NotNull;
+
+/*
+ * Hashed timing wheel. Time is cut into ticks of mTickMillis and the wheel has a
+ * power of two number of buckets, a timeout goes into the bucket of its deadline tick
+ * and carries the number of full turns left before it is due. Scheduling and
+ * cancelling cost the same whatever the deadline, and a tick only visits one bucket.
+ *
+ * A timeout never fires before its deadline, at most one tick after it is passed to
+ * advance(). Cancelled timeouts are dropped when their bucket is next visited.
+ *
+ * Any thread may schedule or cancel, new timeouts wait in a queue until advance()
+ * moves them into their buckets. Only one thread at a time may call advance().
+ */
+public class TimingWheel<T> {
+
+	public static final class Timeout<T> {
+		private final T mItem;
+		private final long mDeadlineMillis;
+		private long mRounds;
+		private volatile boolean mCancelled;
+
+		private Timeout(T item, long deadlineMillis) {
+			mItem = item;
+			mDeadlineMillis = deadlineMillis;
+		}
+
+		public T getItem() {
+			return mItem;
+		}
+
+		public long getDeadlineMillis() {
+			return mDeadlineMillis;
+		}
+
+		// It is not handed out by advance() afterwards.
+		public void cancel() {
+			mCancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return mCancelled;
+		}
+	}
+
+	private final long mTickMillis;
+	private final long mStartMillis;
+	private final int mMask;
+	private final List<List<Timeout<T>>> mBuckets;
+	private final Queue<Timeout<T>> mPending = new ConcurrentLinkedQueue<Timeout<T>>();
+
+	// The next tick to visit, counted from mStartMillis.
+	private long mTick;
+
+	public TimingWheel(int buckets, long tickMillis, long startMillis) {
+		if (buckets <= 0 || tickMillis <= 0) {
+			throw new IllegalArgumentException("A timing wheel needs at least one bucket and a positive tick.");
+		}
+		int size = Integer.highestOneBit(buckets - 1) << 1;
+		mMask = Math.max(1, size) - 1;
+		mTickMillis = tickMillis;
+		mStartMillis = startMillis;
+		mBuckets = new ArrayList<List<Timeout<T>>>(mMask + 1);
+		for (int bucket = 0; bucket <= mMask; bucket++) {
+			mBuckets.add(new ArrayList<Timeout<T>>());
+		}
+	}
+
+	public long getTickMillis() {
+		return mTickMillis;
+	}
+
+	public Timeout<T> schedule(@NotNull T item, long deadlineMillis) {
+		Timeout<T> timeout = new Timeout<T>(item, deadlineMillis);
+		mPending.add(timeout);
+		return timeout;
+	}
+
+	/*
+	 * Visits every tick up to nowMillis and returns the items of the timeouts that fell
+	 * due, in the order of their ticks. A deadline already passed when the timeout is
+	 * moved into the wheel falls due on the next tick visited.
+	 */
+	public List<T> advance(long nowMillis) {
+		List<T> expired = new ArrayList<T>();
+		long lastTick = Math.floorDiv(nowMillis - mStartMillis, mTickMillis);
+		if (lastTick < mTick) {
+			return expired;
+		}
+		Timeout<T> timeout;
+		while ((timeout = mPending.poll()) != null) {
+			if (timeout.mCancelled) {
+				continue;
+			}
+			// Rounded up, so that it is never due before its deadline.
+			long tick = Math.max(mTick, -Math.floorDiv(mStartMillis - timeout.mDeadlineMillis, mTickMillis));
+			timeout.mRounds = (tick - mTick) / (mMask + 1);
+			mBuckets.get((int) (tick & mMask)).add(timeout);
+		}
+		for (; mTick <= lastTick; mTick++) {
+			List<Timeout<T>> bucket = mBuckets.get((int) (mTick & mMask));
+			int kept = 0;
+			for (Timeout<T> entry : bucket) {
+				if (entry.mCancelled) {
+					continue;
+				}
+				if (entry.mRounds > 0) {
+					entry.mRounds--;
+					bucket.set(kept++, entry);
+				} else {
+					expired.add(entry.mItem);
+				}
+			}
+			bucket.subList(kept, bucket.size()).clear();
+		}
+		return expired;
+	}
+}
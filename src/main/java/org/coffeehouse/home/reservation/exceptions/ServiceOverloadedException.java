@@ -0,0 +1,16 @@
+package org.coffeehouse.home.reservation.exceptions;
+
+// A job turned away or dropped by admission control, the client may retry after the given seconds.
+public class ServiceOverloadedException extends RuntimeException {
+
+	private final long mRetryAfterSeconds;
+
+	public ServiceOverloadedException(String message, long retryAfterSeconds) {
+		super(message);
+		mRetryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds() {
+		return mRetryAfterSeconds;
+	}
+}
@@ -1,10 +1,15 @@
 package org.coffeehouse.home.reservation.job;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.validation.constraints.NotNull;
 
+import org.coffeehouse.home.reservation.data.Reservation;
 import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class CancelReservationJob implements ExecutableJob<Void>{
@@ -14,25 +19,61 @@ public class CancelReservationJob implements ExecutableJob<Void>{
 		@Autowired
 		public ReservationDao mReservationDao;
 		
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
+		@Autowired
+		public WaitlistHandoff mWaitlistHandoff;
+		
 		public CancelReservationJob getJob(UUID id) {
-			return new CancelReservationJob(id, mReservationDao);
+			return new CancelReservationJob(id, mReservationDao, mReservationDateLocks, mWaitlistHandoff);
 		}
 	}
 	
 	@NotNull
 	private ReservationDao mReservationDao;
 	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
+	private WaitlistHandoff mWaitlistHandoff;
+	@NotNull
 	private UUID mUUID;
 	
-	public CancelReservationJob(UUID id, ReservationDao reservationDao) {
+	public CancelReservationJob(UUID id, ReservationDao reservationDao, ReservationDateLocks reservationDateLocks,
+			WaitlistHandoff waitlistHandoff) {
 		mUUID = id;
 		mReservationDao = reservationDao;
+		mReservationDateLocks = reservationDateLocks;
+		mWaitlistHandoff = waitlistHandoff;
 	}
 
+	/*
+	 * Cancelling frees dates, it locks them and those of the waiters wanting them only to
+	 * hand them to the waitlist in the same commit. Writes for other dates run in
+	 * parallel.
+	 */
 	@Override
 	public Void call() throws Exception {
-		synchronized (mReservationDao) {
-			mReservationDao.cancel(mUUID);
+		ReentrantLock idLock = mReservationDateLocks.lockReservation(mUUID);
+		try {
+			Reservation existing = mReservationDao.findById(mUUID).orElseThrow(ReservationNotFoundException::new);
+			String siteId = existing.getSiteId();
+			long stripes = mWaitlistHandoff.lock(siteId, 0L, existing);
+			try {
+				List<Waiter> claimed = mWaitlistHandoff.claim(existing, null);
+				List<Reservation> successors = mWaitlistHandoff.successors(claimed);
+				try {
+					mReservationDao.cancel(mUUID, successors);
+				} catch (RuntimeException exception) {
+					mWaitlistHandoff.failed(claimed);
+					throw exception;
+				}
+				mWaitlistHandoff.committed(claimed, successors);
+			} finally {
+				mReservationDateLocks.unlock(siteId, stripes);
+			}
+		} finally {
+			idLock.unlock();
 		}
 		return null;
 	}
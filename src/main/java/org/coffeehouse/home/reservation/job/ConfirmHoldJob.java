@@ -0,0 +1,104 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.util.UUID;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/*
+ * Saves a held reservation under the date locks of its dates. The dates were taken by
+ * the hold, so only the date limits are checked again, the hold may have outlived the
+ * day its dates were last valid on. A hold that expired before it is taken is not
+ * found, one that fails to save is released to the waitlist, so the locks of the
+ * waiters wanting its dates are taken too.
+ */
+public class ConfirmHoldJob implements ExecutableJob<Reservation> {
+
+	public static class ConfirmHoldJobFactory {
+
+		@Autowired
+		public ReservationDao mReservationDao;
+
+		@Autowired
+		public ReservationHolds mReservationHolds;
+
+		@Autowired
+		public LocalDateHelper mLocalDateHelper;
+
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
+		@Autowired
+		public WaitlistHandoff mWaitlistHandoff;
+
+		public ConfirmHoldJob getJob(UUID id) {
+			return new ConfirmHoldJob(id, mReservationDao, mReservationHolds, mLocalDateHelper, mReservationDateLocks,
+					mWaitlistHandoff);
+		}
+	}
+
+	@NotNull
+	private ReservationDao mReservationDao;
+	@NotNull
+	private ReservationHolds mReservationHolds;
+	@NotNull
+	private LocalDateHelper mLocalDateHelper;
+	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
+	private WaitlistHandoff mWaitlistHandoff;
+	@NotNull
+	private UUID mUUID;
+
+	public ConfirmHoldJob(UUID id, ReservationDao reservationDao, ReservationHolds reservationHolds,
+			LocalDateHelper localDateHelper, ReservationDateLocks reservationDateLocks,
+			WaitlistHandoff waitlistHandoff) {
+		mUUID = id;
+		mReservationDao = reservationDao;
+		mReservationHolds = reservationHolds;
+		mLocalDateHelper = localDateHelper;
+		mReservationDateLocks = reservationDateLocks;
+		mWaitlistHandoff = waitlistHandoff;
+	}
+
+	@Override
+	public Reservation call() throws Exception {
+		Reservation held = mReservationHolds.get(mUUID).orElseThrow(ReservationNotFoundException::new)
+				.getReservation();
+		String siteId = held.getSiteId();
+		long stripes = mWaitlistHandoff.lock(siteId, 0L, held);
+		try {
+			Reservation reservation = mReservationHolds.take(mUUID);
+			if (reservation == null) {
+				throw new ReservationNotFoundException();
+			}
+			return validateAndSave(reservation);
+		} finally {
+			mReservationDateLocks.unlock(siteId, stripes);
+		}
+	}
+
+	private Reservation validateAndSave(Reservation reservation) throws DateRangeException {
+		RESULT validation = mLocalDateHelper.areDatesWithinLimits(reservation.getStartDate(),
+				reservation.getEndDate());
+		if (validation != RESULT.OK) {
+			mReservationHolds.release(reservation);
+			throw new DateRangeException(
+					"The held dates can no longer be reserved, the campsite can be reserved minimum 1 day(s) ahead of arrival.");
+		}
+		try {
+			// A copy, the held one is in the cache and must not become a managed entity.
+			return mReservationDao.save(new Reservation(reservation));
+		} catch (RuntimeException exception) {
+			mReservationHolds.release(reservation);
+			throw exception;
+		}
+	}
+}
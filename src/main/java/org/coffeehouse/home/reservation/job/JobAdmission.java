@@ -0,0 +1,140 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import org.coffeehouse.home.reservation.exceptions.ServiceOverloadedException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Admission control in front of an executor. A job is turned away when queueCapacity
+ * jobs are already waiting, or when the estimated wait would take it past its deadline:
+ * the waiting jobs times the average run time, spread over the threads. A job still
+ * waiting at its deadline is dropped when it gets a thread, nobody waits for its
+ * result anymore. Both end in a ServiceOverloadedException.
+ *
+ * Publishes reservation.job.shed, tagged with the executor name and the reason, one
+ * of queue, deadline and expired.
+ */
+public class JobAdmission {
+
+	public static final String JOB_SHED = "reservation.job.shed";
+
+	// Weight of a new run time in the average, as a shift: 1/8.
+	private static final int AVERAGE_SHIFT = 3;
+
+	private final Executor mExecutor;
+	private final int mThreads;
+	private final int mQueueCapacity;
+	private final AtomicInteger mQueued = new AtomicInteger();
+	// Updated without a lock, a lost sample does not matter to an estimate.
+	private volatile long mAverageRunNanos;
+
+	private final Counter mShedByQueue;
+	private final Counter mShedByDeadline;
+	private final Counter mShedExpired;
+
+	public JobAdmission(String name, Executor executor, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+		mExecutor = executor;
+		mThreads = threads;
+		mQueueCapacity = queueCapacity;
+		mShedByQueue = shedCounter(meterRegistry, name, "queue");
+		mShedByDeadline = shedCounter(meterRegistry, name, "deadline");
+		mShedExpired = shedCounter(meterRegistry, name, "expired");
+	}
+
+	/*
+	 * Runs the job on the executor unless it is turned away, which throws. The deadline
+	 * is in System.nanoTime() terms.
+	 */
+	public <V> CompletableFuture<V> submit(Callable<V> job, long deadline) {
+		int queued = checkAdmission(deadline);
+
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		mQueued.incrementAndGet();
+		try {
+			mExecutor.execute(() -> {
+				int waiting = mQueued.decrementAndGet();
+				long started = System.nanoTime();
+				if (started - deadline > 0) {
+					mShedExpired.increment();
+					future.completeExceptionally(new ServiceOverloadedException(
+							"The job waited past its deadline.", retryAfterSeconds(waiting)));
+					return;
+				}
+				try {
+					future.complete(job.call());
+				} catch (Exception exception) {
+					future.completeExceptionally(exception);
+				} finally {
+					long average = mAverageRunNanos;
+					mAverageRunNanos = average + ((System.nanoTime() - started - average) >> AVERAGE_SHIFT);
+				}
+			});
+		} catch (RejectedExecutionException exception) {
+			mQueued.decrementAndGet();
+			mShedByQueue.increment();
+			throw new ServiceOverloadedException(exception.getMessage(), retryAfterSeconds(queued));
+		}
+		return future;
+	}
+
+	/*
+	 * Admits a write that waits in a queue of its own, the ReservationBatchWriter's,
+	 * against the same bound and deadline as the jobs. The write is handed the deadline
+	 * to drop itself if it is still queued then, and counts as queued until its future
+	 * completes. Its time is not in the average, most of it is spent waiting for a batch.
+	 */
+	public <V> CompletableFuture<V> admit(LongFunction<CompletableFuture<V>> write, long deadline) {
+		checkAdmission(deadline);
+		mQueued.incrementAndGet();
+		CompletableFuture<V> future;
+		try {
+			future = write.apply(deadline);
+		} catch (RuntimeException exception) {
+			mQueued.decrementAndGet();
+			throw exception;
+		}
+		future.whenComplete((result, failure) -> mQueued.decrementAndGet());
+		return future;
+	}
+
+	public int getQueued() {
+		return mQueued.get();
+	}
+
+	public long estimatedWaitNanos(int queued) {
+		return queued * mAverageRunNanos / mThreads;
+	}
+
+	// Returns the jobs waiting, or throws if one more would be too many or too late.
+	private int checkAdmission(long deadline) {
+		long now = System.nanoTime();
+		int queued = mQueued.get();
+		if (queued >= mQueueCapacity) {
+			mShedByQueue.increment();
+			throw new ServiceOverloadedException("The job queue is full.", retryAfterSeconds(queued));
+		}
+		if (now + estimatedWaitNanos(queued) - deadline > 0) {
+			mShedByDeadline.increment();
+			throw new ServiceOverloadedException("The job would not start before its deadline.",
+					retryAfterSeconds(queued));
+		}
+		return queued;
+	}
+
+	private long retryAfterSeconds(int queued) {
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(estimatedWaitNanos(queued) + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	private static Counter shedCounter(MeterRegistry meterRegistry, String name, String reason) {
+		return Counter.builder(JOB_SHED).tag("name", name).tag("reason", reason).register(meterRegistry);
+	}
+}
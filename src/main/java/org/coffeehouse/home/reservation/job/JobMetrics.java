@@ -0,0 +1,64 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Job level metrics, published through Micrometer:
+ *
+ * reservation.job.wait        time from submission until the job starts on its executor
+ * reservation.job.run         time the job ran, tagged with the exception it failed with
+ * reservation.validation      write path validation results, tagged with the RESULT
+ *
+ * Both timers are tagged with the job class and publish percentile histograms, which
+ * is what the executor pools are sized from.
+ */
+public class JobMetrics {
+
+	public static final String JOB_WAIT = "reservation.job.wait";
+	public static final String JOB_RUN = "reservation.job.run";
+	public static final String VALIDATION = "reservation.validation";
+
+	@Autowired
+	private MeterRegistry mMeterRegistry;
+
+	/*
+	 * Wraps the job so that the wait time is measured from now on. Call it right before
+	 * handing the job to the executor.
+	 */
+	public <V> Callable<V> instrument(Callable<V> job) {
+		String jobName = job.getClass().getSimpleName();
+		long submitted = System.nanoTime();
+		return () -> {
+			long started = System.nanoTime();
+			timer(JOB_WAIT, jobName, null).record(started - submitted, TimeUnit.NANOSECONDS);
+			String exception = "None";
+			try {
+				return job.call();
+			} catch (Exception | Error failure) {
+				exception = failure.getClass().getSimpleName();
+				throw failure;
+			} finally {
+				timer(JOB_RUN, jobName, exception).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+			}
+		};
+	}
+
+	public void recordValidation(RESULT result) {
+		mMeterRegistry.counter(VALIDATION, "result", result.name()).increment();
+	}
+
+	private Timer timer(String name, String jobName, String exception) {
+		Timer.Builder builder = Timer.builder(name).tag("job", jobName).publishPercentileHistogram();
+		if (exception != null) {
+			builder.tag("exception", exception);
+		}
+		return builder.register(mMeterRegistry);
+	}
+}
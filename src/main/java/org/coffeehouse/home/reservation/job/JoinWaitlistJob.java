@@ -0,0 +1,88 @@
+package org.coffeehouse.home.reservation.job;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/*
+ * Validated as a new reservation under the same date locks. Free dates are reserved
+ * at once, taken ones put the reservation on the waitlist.
+ */
+public class JoinWaitlistJob implements ExecutableJob<Waiter> {
+
+	public static class JoinWaitlistJobFactory {
+
+		@Autowired
+		public ReservationDao mReservationDao;
+
+		@Autowired
+		public ReservationWaitlist mReservationWaitlist;
+
+		@Autowired
+		public LocalDateHelper mLocalDateHelper;
+
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
+		public JoinWaitlistJob getJob(Reservation reservation) {
+			return new JoinWaitlistJob(reservation, mReservationDao, mReservationWaitlist, mLocalDateHelper,
+					mReservationDateLocks);
+		}
+	}
+
+	@NotNull
+	private ReservationDao mReservationDao;
+	@NotNull
+	private ReservationWaitlist mReservationWaitlist;
+	@NotNull
+	private LocalDateHelper mLocalDateHelper;
+	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
+	private Reservation mReservation;
+
+	public JoinWaitlistJob(Reservation reservation, ReservationDao reservationDao,
+			ReservationWaitlist reservationWaitlist, LocalDateHelper localDateHelper,
+			ReservationDateLocks reservationDateLocks) {
+		mReservation = reservation;
+		mReservationDao = reservationDao;
+		mReservationWaitlist = reservationWaitlist;
+		mLocalDateHelper = localDateHelper;
+		mReservationDateLocks = reservationDateLocks;
+	}
+
+	@Override
+	public Waiter call() throws Exception {
+		String siteId = mReservation.getSiteId();
+		long stripes = mReservationDateLocks.lock(siteId, mReservation.getStartDate(), mReservation.getEndDate());
+		try {
+			return validateAndJoin();
+		} finally {
+			mReservationDateLocks.unlock(siteId, stripes);
+		}
+	}
+
+	private Waiter validateAndJoin() throws DateRangeException {
+		RESULT validation = mLocalDateHelper.isReservationValid(mReservation);
+		switch (validation) {
+		case INVALID_START:
+			throw new DateRangeException(
+					"Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_END:
+			throw new DateRangeException(
+					"Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_RANGE:
+			throw new DateRangeException("Invalid date range. The campsite can be reserved for max 3 days.");
+		case DATE_IN_RANGE_UNAVAILABLE:
+			return mReservationWaitlist.join(mReservation);
+		default:
+			return mReservationWaitlist.reserved(mReservationDao.save(mReservation));
+		}
+	}
+}
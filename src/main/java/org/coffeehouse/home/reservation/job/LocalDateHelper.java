@@ -12,12 +12,19 @@ import javax.validation.constraints.NotNull;
 
 import org.coffeehouse.home.reservation.data.Reservation;
 import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class LocalDateHelper {
 
 	@Autowired
 	public ReservationDao mReservationDao;
+
+	@Autowired
+	private JobMetrics mJobMetrics;
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
 	
 	public static enum RESULT {
 		OK, INVALID_START, INVALID_END, INVALID_RANGE, DATE_IN_RANGE_UNAVAILABLE
@@ -38,10 +45,35 @@ public class LocalDateHelper {
 	}
 
 	public RESULT isReservationValid(@NotNull Reservation reservation) {
-		return areDatesValid(reservation.getStartDate(), reservation.getEndDate());
+		RESULT result = areDatesValid(reservation.getSiteId(), reservation.getStartDate(), reservation.getEndDate());
+		mJobMetrics.recordValidation(result);
+		return result;
 	}
 
 	public RESULT areDatesValid(@NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		return areDatesValid(Reservation.DEFAULT_SITE, startDate, endDate);
+	}
+
+	public RESULT areDatesValid(@NotNull String siteId, @NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		RESULT result = areDatesWithinLimits(startDate, endDate);
+		if (result != RESULT.OK) {
+			return result;
+		}
+		Collection<Reservation> reservations = mReservationDao.findReservationInRange(siteId, startDate, endDate);
+		// Held dates are not in the database, they are taken all the same.
+		if ( !reservations.isEmpty() || mReservationHolds.isHeld(siteId, startDate, endDate) ) {
+			return RESULT.DATE_IN_RANGE_UNAVAILABLE;
+		}
+
+		return RESULT.OK;
+	}
+
+	/*
+	 * Checks the dates against the booking limits only: arrival at least 1 day ahead and
+	 * at most 1 month ahead, for at most MAX_RESERVATION_LENGTH_DAYS days. Existing
+	 * reservations are not looked at.
+	 */
+	public RESULT areDatesWithinLimits(@NotNull LocalDate startDate, @NotNull LocalDate endDate) {
 		LocalDate validStart = LocalDate.now().plusDays(1);
 		LocalDate validEnd = LocalDate.now().plusMonths(1);
 
@@ -56,11 +88,6 @@ public class LocalDateHelper {
 		if (length > MAX_RESERVATION_LENGTH_DAYS) {
 			return RESULT.INVALID_RANGE;
 		}
-		Collection<Reservation> reservations = mReservationDao.findReservationInRange(startDate, endDate);
-		if ( !reservations.isEmpty() ) {
-			return RESULT.DATE_IN_RANGE_UNAVAILABLE;
-		}
-
 		return RESULT.OK;
 	}
 
@@ -18,8 +18,11 @@ public class NewReservationJob implements ExecutableJob<Reservation> {
 		@Autowired
 		public LocalDateHelper mLocalDateHelper;
 
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
 		public NewReservationJob getJob(Reservation reservation) {
-			return new NewReservationJob(reservation, mReservationDao, mLocalDateHelper);
+			return new NewReservationJob(reservation, mReservationDao, mLocalDateHelper, mReservationDateLocks);
 
 		}
 	}
@@ -29,16 +32,31 @@ public class NewReservationJob implements ExecutableJob<Reservation> {
 	@NotNull
 	public LocalDateHelper mLocalDateHelper;
 	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
 	private Reservation mReservation;
 
-	public NewReservationJob(Reservation reservation, ReservationDao reservationDao, LocalDateHelper localDateHelper) {
+	public NewReservationJob(Reservation reservation, ReservationDao reservationDao, LocalDateHelper localDateHelper,
+			ReservationDateLocks reservationDateLocks) {
 		mReservation = reservation;
 		mReservationDao = reservationDao;
 		mLocalDateHelper = localDateHelper;
+		mReservationDateLocks = reservationDateLocks;
 	}
 
 	@Override
 	public Reservation call() throws Exception {
+		// Validation and save happen under the locks of the requested dates of the site only.
+		String siteId = mReservation.getSiteId();
+		long stripes = mReservationDateLocks.lock(siteId, mReservation.getStartDate(), mReservation.getEndDate());
+		try {
+			return validateAndSave();
+		} finally {
+			mReservationDateLocks.unlock(siteId, stripes);
+		}
+	}
+
+	private Reservation validateAndSave() throws DateRangeException {
 		RESULT validation = mLocalDateHelper.isReservationValid(mReservation);
 		switch (validation) {
 		case INVALID_START:
@@ -52,10 +70,7 @@ public class NewReservationJob implements ExecutableJob<Reservation> {
 		case DATE_IN_RANGE_UNAVAILABLE:
 			throw new DateRangeException("One ore more requested dates in desired range have already been reserved.");
 		default:
-			synchronized (mReservationDao) {
-				return mReservationDao.save(mReservation);
-			}
+			return mReservationDao.save(mReservation);
 		}
-
 	}
 }
@@ -0,0 +1,84 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.time.Duration;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationHold;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/*
+ * Holds the dates of a reservation for a while, validated as a new reservation under
+ * the same date locks, so a hold and a reservation never take the same dates.
+ */
+public class PlaceHoldJob implements ExecutableJob<ReservationHold> {
+
+	public static class PlaceHoldJobFactory {
+
+		@Autowired
+		public ReservationHolds mReservationHolds;
+
+		@Autowired
+		public LocalDateHelper mLocalDateHelper;
+
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
+		public PlaceHoldJob getJob(Reservation reservation, Duration ttl) {
+			return new PlaceHoldJob(reservation, ttl, mReservationHolds, mLocalDateHelper, mReservationDateLocks);
+		}
+	}
+
+	@NotNull
+	private ReservationHolds mReservationHolds;
+	@NotNull
+	private LocalDateHelper mLocalDateHelper;
+	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
+	private Reservation mReservation;
+	@NotNull
+	private Duration mTtl;
+
+	public PlaceHoldJob(Reservation reservation, Duration ttl, ReservationHolds reservationHolds,
+			LocalDateHelper localDateHelper, ReservationDateLocks reservationDateLocks) {
+		mReservation = reservation;
+		mTtl = ttl;
+		mReservationHolds = reservationHolds;
+		mLocalDateHelper = localDateHelper;
+		mReservationDateLocks = reservationDateLocks;
+	}
+
+	@Override
+	public ReservationHold call() throws Exception {
+		String siteId = mReservation.getSiteId();
+		long stripes = mReservationDateLocks.lock(siteId, mReservation.getStartDate(), mReservation.getEndDate());
+		try {
+			return validateAndHold();
+		} finally {
+			mReservationDateLocks.unlock(siteId, stripes);
+		}
+	}
+
+	private ReservationHold validateAndHold() throws DateRangeException {
+		RESULT validation = mLocalDateHelper.isReservationValid(mReservation);
+		switch (validation) {
+		case INVALID_START:
+			throw new DateRangeException(
+					"Invalid start date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_END:
+			throw new DateRangeException(
+					"Invalid end date. The campsite can be reserved minimum 1 day(s) ahead of arrival and up to 1 month in advance. ");
+		case INVALID_RANGE:
+			throw new DateRangeException("Invalid date range. The campsite can be reserved for max 3 days.");
+		case DATE_IN_RANGE_UNAVAILABLE:
+			throw new DateRangeException("One ore more requested dates in desired range have already been reserved.");
+		default:
+			return mReservationHolds.place(mReservation, mTtl);
+		}
+	}
+}
@@ -1,15 +1,18 @@
 package org.coffeehouse.home.reservation.job;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.List;
 
 import javax.validation.constraints.NotNull;
 
 import org.coffeehouse.home.reservation.ReservationConfig;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
 import org.coffeehouse.home.reservation.data.Reservation;
 import org.coffeehouse.home.reservation.data.ReservationCache;
 import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class QueryAvailabilityJob implements ExecutableJob<List<LocalDate>> {
@@ -25,9 +28,16 @@ public class QueryAvailabilityJob implements ExecutableJob<List<LocalDate>> {
 		@Autowired
 		public ReservationCache mReservationCache;
 
+		@Autowired
+		public ReservationHolds mReservationHolds;
+
 		public QueryAvailabilityJob getJob(LocalDate startDate, LocalDate endDate) {
-			return new QueryAvailabilityJob(startDate, endDate, mReservationDao, mLocalDateHelper, mReservationCache);
+			return getJob(Reservation.DEFAULT_SITE, startDate, endDate);
+		}
 
+		public QueryAvailabilityJob getJob(String siteId, LocalDate startDate, LocalDate endDate) {
+			return new QueryAvailabilityJob(siteId, startDate, endDate, mReservationDao, mLocalDateHelper,
+					mReservationCache, mReservationHolds, ReservationConfig.ENABLE_RESERVATION_CACHING);
 		}
 	}
 
@@ -36,34 +46,63 @@ public class QueryAvailabilityJob implements ExecutableJob<List<LocalDate>> {
 	@NotNull
 	public LocalDateHelper mLocalDateHelper;
 	@NotNull
+	private String mSiteId;
+	@NotNull
 	private LocalDate mStartDate;
 	@NotNull
 	private LocalDate mEndDate;
 	@NotNull
 	public ReservationCache mReservationCache;
+	@NotNull
+	public ReservationHolds mReservationHolds;
+	private boolean mUseCache;
 
 	public QueryAvailabilityJob(LocalDate startDate, LocalDate endDate, ReservationDao reservationDao,
-			LocalDateHelper localDateHelper, ReservationCache reservationCache) {
+			LocalDateHelper localDateHelper, ReservationCache reservationCache, ReservationHolds reservationHolds) {
+		this(startDate, endDate, reservationDao, localDateHelper, reservationCache, reservationHolds,
+				ReservationConfig.ENABLE_RESERVATION_CACHING);
+	}
+
+	// Lets benchmarks compare both paths without flipping ENABLE_RESERVATION_CACHING.
+	public QueryAvailabilityJob(LocalDate startDate, LocalDate endDate, ReservationDao reservationDao,
+			LocalDateHelper localDateHelper, ReservationCache reservationCache, ReservationHolds reservationHolds,
+			boolean useCache) {
+		this(Reservation.DEFAULT_SITE, startDate, endDate, reservationDao, localDateHelper, reservationCache,
+				reservationHolds, useCache);
+	}
+
+	public QueryAvailabilityJob(String siteId, LocalDate startDate, LocalDate endDate, ReservationDao reservationDao,
+			LocalDateHelper localDateHelper, ReservationCache reservationCache, ReservationHolds reservationHolds,
+			boolean useCache) {
+		mSiteId = siteId;
 		mStartDate = startDate;
 		mEndDate = endDate;
 		mReservationDao = reservationDao;
 		mLocalDateHelper = localDateHelper;
 		mReservationCache = reservationCache;
+		mReservationHolds = reservationHolds;
+		mUseCache = useCache;
 	}
 
 	@Override
 	public List<LocalDate> call() {
 
-		if ( ReservationConfig.ENABLE_RESERVATION_CACHING )
+		if ( mUseCache )
 		{
-			return mReservationCache.getAvailability(mStartDate, mEndDate);
+			return mReservationCache.getAvailability(mSiteId, mStartDate, mEndDate);
 		} else {
-			Collection<Reservation> reservations = mReservationDao.findReservationInRange(mStartDate, mEndDate);
-			List<LocalDate> availableDates = mLocalDateHelper.getDatesWithinRange(mStartDate, mEndDate);
+			Collection<Reservation> reservations = mReservationDao.findReservationInRange(mSiteId, mStartDate,
+					mEndDate);
+			AvailabilityIndex availabilityIndex = new AvailabilityIndex(mStartDate,
+					(int) ChronoUnit.DAYS.between(mStartDate, mEndDate) + 1);
 			for (Reservation reservation : reservations) {
-				mLocalDateHelper.getReservedDates(reservation).stream().forEach(date -> availableDates.remove(date));
+				availabilityIndex.add(reservation);
+			}
+			// The cache has the holds already, the database does not.
+			for (Reservation hold : mReservationHolds.findHoldsInRange(mSiteId, mStartDate, mEndDate)) {
+				availabilityIndex.add(hold);
 			}
-			return availableDates;
+			return availabilityIndex.getAvailability(mStartDate, mEndDate);
 		}
 	}
 }
@@ -0,0 +1,92 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.ReservationConfig;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
+import org.coffeehouse.home.reservation.data.DateRange;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/*
+ * The availability of several date ranges of one site, in the order of the ranges. All
+ * of them are answered from one read: one snapshot of the cache, or one query spanning
+ * every range.
+ */
+public class QueryAvailabilityRangesJob implements ExecutableJob<List<List<LocalDate>>> {
+
+	public static class QueryAvailabilityRangesJobFactory {
+
+		@Autowired
+		public ReservationDao mReservationDao;
+
+		@Autowired
+		public ReservationCache mReservationCache;
+
+		@Autowired
+		public ReservationHolds mReservationHolds;
+
+		public QueryAvailabilityRangesJob getJob(String siteId, List<DateRange> ranges) {
+			return new QueryAvailabilityRangesJob(siteId, ranges, mReservationDao, mReservationCache,
+					mReservationHolds, ReservationConfig.ENABLE_RESERVATION_CACHING);
+		}
+	}
+
+	@NotNull
+	public ReservationDao mReservationDao;
+	@NotNull
+	public ReservationCache mReservationCache;
+	@NotNull
+	public ReservationHolds mReservationHolds;
+	@NotNull
+	private String mSiteId;
+	@NotNull
+	private List<DateRange> mRanges;
+	private boolean mUseCache;
+
+	public QueryAvailabilityRangesJob(String siteId, List<DateRange> ranges, ReservationDao reservationDao,
+			ReservationCache reservationCache, ReservationHolds reservationHolds, boolean useCache) {
+		mSiteId = siteId;
+		mRanges = ranges;
+		mReservationDao = reservationDao;
+		mReservationCache = reservationCache;
+		mReservationHolds = reservationHolds;
+		mUseCache = useCache;
+	}
+
+	@Override
+	public List<List<LocalDate>> call() {
+		if (mUseCache) {
+			return mReservationCache.getAvailability(mSiteId, mRanges);
+		}
+		LocalDate startDate = mRanges.get(0).getStartDate();
+		LocalDate endDate = mRanges.get(0).getEndDate();
+		for (DateRange range : mRanges) {
+			startDate = range.getStartDate().isBefore(startDate) ? range.getStartDate() : startDate;
+			endDate = range.getEndDate().isAfter(endDate) ? range.getEndDate() : endDate;
+		}
+		Collection<Reservation> reservations = mReservationDao.findReservationInRange(mSiteId, startDate, endDate);
+		AvailabilityIndex availabilityIndex = new AvailabilityIndex(startDate,
+				(int) ChronoUnit.DAYS.between(startDate, endDate) + 1);
+		for (Reservation reservation : reservations) {
+			availabilityIndex.add(reservation);
+		}
+		for (Reservation hold : mReservationHolds.findHoldsInRange(mSiteId, startDate, endDate)) {
+			availabilityIndex.add(hold);
+		}
+		List<List<LocalDate>> availability = new ArrayList<List<LocalDate>>(mRanges.size());
+		for (DateRange range : mRanges) {
+			availability.add(availabilityIndex.getAvailability(range.getStartDate(), range.getEndDate()));
+		}
+		return availability;
+	}
+}
@@ -0,0 +1,140 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+
+/*
+ * Striped per-date locks for the write path. A job locks the stripes of the dates it
+ * wants to claim, validates them and commits while holding them, so requests for
+ * disjoint dates commit in parallel and overlapping requests are serialized.
+ *
+ * A date maps to the stripe of its epoch day modulo STRIPES. The bookable window is
+ * shorter than STRIPES days, so two different dates inside it never share a stripe.
+ * The set of stripes is carried as a bit mask and always acquired in ascending order
+ * to avoid deadlocks.
+ *
+ * Every site has its own set of date stripes, picked by the hash of its id modulo
+ * SITE_STRIPES. Sites sharing a set only wait for each other on the same dates.
+ *
+ * Modify and cancel also take a lock striped by reservation id, before any date lock,
+ * so two writes to the same reservation never interleave.
+ *
+ * lockAll() takes the dates of many reservations of any sites at once, ordered by site
+ * stripe and then ascending, so it never waits in a cycle with single site locks.
+ */
+public class ReservationDateLocks {
+
+	public static final int STRIPES = 64;
+	public static final int SITE_STRIPES = 16;
+
+	private final ReentrantLock[][] mLocks = new ReentrantLock[SITE_STRIPES][STRIPES];
+	private final ReentrantLock[] mIdLocks = new ReentrantLock[STRIPES];
+
+	public ReservationDateLocks() {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			for (int siteStripe = 0; siteStripe < SITE_STRIPES; siteStripe++) {
+				mLocks[siteStripe][stripe] = new ReentrantLock();
+			}
+			mIdLocks[stripe] = new ReentrantLock();
+		}
+	}
+
+	public static long stripes(@NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		long startDay = startDate.toEpochDay();
+		long endDay = endDate.toEpochDay();
+		if (endDay < startDay) {
+			return 0L;
+		}
+		if (endDay - startDay >= STRIPES - 1) {
+			return -1L;
+		}
+		long mask = 0L;
+		for (long day = startDay; day <= endDay; day++) {
+			mask |= 1L << (day & (STRIPES - 1));
+		}
+		return mask;
+	}
+
+	public long lock(@NotNull String siteId, @NotNull LocalDate startDate, @NotNull LocalDate endDate) {
+		return lock(siteId, stripes(startDate, endDate));
+	}
+
+	/*
+	 * Blocks until every stripe in the mask is held for the site and returns the mask,
+	 * which has to be handed back to unlock() with the same site.
+	 */
+	public long lock(@NotNull String siteId, long stripes) {
+		ReentrantLock[] locks = siteLocks(siteId);
+		long remaining = stripes;
+		while (remaining != 0) {
+			locks[Long.numberOfTrailingZeros(remaining)].lock();
+			remaining &= remaining - 1;
+		}
+		return stripes;
+	}
+
+	public void unlock(@NotNull String siteId, long stripes) {
+		ReentrantLock[] locks = siteLocks(siteId);
+		long remaining = stripes;
+		while (remaining != 0) {
+			locks[Long.numberOfTrailingZeros(remaining)].unlock();
+			remaining &= remaining - 1;
+		}
+	}
+
+	// Returns the stripes taken per site stripe, which have to be handed back to unlockAll().
+	public long[] lockAll(@NotNull Collection<Reservation> reservations) {
+		return lockAll(stripesAll(reservations));
+	}
+
+	// The stripes lockAll() takes for the reservations, per site stripe.
+	public static long[] stripesAll(@NotNull Collection<Reservation> reservations) {
+		long[] stripes = new long[SITE_STRIPES];
+		for (Reservation reservation : reservations) {
+			stripes[siteStripe(reservation.getSiteId())] |= stripes(reservation.getStartDate(),
+					reservation.getEndDate());
+		}
+		return stripes;
+	}
+
+	public long[] lockAll(@NotNull long[] stripes) {
+		for (int siteStripe = 0; siteStripe < SITE_STRIPES; siteStripe++) {
+			long remaining = stripes[siteStripe];
+			while (remaining != 0) {
+				mLocks[siteStripe][Long.numberOfTrailingZeros(remaining)].lock();
+				remaining &= remaining - 1;
+			}
+		}
+		return stripes;
+	}
+
+	public void unlockAll(@NotNull long[] stripes) {
+		for (int siteStripe = 0; siteStripe < SITE_STRIPES; siteStripe++) {
+			long remaining = stripes[siteStripe];
+			while (remaining != 0) {
+				mLocks[siteStripe][Long.numberOfTrailingZeros(remaining)].unlock();
+				remaining &= remaining - 1;
+			}
+		}
+	}
+
+	public ReentrantLock lockReservation(@NotNull UUID id) {
+		ReentrantLock lock = mIdLocks[id.hashCode() & (STRIPES - 1)];
+		lock.lock();
+		return lock;
+	}
+
+	private ReentrantLock[] siteLocks(String siteId) {
+		return mLocks[siteStripe(siteId)];
+	}
+
+	private static int siteStripe(String siteId) {
+		return siteId.hashCode() & (SITE_STRIPES - 1);
+	}
+}
@@ -1,12 +1,16 @@
 package org.coffeehouse.home.reservation.job;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.validation.constraints.NotNull;
 
 import org.coffeehouse.home.reservation.data.Reservation;
 import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
 import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -20,8 +24,15 @@ public class UpdateReservationJob implements ExecutableJob<Reservation> {
 		@Autowired
 		public LocalDateHelper mLocalDateHelper;
 
+		@Autowired
+		public ReservationDateLocks mReservationDateLocks;
+
+		@Autowired
+		public WaitlistHandoff mWaitlistHandoff;
+
 		public UpdateReservationJob getJob(UUID id, Reservation reservation) {
-			return new UpdateReservationJob(id, reservation, mReservationDao, mLocalDateHelper);
+			return new UpdateReservationJob(id, reservation, mReservationDao, mLocalDateHelper, mReservationDateLocks,
+					mWaitlistHandoff);
 
 		}
 	}
@@ -31,20 +42,50 @@ public class UpdateReservationJob implements ExecutableJob<Reservation> {
 	@NotNull
 	public LocalDateHelper mLocalDateHelper;
 	@NotNull
+	private ReservationDateLocks mReservationDateLocks;
+	@NotNull
+	private WaitlistHandoff mWaitlistHandoff;
+	@NotNull
 	private Reservation mReservation;
 	@NotNull
 	private UUID mUUID;
 	
 	public UpdateReservationJob(UUID id, Reservation reservation, ReservationDao reservationDao,
-			LocalDateHelper localDateHelper) {
+			LocalDateHelper localDateHelper, ReservationDateLocks reservationDateLocks, WaitlistHandoff waitlistHandoff) {
 		mUUID = id;
 		mReservation = reservation;
 		mReservationDao = reservationDao;
 		mLocalDateHelper = localDateHelper;
+		mReservationDateLocks = reservationDateLocks;
+		mWaitlistHandoff = waitlistHandoff;
 	}
 
+	/*
+	 * The new dates are locked to claim them, the old ones and those of the waiters
+	 * wanting them to hand what the change frees to the waitlist in the same commit.
+	 *
+	 * The reservation keeps its site, so the new dates are locked and validated there.
+	 */
 	@Override
 	public Reservation call() throws Exception {
+		ReentrantLock idLock = mReservationDateLocks.lockReservation(mUUID);
+		try {
+			Reservation existing = mReservationDao.findById(mUUID).orElseThrow(ReservationNotFoundException::new);
+			String siteId = existing.getSiteId();
+			mReservation.setSiteId(siteId);
+			long stripes = mWaitlistHandoff.lock(siteId,
+					ReservationDateLocks.stripes(mReservation.getStartDate(), mReservation.getEndDate()), existing);
+			try {
+				return validateAndModify(existing);
+			} finally {
+				mReservationDateLocks.unlock(siteId, stripes);
+			}
+		} finally {
+			idLock.unlock();
+		}
+	}
+
+	private Reservation validateAndModify(Reservation existing) throws DateRangeException {
 		RESULT validation = mLocalDateHelper.isReservationValid(mReservation);
 		switch( validation ){
 		case INVALID_START:
@@ -56,9 +97,17 @@ public class UpdateReservationJob implements ExecutableJob<Reservation> {
 		case DATE_IN_RANGE_UNAVAILABLE:
 			throw new DateRangeException("One ore more requested dates in desired range have already been reserved.");
 		default:
-			synchronized (mReservationDao) {
-				return mReservationDao.modify(mUUID, mReservation);
+			List<Waiter> claimed = mWaitlistHandoff.claim(existing, mReservation);
+			List<Reservation> successors = mWaitlistHandoff.successors(claimed);
+			Reservation modified;
+			try {
+				modified = mReservationDao.modify(mUUID, mReservation, successors);
+			} catch (RuntimeException exception) {
+				mWaitlistHandoff.failed(claimed);
+				throw exception;
 			}
+			mWaitlistHandoff.committed(claimed, successors);
+			return modified;
 		}
 	}
 
@@ -0,0 +1,182 @@
+package org.coffeehouse.home.reservation.job;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.validation.constraints.NotNull;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Hands the dates a cancel or modify frees to the ReservationWaitlist. The job locks
+ * through lock(), picks the waiters with claim() and passes their reservations to the
+ * DAO with its own change, then calls committed() or failed(). The dates of a released
+ * or expired hold go through handOff(), which saves the waiters on its own.
+ */
+@Slf4j
+public class WaitlistHandoff {
+
+	@Autowired
+	private ReservationWaitlist mReservationWaitlist;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
+
+	@Autowired
+	private LocalDateHelper mLocalDateHelper;
+
+	@Autowired
+	private ReservationDateLocks mReservationDateLocks;
+
+	/*
+	 * Takes the date locks of the site for the given stripes, the dates of the freed
+	 * reservation and those of every waiter wanting any of them, and returns the stripes
+	 * to unlock. The waiters are read with the freed dates locked, and waiters only join
+	 * under the locks of their dates, so none can join for them meanwhile. Should the
+	 * waiters need more stripes than were taken, all are released and taken again in
+	 * order.
+	 */
+	public long lock(@NotNull String siteId, long stripes, @NotNull Reservation freed) {
+		long locked = stripes | ReservationDateLocks.stripes(freed.getStartDate(), freed.getEndDate());
+		while (true) {
+			mReservationDateLocks.lock(siteId, locked);
+			long needed = locked;
+			for (Waiter waiter : mReservationWaitlist.find(siteId, freed.getStartDate(), freed.getEndDate())) {
+				needed |= ReservationDateLocks.stripes(waiter.getReservation().getStartDate(),
+						waiter.getReservation().getEndDate());
+			}
+			if (needed == locked) {
+				return locked;
+			}
+			mReservationDateLocks.unlock(siteId, locked);
+			locked = needed;
+		}
+	}
+
+	/*
+	 * lock() for the dates of many reservations of any sites at once, in the order of
+	 * ReservationDateLocks.lockAll(). Returns the stripes to hand back to unlockAll().
+	 */
+	public long[] lockAll(@NotNull Collection<Reservation> freed) {
+		long[] locked = ReservationDateLocks.stripesAll(freed);
+		while (true) {
+			mReservationDateLocks.lockAll(locked);
+			List<Reservation> dates = new ArrayList<Reservation>(freed);
+			for (Reservation reservation : freed) {
+				mReservationWaitlist.find(reservation.getSiteId(), reservation.getStartDate(), reservation.getEndDate())
+						.forEach(waiter -> dates.add(waiter.getReservation()));
+			}
+			long[] needed = ReservationDateLocks.stripesAll(dates);
+			boolean covered = true;
+			for (int siteStripe = 0; siteStripe < needed.length; siteStripe++) {
+				needed[siteStripe] |= locked[siteStripe];
+				covered &= needed[siteStripe] == locked[siteStripe];
+			}
+			if (covered) {
+				return locked;
+			}
+			mReservationDateLocks.unlockAll(locked);
+			locked = needed;
+		}
+	}
+
+	/*
+	 * Claims the waiters, in the order they joined, that the freed dates let in: every
+	 * day they want is free once the freed reservation is gone, apart from the kept
+	 * dates of a modified reservation, and not given to an earlier waiter. Waiters whose
+	 * dates are no longer bookable are dropped. Called with the locks of lock() held,
+	 * returns the claimed waiters to hand to the DAO.
+	 */
+	public List<Waiter> claim(@NotNull Reservation freed, Reservation kept) {
+		String siteId = freed.getSiteId();
+		return claimAvailable(freed, wanted -> (kept == null || !overlaps(kept, wanted))
+				&& !mReservationHolds.isHeld(siteId, wanted.getStartDate(), wanted.getEndDate())
+				&& mReservationDao.findReservationInRange(siteId, wanted.getStartDate(), wanted.getEndDate())
+						.stream().allMatch(reservation -> reservation.getId().equals(freed.getId())));
+	}
+
+	/*
+	 * Same as claim(), with the caller telling whether the dates of a waiter are free. The
+	 * ReservationBatchWriter asks its cache, which already has the batch applied.
+	 */
+	public List<Waiter> claimAvailable(@NotNull Reservation freed, @NotNull Predicate<Reservation> available) {
+		String siteId = freed.getSiteId();
+		List<Waiter> claimed = new ArrayList<Waiter>();
+		for (Waiter waiter : mReservationWaitlist.find(siteId, freed.getStartDate(), freed.getEndDate())) {
+			Reservation wanted = waiter.getReservation();
+			RESULT limits = mLocalDateHelper.areDatesWithinLimits(wanted.getStartDate(), wanted.getEndDate());
+			if (limits != RESULT.OK) {
+				if (mReservationWaitlist.claim(waiter)) {
+					mReservationWaitlist.notifyDropped(waiter,
+							new DateRangeException("The dates waited for can no longer be reserved."));
+				}
+				continue;
+			}
+			if (claimed.stream().anyMatch(other -> overlaps(other.getReservation(), wanted))
+					|| !available.test(wanted)) {
+				continue;
+			}
+			if (mReservationWaitlist.claim(waiter)) {
+				claimed.add(waiter);
+			}
+		}
+		return claimed;
+	}
+
+	// What the DAO saves for the waiters, copies so that a waiter put back stays as it was.
+	public List<Reservation> successors(@NotNull List<Waiter> claimed) {
+		return claimed.stream().map(waiter -> new Reservation(waiter.getReservation())).collect(Collectors.toList());
+	}
+
+	public void committed(@NotNull List<Waiter> claimed, @NotNull List<Reservation> successors) {
+		for (int i = 0; i < claimed.size(); i++) {
+			mReservationWaitlist.notifyReserved(claimed.get(i), successors.get(i));
+		}
+	}
+
+	public void failed(@NotNull List<Waiter> claimed) {
+		claimed.forEach(mReservationWaitlist::requeue);
+	}
+
+	/*
+	 * Gives the dates of a hold that is gone to the waiters and saves their reservations.
+	 * Called with the locks of lock() held, once the hold no longer takes the dates. The
+	 * hold was never saved, so should the save fail the waiters are put back and the
+	 * dates stay free.
+	 */
+	public void handOff(@NotNull Reservation freed) {
+		List<Waiter> claimed = claim(freed, null);
+		if (claimed.isEmpty()) {
+			return;
+		}
+		List<Reservation> successors = successors(claimed);
+		try {
+			mReservationDao.saveAll(successors);
+		} catch (RuntimeException exception) {
+			log.error("Failed to hand the dates of hold " + freed.getId() + " to the waitlist", exception);
+			failed(claimed);
+			return;
+		}
+		committed(claimed, successors);
+	}
+
+	private static boolean overlaps(Reservation reservation, Reservation other) {
+		return !reservation.getStartDate().isAfter(other.getEndDate())
+				&& !reservation.getEndDate().isBefore(other.getStartDate());
+	}
+}
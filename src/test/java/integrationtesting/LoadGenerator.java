@@ -0,0 +1,214 @@
+package integrationtesting;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Open-loop load against a running application. Requests are started at a fixed rate,
+ * whether or not earlier ones were answered, and each one draws its operation from
+ * the weighted mix. Latency is measured from the time a request was due, not from
+ * when a thread got to send it, so a server falling behind shows in the percentiles
+ * instead of slowing the load down.
+ *
+ * The run has a warmup phase, whose results are dropped, and a measurement phase,
+ * reported per operation and status in the log and as CSV and JSON in the report
+ * directory.
+ *
+ * Arguments: base URL, requests per second, mix as operation=weight pairs, warmup and
+ * measurement seconds, report directory, for example
+ *
+ *   http://localhost:8080 200 availability=5,reserve=7,modify=5,cancel=3 10 30 build/reports/load
+ */
+@Slf4j
+public class LoadGenerator {
+
+	public static enum OPERATION {
+		availability, reserve, modify, cancel
+	}
+
+	// Requests in flight at most, later ones wait for a connection and their wait counts.
+	private static final int MAX_CONNECTIONS = 200;
+
+	private static final int TIMEOUT_MILLIS = 10000;
+
+	private final String mBaseUrl;
+	private final Map<OPERATION, Integer> mMix;
+	private final int mTotalWeight;
+	private final RestTemplate mRestTemplate;
+	private final ObjectMapper mObjectMapper = new ObjectMapper();
+
+	// Reserved by the run, for the modify and cancel requests to work on.
+	private final Queue<String> mReserved = new ConcurrentLinkedQueue<String>();
+
+	private volatile LoadStatistics mStatistics = new LoadStatistics();
+
+	public LoadGenerator(String baseUrl, Map<OPERATION, Integer> mix) {
+		mBaseUrl = baseUrl;
+		mMix = mix;
+		mTotalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+		if (mTotalWeight <= 0) {
+			throw new IllegalArgumentException("The mix needs a positive weight.");
+		}
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(TIMEOUT_MILLIS);
+		requestFactory.setReadTimeout(TIMEOUT_MILLIS);
+		// Shared by every request, a RestTemplate is thread safe once configured.
+		mRestTemplate = new RestTemplate(requestFactory);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+		double rate = args.length > 1 ? Double.parseDouble(args[1]) : 200;
+		Map<OPERATION, Integer> mix = parseMix(args.length > 2 ? args[2] : "availability=5,reserve=7,modify=5,cancel=3");
+		long warmupSeconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+		long measurementSeconds = args.length > 4 ? Long.parseLong(args[4]) : 30;
+		Path reportDirectory = Paths.get(args.length > 5 ? args[5] : "build/reports/load");
+
+		LoadStatistics statistics = new LoadGenerator(baseUrl, mix).run(rate, warmupSeconds, measurementSeconds);
+		statistics.logSummary();
+		Files.createDirectories(reportDirectory);
+		String name = "load-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+		statistics.writeCsv(reportDirectory.resolve(name + ".csv"));
+		statistics.writeJson(reportDirectory.resolve(name + ".json"));
+		log.info("Reports written to " + reportDirectory.resolve(name) + ".{csv,json}");
+	}
+
+	static Map<OPERATION, Integer> parseMix(String mix) {
+		Map<OPERATION, Integer> weights = new LinkedHashMap<OPERATION, Integer>();
+		for (String entry : mix.split(",")) {
+			String[] pair = entry.trim().split("=");
+			weights.put(OPERATION.valueOf(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+		}
+		return weights;
+	}
+
+	// Returns the statistics of the measurement phase, once every request of it is answered.
+	public LoadStatistics run(double rate, long warmupSeconds, long measurementSeconds) throws InterruptedException {
+		ExecutorService connections = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long start = System.nanoTime();
+		long measurementStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measurementStart + TimeUnit.SECONDS.toNanos(measurementSeconds);
+		LoadStatistics measurement = null;
+		for (long due = start; due - end < 0; due += interval) {
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			if (measurement == null && due - measurementStart >= 0) {
+				measurement = new LoadStatistics();
+				mStatistics = measurement;
+			}
+			long requestDue = due;
+			LoadStatistics statistics = mStatistics;
+			OPERATION operation = nextOperation();
+			connections.execute(() -> send(operation, requestDue, statistics));
+		}
+		connections.shutdown();
+		connections.awaitTermination(TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+		if (measurement == null) {
+			measurement = mStatistics;
+		}
+		measurement.finish();
+		return measurement;
+	}
+
+	private OPERATION nextOperation() {
+		int draw = ThreadLocalRandom.current().nextInt(mTotalWeight);
+		for (Map.Entry<OPERATION, Integer> weight : mMix.entrySet()) {
+			draw -= weight.getValue();
+			if (draw < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalStateException("Unreachable, the weights add up to the total.");
+	}
+
+	private void send(OPERATION operation, long due, LoadStatistics statistics) {
+		String id = null;
+		if (operation == OPERATION.modify || operation == OPERATION.cancel) {
+			id = mReserved.poll();
+			if (id == null) {
+				statistics.skipped(operation.name());
+				return;
+			}
+		}
+		statistics.sent(operation.name());
+		String status;
+		try {
+			ResponseEntity<String> response = exchange(operation, id);
+			status = String.valueOf(response.getStatusCodeValue());
+			if (operation == OPERATION.reserve || operation == OPERATION.modify) {
+				mReserved.add(mObjectMapper.readTree(response.getBody()).get("id").asText());
+			}
+		} catch (HttpStatusCodeException exception) {
+			status = String.valueOf(exception.getRawStatusCode());
+			if (operation == OPERATION.modify) {
+				// Still reserved as it was.
+				mReserved.add(id);
+			}
+		} catch (IOException | RuntimeException exception) {
+			status = "error";
+		}
+		statistics.record(operation.name(), status, System.nanoTime() - due);
+	}
+
+	private ResponseEntity<String> exchange(OPERATION operation, String id) {
+		switch (operation) {
+		case availability:
+			return mRestTemplate.getForEntity(mBaseUrl + "/reservation/availability", String.class);
+		case reserve:
+			return mRestTemplate.exchange(mBaseUrl + "/reservation/reserve", HttpMethod.POST, json(randomReservation()),
+					String.class);
+		case modify:
+			return mRestTemplate.exchange(mBaseUrl + "/reservation/modify/" + UUID.fromString(id), HttpMethod.PUT,
+					json(randomReservation()), String.class);
+		default:
+			return mRestTemplate.exchange(mBaseUrl + "/reservation/cancel/" + UUID.fromString(id), HttpMethod.DELETE,
+					null, String.class);
+		}
+	}
+
+	private HttpEntity<String> json(String body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return new HttpEntity<String>(body, headers);
+	}
+
+	// Up to three nights within the bookable window.
+	private String randomReservation() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		LocalDate startDate = LocalDate.now().plusDays(1 + random.nextInt(27));
+		LocalDate endDate = startDate.plusDays(random.nextInt(3));
+		return "{\"name\":\"Brian Leung\",\"email\":\"brian.leung@mail.com\",\"startDate\":\"" + startDate
+				+ "\",\"endDate\":\"" + endDate + "\"}";
+	}
+}
@@ -0,0 +1,137 @@
+package integrationtesting;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Counters and latency histograms of one phase of a load run, per operation and
+ * response status. A status is the HTTP code, or "error" when no response came back.
+ * Latencies are in microseconds, from 1us up to MAX_LATENCY_SECONDS with 3 significant
+ * digits, longer ones are recorded as the maximum.
+ */
+@Slf4j
+public class LoadStatistics {
+
+	public static final long MAX_LATENCY_SECONDS = 60;
+
+	private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(MAX_LATENCY_SECONDS);
+
+	private static final String SUMMARY_ROW = "%-14s %-6s %9s %9s %9s %9s %9s %9s %9s";
+
+	private final ConcurrentHashMap<String, Histogram> mLatencies = new ConcurrentHashMap<String, Histogram>();
+
+	private final ConcurrentHashMap<String, LongAdder> mSent = new ConcurrentHashMap<String, LongAdder>();
+
+	// Operations with nothing to work on, a modify or cancel before anything was reserved.
+	private final ConcurrentHashMap<String, LongAdder> mSkipped = new ConcurrentHashMap<String, LongAdder>();
+
+	private final long mStarted = System.nanoTime();
+
+	private volatile long mFinished;
+
+	public void sent(String operation) {
+		mSent.computeIfAbsent(operation, key -> new LongAdder()).increment();
+	}
+
+	public void skipped(String operation) {
+		mSkipped.computeIfAbsent(operation, key -> new LongAdder()).increment();
+	}
+
+	public void record(String operation, String status, long latencyNanos) {
+		long micros = Math.min(MAX_LATENCY_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+		mLatencies.computeIfAbsent(operation + ' ' + status, key -> new ConcurrentHistogram(MAX_LATENCY_MICROS, 3))
+				.recordValue(micros);
+	}
+
+	public void finish() {
+		mFinished = System.nanoTime();
+	}
+
+	public void writeCsv(Path file) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+			out.println("operation,status,count,throughput,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+			for (Map<String, Object> row : rows().values()) {
+				out.println(String.join(",", row.values().stream().map(String::valueOf).toArray(String[]::new)));
+			}
+		}
+	}
+
+	public void writeJson(Path file) throws IOException {
+		Map<String, Object> report = new TreeMap<String, Object>();
+		report.put("durationSeconds", seconds());
+		report.put("sent", counts(mSent));
+		report.put("skipped", counts(mSkipped));
+		report.put("responses", rows().values());
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+	}
+
+	// The table of the CSV, one line per row.
+	public void logSummary() {
+		log.info(String.format(SUMMARY_ROW, "operation", "status", "count", "req/s", "p50 ms", "p90 ms", "p99 ms",
+				"p99.9 ms", "max ms"));
+		for (Map<String, Object> row : rows().values()) {
+			log.info(String.format(SUMMARY_ROW, row.get("operation"), row.get("status"), row.get("count"),
+					row.get("throughput"), row.get("p50_ms"), row.get("p90_ms"), row.get("p99_ms"), row.get("p999_ms"),
+					row.get("max_ms")));
+		}
+		log.info("sent " + counts(mSent) + ", skipped " + counts(mSkipped));
+	}
+
+	// One row per operation and status, in that order, columns as in the CSV.
+	private Map<String, Map<String, Object>> rows() {
+		double seconds = seconds();
+		Map<String, Map<String, Object>> rows = new TreeMap<String, Map<String, Object>>();
+		mLatencies.forEach((key, histogram) -> {
+			Histogram copy = histogram.copy();
+			Map<String, Object> row = new LinkedHashMap<String, Object>();
+			row.put("operation", key.substring(0, key.indexOf(' ')));
+			row.put("status", key.substring(key.indexOf(' ') + 1));
+			row.put("count", copy.getTotalCount());
+			row.put("throughput", round(copy.getTotalCount() / seconds));
+			row.put("mean_ms", round(copy.getMean() / 1000));
+			row.put("p50_ms", millis(copy, 50));
+			row.put("p90_ms", millis(copy, 90));
+			row.put("p99_ms", millis(copy, 99));
+			row.put("p999_ms", millis(copy, 99.9));
+			row.put("max_ms", round(copy.getMaxValue() / 1000.0));
+			rows.put(key, row);
+		});
+		return rows;
+	}
+
+	private double seconds() {
+		long finished = mFinished != 0 ? mFinished : System.nanoTime();
+		return Math.max(1, finished - mStarted) / 1e9;
+	}
+
+	private static Map<String, Long> counts(Map<String, LongAdder> counters) {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		counters.forEach((operation, counter) -> counts.put(operation, counter.sum()));
+		return counts;
+	}
+
+	private static double millis(Histogram histogram, double percentile) {
+		return round(histogram.getValueAtPercentile(percentile) / 1000.0);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
@@ -0,0 +1,101 @@
+package reservation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.ExecutorConfig;
+import org.coffeehouse.home.reservation.ExecutorConfig.STRATEGY;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestExecutorConfig {
+
+	private static final int QUEUE_CAPACITY = 7;
+
+	@Test
+	public void testFixed() throws Exception {
+		ExecutorService executor = executor(STRATEGY.FIXED);
+		assertTrue(executor instanceof ThreadPoolExecutor);
+		assertEquals(5, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+		assertEquals(QUEUE_CAPACITY, ((ThreadPoolExecutor) executor).getQueue().remainingCapacity());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testWorkStealing() throws Exception {
+		ExecutorService executor = executor(STRATEGY.WORK_STEALING);
+		assertTrue(executor instanceof ForkJoinPool);
+		assertEquals(5, ((ForkJoinPool) executor).getParallelism());
+		assertTrue(threadName(executor).startsWith("reservationQueryExecutor-"));
+	}
+
+	@Test
+	public void testVirtual() throws Exception {
+		boolean virtualThreads;
+		try {
+			Thread.class.getMethod("isVirtual");
+			virtualThreads = true;
+		} catch (NoSuchMethodException exception) {
+			virtualThreads = false;
+		}
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		ExecutorService executor;
+		try {
+			executor = executor(STRATEGY.VIRTUAL, meterRegistry);
+		} catch (IllegalStateException exception) {
+			assertFalse(virtualThreads);
+			return;
+		}
+		if (!virtualThreads) {
+			fail("Virtual threads need Java 21.");
+		}
+		assertEquals(Boolean.TRUE, executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))
+				.get(10, TimeUnit.SECONDS));
+		// Published as the fixed pool's, counted once the job is done.
+		assertEquals(0.0, meterRegistry.get("executor.queued").tag("name", "reservationQueryExecutor").gauge().value(),
+				0.0);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1.0, meterRegistry.get("executor.completed").tag("name", "reservationQueryExecutor")
+				.functionCounter().count(), 0.0);
+		assertEquals(0.0, meterRegistry.get("executor.active").tag("name", "reservationQueryExecutor").gauge().value(),
+				0.0);
+		try {
+			executor.execute(() -> {
+			});
+			fail("A shut down executor should reject jobs.");
+		} catch (RejectedExecutionException exception) {
+			assertEquals(1.0, meterRegistry.get("executor.rejected").tag("name", "reservationQueryExecutor").counter()
+					.count(), 0.0);
+		}
+	}
+
+	private ExecutorService executor(STRATEGY strategy) {
+		return executor(strategy, new SimpleMeterRegistry());
+	}
+
+	private ExecutorService executor(STRATEGY strategy, SimpleMeterRegistry meterRegistry) {
+		ExecutorConfig config = new ExecutorConfig();
+		ReflectionTestUtils.setField(config, "mStrategy", strategy);
+		ReflectionTestUtils.setField(config, "mQueryQueueCapacity", QUEUE_CAPACITY);
+		return config.getQueryReservationExecutor(meterRegistry);
+	}
+
+	private String threadName(ExecutorService executor) throws Exception {
+		try {
+			return executor.submit(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
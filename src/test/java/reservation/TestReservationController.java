@@ -0,0 +1,574 @@
+package reservation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.servlet.AsyncListener;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.jayway.jsonpath.JsonPath;
+
+/*
+ * The endpoints hand their jobs to the executors and release the request thread, so
+ * every job backed call starts asynchronously and is answered on dispatch.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestReservationController {
+
+	@Autowired
+	private MockMvc mMockMvc;
+
+	@Autowired
+	private ApplicationContext mApplicationContext;
+
+	@Autowired
+	@Qualifier("reservationQueryExecutor")
+	private ExecutorService mQueryExecutorService;
+
+	@Autowired
+	@Qualifier("reservationUpdateExecutor")
+	private ExecutorService mUpdateExecutorService;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private NewReservationJobFactory mNewReservationJobFactory;
+
+	@Test
+	public void testAvailability() throws Exception {
+		MvcResult result = mMockMvc.perform(get("/reservation/availability")).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._links.self.href").exists());
+	}
+
+	@Test
+	public void testAvailabilityServedFromCacheUntilWrite() throws Exception {
+		String cached = availabilityBody();
+		CountDownLatch release = blockQueryExecutor();
+		try {
+			// Answered without a query thread.
+			assertEquals(cached, availabilityBody());
+		} finally {
+			release.countDown();
+		}
+
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		String afterWrite = availabilityBody();
+		assertNotEquals(cached, afterWrite);
+		assertFalse(afterWrite.contains("\"" + date + "\""));
+
+		long version = mReservationCache.getVersion();
+		mReservationCache.rotate();
+		assertEquals(version + 1, mReservationCache.getVersion());
+		assertEquals(afterWrite, availabilityBody());
+	}
+
+	@Test
+	public void testAvailabilityNotModified() throws Exception {
+		String path = "/reservation/availability/" + LocalDate.now().plusDays(1) + "/" + LocalDate.now().plusDays(5);
+		MvcResult result = mMockMvc.perform(get(path)).andExpect(request().asyncStarted()).andReturn();
+		String eTag = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		CountDownLatch release = blockQueryExecutor();
+		try {
+			// Answered without a query thread.
+			result = mMockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + eTag))
+					.andExpect(request().asyncStarted()).andReturn();
+			mMockMvc.perform(asyncDispatch(result)).andExpect(status().isNotModified())
+					.andExpect(header().string(HttpHeaders.ETAG, eTag));
+		} finally {
+			release.countDown();
+		}
+
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		result = mMockMvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(request().asyncStarted()).andReturn();
+		String changed = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn().getResponse()
+				.getHeader(HttpHeaders.ETAG);
+		assertNotEquals(eTag, changed);
+	}
+
+	@Test
+	public void testAvailabilityFeed() throws Exception {
+		MvcResult result = mMockMvc.perform(get("/reservation/availability/feed")).andExpect(request().asyncStarted())
+				.andReturn();
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+
+		long deadline = System.currentTimeMillis() + 10000;
+		String events = result.getResponse().getContentAsString();
+		while (!events.contains("\n\n") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			events = result.getResponse().getContentAsString();
+		}
+		assertTrue(events, events.startsWith("event:availability\ndata:"));
+		assertTrue(events, events.contains("\"unavailable\":[\"" + date + "\"]"));
+	}
+
+	@Test
+	public void testReservationPages() throws Exception {
+		Set<String> saved = saveReservations(5);
+
+		Set<String> paged = new HashSet<String>();
+		String page = "/reservation?size=2";
+		for (int i = 0; i < 2; i++) {
+			String body = mMockMvc.perform(get(page)).andExpect(status().isOk())
+					.andExpect(jsonPath("$._embedded.reservationList.length()").value(2))
+					.andExpect(jsonPath("$._embedded.reservationList[0]._links.reservations.href")
+							.value("http://localhost/reservation"))
+					.andReturn().getResponse().getContentAsString();
+			paged.addAll(JsonPath.<List<String>>read(body, "$._embedded.reservationList[*].id"));
+			page = JsonPath.<String>read(body, "$._links.next.href").replace("http://localhost", "");
+		}
+		String body = mMockMvc.perform(get(page)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.reservationList.length()").value(1))
+				.andExpect(jsonPath("$._links.self.href").exists()).andExpect(jsonPath("$._links.next").doesNotExist())
+				.andReturn().getResponse().getContentAsString();
+		paged.addAll(JsonPath.<List<String>>read(body, "$._embedded.reservationList[*].id"));
+		assertEquals(saved, paged);
+
+		mMockMvc.perform(get("/reservation?after=not-a-uuid")).andExpect(status().isBadRequest());
+		mMockMvc.perform(get("/reservation?size=0")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testExport() throws Exception {
+		MvcResult result = mMockMvc.perform(get("/reservation/export")).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(0));
+
+		Set<String> saved = saveReservations(5);
+		result = mMockMvc.perform(get("/reservation/export")).andExpect(request().asyncStarted()).andReturn();
+		String body = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].startDate").exists()).andReturn().getResponse().getContentAsString();
+		assertEquals(saved, new HashSet<String>(JsonPath.<List<String>>read(body, "$[*].id")));
+		assertFalse(body.contains("_links"));
+	}
+
+	@Test
+	public void testImport() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		String csv = "name,email,startDate,endDate\n" + "\"Leung, Brian\",brian.leung@mail.com," + date + "," + date.plusDays(1)
+				+ "\n" + "Brian Leung,brian.leung@mail.com," + date.plusDays(1) + "," + date.plusDays(2) + "\n"
+				+ "Brian Leung,brian.leung@mail.com,tomorrow," + date + "\n" + "Brian Leung,brian.leung@mail.com\n";
+		String[] report = importReport("/reservation/import", "text/csv", csv);
+		assertEquals(5, report.length);
+		assertEquals("accepted", JsonPath.read(report[0], "$.status"));
+		assertEquals("rejected", JsonPath.read(report[1], "$.status"));
+		assertEquals("rejected", JsonPath.read(report[2], "$.status"));
+		assertEquals("rejected", JsonPath.read(report[3], "$.status"));
+		assertEquals(Integer.valueOf(1), JsonPath.read(report[4], "$.accepted"));
+		Reservation imported = mReservationDao.findById(UUID.fromString(JsonPath.read(report[0], "$.id"))).get();
+		assertEquals("Leung, Brian", imported.getName());
+		assertFalse(availabilityBody().contains("\"" + date + "\""));
+
+		// The site of the path wins, the first row is free there, the malformed one ends the import.
+		String lines = reservationJson(date, date) + "\n" + reservationJson(date.minusDays(1), date) + "\n{\"name\":\n"
+				+ reservationJson(date.plusDays(5), date.plusDays(5)) + "\n";
+		report = importReport("/site/lake/reservation/import", "application/x-ndjson", lines);
+		assertEquals(4, report.length);
+		assertEquals("accepted", JsonPath.read(report[0], "$.status"));
+		assertEquals("rejected", JsonPath.read(report[1], "$.status"));
+		assertTrue(JsonPath.<String>read(report[2], "$.error").startsWith("Malformed JSON"));
+		assertEquals(Integer.valueOf(2), JsonPath.read(report[3], "$.rejected"));
+		assertEquals("lake", mReservationDao.findById(UUID.fromString(JsonPath.read(report[0], "$.id"))).get().getSiteId());
+	}
+
+	@Test
+	public void testSiteAvailabilityAndReserve() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		assertFalse(availabilityBody().contains("\"" + date + "\""));
+		assertTrue(availabilityBody("/site/lake/reservation/availability").contains("\"" + date + "\""));
+
+		MvcResult result = mMockMvc.perform(post("/site/lake/reservation/reserve")
+				.contentType(MediaType.APPLICATION_JSON).content(reservationJson(date, date)))
+				.andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andExpect(jsonPath("$.siteId").value("lake"));
+		String range = "/site/lake/reservation/availability/" + date + "/" + date.plusDays(1);
+		String body = availabilityBody(range);
+		assertFalse(body.contains("\"" + date + "\""));
+		assertTrue(body.contains("\"" + date.plusDays(1) + "\""));
+		assertTrue(body.contains("http://localhost" + range));
+
+		mMockMvc.perform(get("/site/lake!/reservation/availability")).andExpect(status().isBadRequest());
+		mMockMvc.perform(post("/site/lake!/reservation/reserve").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(date, date))).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testAvailabilityInvalidRange() throws Exception {
+		String startDate = LocalDate.now().toString();
+		String endDate = LocalDate.now().plusDays(2).toString();
+		mMockMvc.perform(get("/reservation/availability/" + startDate + "/" + endDate))
+				.andExpect(status().isBadRequest());
+		mMockMvc.perform(get("/reservation/availability/not-a-date/" + endDate)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testAvailabilityBatch() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+		String ranges = "[" + rangeJson(date.plusDays(3), date.plusDays(4)) + "," + rangeJson(date.minusDays(1), date.plusDays(1))
+				+ "]";
+
+		MvcResult result = mMockMvc.perform(post("/reservation/availability/batch")
+				.contentType(MediaType.APPLICATION_JSON).content(ranges)).andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.availabilities[0].startDate").value(date.plusDays(3).toString()))
+				.andExpect(jsonPath("$._embedded.availabilities[0].available.length()").value(2))
+				.andExpect(jsonPath("$._embedded.availabilities[1].available[0]").value(date.minusDays(1).toString()))
+				.andExpect(jsonPath("$._embedded.availabilities[1].available[1]").value(date.plusDays(1).toString()))
+				.andExpect(jsonPath("$._links.self.href").value("http://localhost/reservation/availability/batch"));
+
+		// The site's own availability, the reservation is on the default site.
+		result = mMockMvc.perform(post("/site/lake/reservation/availability/batch")
+				.contentType(MediaType.APPLICATION_JSON).content(ranges)).andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.availabilities[1].available.length()").value(3));
+
+		mMockMvc.perform(post("/reservation/availability/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[" + rangeJson(date, date) + "," + rangeJson(LocalDate.now(), date) + "]"))
+				.andExpect(status().isBadRequest());
+		mMockMvc.perform(post("/reservation/availability/batch").contentType(MediaType.APPLICATION_JSON).content("[]"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testReserveAndCancel() throws Exception {
+		MvcResult result = mMockMvc.perform(post("/reservation/reserve").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3))))
+				.andExpect(request().asyncStarted()).andReturn();
+		String body = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._links.self.href").exists()).andReturn().getResponse().getContentAsString();
+		String id = body.replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+
+		result = mMockMvc.perform(delete("/reservation/cancel/" + id)).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isNoContent());
+	}
+
+	@Test
+	public void testHoldConfirmAndRelease() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = LocalDate.now().plusDays(3);
+		MvcResult result = mMockMvc.perform(post("/reservation/hold?minutes=5").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(startDate, endDate))).andExpect(request().asyncStarted()).andReturn();
+		String body = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.expiresAt").exists()).andExpect(jsonPath("$._links.confirm.href").exists())
+				.andReturn().getResponse().getContentAsString();
+		String id = JsonPath.read(body, "$.reservation.id");
+		mMockMvc.perform(get("/reservation/hold/" + id)).andExpect(status().isOk());
+		assertFalse(availabilityBody().contains("\"" + startDate + "\""));
+
+		// The held dates are taken for everyone else.
+		result = mMockMvc.perform(post("/reservation/reserve").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(endDate, endDate))).andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+
+		result = mMockMvc.perform(post("/reservation/hold/" + id + "/confirm")).andExpect(request().asyncStarted())
+				.andReturn();
+		assertEquals(id, reservationId(mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn()));
+		assertTrue(mReservationDao.findById(UUID.fromString(id)).isPresent());
+		mMockMvc.perform(get("/reservation/hold/" + id)).andExpect(status().isNotFound());
+		result = mMockMvc.perform(post("/reservation/hold/" + id + "/confirm")).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+
+		LocalDate released = LocalDate.now().plusDays(5);
+		result = mMockMvc.perform(post("/reservation/hold").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(released, released))).andExpect(request().asyncStarted()).andReturn();
+		id = JsonPath.read(mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn()
+				.getResponse().getContentAsString(), "$.reservation.id");
+		mMockMvc.perform(delete("/reservation/hold/" + id)).andExpect(status().isNoContent());
+		mMockMvc.perform(delete("/reservation/hold/" + id)).andExpect(status().isNotFound());
+		assertTrue(availabilityBody().contains("\"" + released + "\""));
+
+		mMockMvc.perform(post("/reservation/hold?minutes=0").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(released, released))).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testWaitlistHandoffOnCancel() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = LocalDate.now().plusDays(3);
+		MvcResult result = mMockMvc.perform(post("/reservation/waitlist").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(startDate, endDate))).andExpect(request().asyncStarted()).andReturn();
+		String reserved = reservationId(mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn());
+
+		result = mMockMvc.perform(post("/reservation/waitlist").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(endDate, endDate))).andExpect(request().asyncStarted()).andReturn();
+		String body = mMockMvc.perform(asyncDispatch(result)).andExpect(status().isAccepted())
+				.andExpect(jsonPath("$.status").value("WAITING"))
+				.andExpect(jsonPath("$._links.reservation.href").exists()).andReturn().getResponse()
+				.getContentAsString();
+		String id = JsonPath.read(body, "$.reservation.id");
+		mMockMvc.perform(get("/reservation/waitlist/" + id)).andExpect(status().isOk());
+		MvcResult waiting = mMockMvc.perform(get("/reservation/waitlist/" + id + "/reservation"))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		result = mMockMvc.perform(delete("/reservation/cancel/" + reserved)).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isNoContent());
+		assertEquals(id, reservationId(mMockMvc.perform(asyncDispatch(waiting)).andExpect(status().isOk()).andReturn()));
+		mMockMvc.perform(get("/reservation/waitlist/" + id)).andExpect(status().isNotFound());
+		assertFalse(availabilityBody().contains("\"" + endDate + "\""));
+		assertTrue(availabilityBody().contains("\"" + startDate + "\""));
+
+		result = mMockMvc.perform(post("/reservation/waitlist").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(endDate, endDate))).andExpect(request().asyncStarted()).andReturn();
+		id = JsonPath.read(mMockMvc.perform(asyncDispatch(result)).andExpect(status().isAccepted()).andReturn()
+				.getResponse().getContentAsString(), "$.reservation.id");
+		mMockMvc.perform(delete("/reservation/waitlist/" + id)).andExpect(status().isNoContent());
+		mMockMvc.perform(delete("/reservation/waitlist/" + id)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testIdempotentReserve() throws Exception {
+		ThreadPoolExecutor updateExecutor = (ThreadPoolExecutor) mUpdateExecutorService;
+		String json = reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+		MvcResult first;
+		MvcResult duplicate;
+		CountDownLatch release = blockUpdateExecutor();
+		try {
+			first = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+					.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(request().asyncStarted())
+					.andReturn();
+			duplicate = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+					.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(request().asyncStarted())
+					.andReturn();
+			// The duplicate waits for the original instead of queueing a job of its own.
+			assertEquals(1, updateExecutor.getQueue().size());
+		} finally {
+			release.countDown();
+		}
+		String id = reservationId(mMockMvc.perform(asyncDispatch(first)).andExpect(status().isOk()).andReturn());
+		assertEquals(id,
+				reservationId(mMockMvc.perform(asyncDispatch(duplicate)).andExpect(status().isOk()).andReturn()));
+
+		long tasks = updateExecutor.getTaskCount();
+		MvcResult retry = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+				.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(request().asyncStarted())
+				.andReturn();
+		assertEquals(id, reservationId(mMockMvc.perform(asyncDispatch(retry)).andExpect(status().isOk()).andReturn()));
+		assertEquals(tasks, updateExecutor.getTaskCount());
+		assertEquals(1, mReservationDao.findPage(null, 10).size());
+
+		mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(LocalDate.now().plusDays(4), LocalDate.now().plusDays(5))))
+				.andExpect(status().isUnprocessableEntity());
+		mMockMvc.perform(put("/reservation/modify/" + id).header("Idempotency-Key", "reserve-1")
+				.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(status().isUnprocessableEntity());
+	}
+
+	@Test
+	public void testIdempotentReserveRetriesServerFailure() throws Exception {
+		String json = reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3));
+		ReservationDao failing = Mockito.mock(ReservationDao.class);
+		Mockito.when(failing.save(Mockito.any())).thenThrow(new TransientDataAccessResourceException("Down"));
+		ReflectionTestUtils.setField(mNewReservationJobFactory, "mReservationDao", failing);
+		MvcResult result = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+				.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+
+		// Not the request's fault, the retry runs again instead of getting the failure back.
+		ReflectionTestUtils.setField(mNewReservationJobFactory, "mReservationDao", mReservationDao);
+		result = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-1")
+				.contentType(MediaType.APPLICATION_JSON).content(json)).andExpect(request().asyncStarted())
+				.andReturn();
+		String id = reservationId(mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn());
+		assertTrue(mReservationDao.findById(UUID.fromString(id)).isPresent());
+
+		// The dates are taken now, that failure is kept for the key.
+		String taken = reservationJson(LocalDate.now().plusDays(3), LocalDate.now().plusDays(3));
+		result = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-2")
+				.contentType(MediaType.APPLICATION_JSON).content(taken)).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+		mReservationDao.cancel(UUID.fromString(id));
+		result = mMockMvc.perform(post("/reservation/reserve").header("Idempotency-Key", "reserve-2")
+				.contentType(MediaType.APPLICATION_JSON).content(taken)).andExpect(request().asyncStarted())
+				.andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testReserveInvalidDates() throws Exception {
+		MvcResult result = mMockMvc.perform(post("/reservation/reserve").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(10))))
+				.andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testInvalidIds() throws Exception {
+		mMockMvc.perform(put("/reservation/modify/not-a-uuid").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3))))
+				.andExpect(status().isBadRequest());
+		mMockMvc.perform(delete("/reservation/cancel/not-a-uuid")).andExpect(status().isBadRequest());
+
+		MvcResult result = mMockMvc.perform(delete("/reservation/cancel/" + UUID.randomUUID()))
+				.andExpect(request().asyncStarted()).andReturn();
+		mMockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void testTimeoutIsServiceUnavailable() throws Exception {
+		// Keep every query thread busy so the availability job stays queued.
+		CountDownLatch release = blockQueryExecutor();
+		try {
+			MvcResult result = mMockMvc.perform(get("/reservation/availability"))
+					.andExpect(request().asyncStarted()).andReturn();
+			MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+			for (AsyncListener listener : asyncContext.getListeners()) {
+				listener.onTimeout(null);
+			}
+			mMockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testShedIsServiceUnavailable() throws Exception {
+		// Every job is past its deadline before it is submitted.
+		ReflectionTestUtils.setField(mApplicationContext.getBean("reservationController"), "mRequestTimeoutMillis",
+				-1L);
+		mMockMvc.perform(get("/reservation/availability")).andExpect(status().isServiceUnavailable())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+		mMockMvc.perform(post("/reservation/reserve").contentType(MediaType.APPLICATION_JSON)
+				.content(reservationJson(LocalDate.now().plusDays(2), LocalDate.now().plusDays(3))))
+				.andExpect(status().isServiceUnavailable()).andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+		assertEquals(0, mReservationDao.findPage(null, 10).size());
+	}
+
+	private Set<String> saveReservations(int count) {
+		Set<String> ids = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			LocalDate date = LocalDate.now().plusDays(2 + i);
+			ids.add(mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date)).getId()
+					.toString());
+		}
+		return ids;
+	}
+
+	private String availabilityBody() throws Exception {
+		return availabilityBody("/reservation/availability");
+	}
+
+	private String availabilityBody(String path) throws Exception {
+		MvcResult result = mMockMvc.perform(get(path)).andExpect(request().asyncStarted()).andReturn();
+		return mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(jsonPath("$._links.self.href").exists()).andReturn().getResponse().getContentAsString();
+	}
+
+	private CountDownLatch blockQueryExecutor() {
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 5; i++) {
+			mQueryExecutorService.execute(() -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		return release;
+	}
+
+	// Returns once every update thread is taken, so the queue holds only what comes next.
+	private CountDownLatch blockUpdateExecutor() throws InterruptedException {
+		ThreadPoolExecutor updateExecutor = (ThreadPoolExecutor) mUpdateExecutorService;
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(updateExecutor.getMaximumPoolSize());
+		for (int i = 0; i < updateExecutor.getMaximumPoolSize(); i++) {
+			updateExecutor.execute(() -> {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		blocked.await();
+		return release;
+	}
+
+	// One report line per row and the totals.
+	private String[] importReport(String path, String contentType, String body) throws Exception {
+		MvcResult result = mMockMvc.perform(post(path).contentType(contentType).content(body))
+				.andExpect(request().asyncStarted()).andReturn();
+		return mMockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsString().split("\n");
+	}
+
+	private String reservationId(MvcResult result) throws Exception {
+		return JsonPath.read(result.getResponse().getContentAsString(), "$.id");
+	}
+
+	private String rangeJson(LocalDate startDate, LocalDate endDate) {
+		return "{\"startDate\":\"" + startDate + "\",\"endDate\":\"" + endDate + "\"}";
+	}
+
+	private String reservationJson(LocalDate startDate, LocalDate endDate) {
+		return "{\"name\":\"Brian Leung\",\"email\":\"brian.leung@mail.com\",\"startDate\":\"" + startDate
+				+ "\",\"endDate\":\"" + endDate + "\"}";
+	}
+}
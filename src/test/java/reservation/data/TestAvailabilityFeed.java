@@ -0,0 +1,126 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
+import org.coffeehouse.home.reservation.data.AvailabilityFeed.Subscription;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.junit.Test;
+
+/*
+ * The executor only queues, the test decides when deliveries run.
+ */
+public class TestAvailabilityFeed {
+
+	private final LocalDate mDate = LocalDate.now().plusDays(2);
+
+	private final Queue<Runnable> mDeliveries = new ArrayDeque<Runnable>();
+
+	private final AvailabilityFeed mFeed = new AvailabilityFeed(mDeliveries::add);
+
+	private final List<SortedMap<LocalDate, Boolean>> mChanges = new ArrayList<SortedMap<LocalDate, Boolean>>();
+
+	private int mResyncs;
+
+	@Test
+	public void testChangesAreCoalesced() {
+		mFeed.subscribe("site-1", listener());
+		mFeed.subscribe("site-2", listener());
+		mFeed.publish("site-1", mDate, mDate.plusDays(1), false);
+		mFeed.publish("site-1", mDate, mDate, true);
+		mFeed.publish(new Reservation("site-1", "Brian Leung", "brian.leung@mail.com", mDate.plusDays(3),
+				mDate.plusDays(3)), false);
+		// One delivery for the subscription, whatever was published meanwhile.
+		assertEquals(1, mDeliveries.size());
+		deliver();
+
+		TreeMap<LocalDate, Boolean> expected = new TreeMap<LocalDate, Boolean>();
+		expected.put(mDate, true);
+		expected.put(mDate.plusDays(1), false);
+		expected.put(mDate.plusDays(3), false);
+		assertEquals(1, mChanges.size());
+		assertEquals(expected, mChanges.get(0));
+
+		mFeed.publish("site-1", mDate, mDate, false);
+		deliver();
+		assertEquals(2, mChanges.size());
+		assertEquals(1, mChanges.get(1).size());
+	}
+
+	@Test
+	public void testSlowListenerResyncs() {
+		mFeed.subscribe("site-1", listener());
+		for (int i = 0; i <= AvailabilityFeed.MAX_PENDING_DATES; i++) {
+			mFeed.publish("site-1", mDate.plusDays(i), mDate.plusDays(i), false);
+		}
+		mFeed.publish("site-1", mDate, mDate, true);
+		deliver();
+		assertEquals(0, mChanges.size());
+		assertEquals(1, mResyncs);
+
+		mFeed.publish("site-1", mDate, mDate, true);
+		deliver();
+		assertEquals(1, mChanges.size());
+	}
+
+	@Test
+	public void testCancel() {
+		Subscription subscription = mFeed.subscribe("site-1", listener());
+		mFeed.publish("site-1", mDate, mDate, false);
+		subscription.cancel();
+		deliver();
+		assertTrue(mChanges.isEmpty());
+		assertTrue(mFeed.getSites().isEmpty());
+
+		mFeed.publish("site-1", mDate, mDate, false);
+		assertTrue(mDeliveries.isEmpty());
+	}
+
+	@Test
+	public void testFailingListenerIsDropped() {
+		mFeed.subscribe("site-1", new AvailabilityFeed.Listener() {
+			@Override
+			public void onChanges(String siteId, SortedMap<LocalDate, Boolean> changes) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+
+			@Override
+			public void onResync(String siteId) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		});
+		mFeed.publish("site-1", mDate, mDate, false);
+		deliver();
+		assertEquals(0, mFeed.getSubscriptionCount());
+	}
+
+	private AvailabilityFeed.Listener listener() {
+		return new AvailabilityFeed.Listener() {
+			@Override
+			public void onChanges(String siteId, SortedMap<LocalDate, Boolean> changes) {
+				mChanges.add(changes);
+			}
+
+			@Override
+			public void onResync(String siteId) {
+				mResyncs++;
+			}
+		};
+	}
+
+	private void deliver() {
+		while (!mDeliveries.isEmpty()) {
+			mDeliveries.poll().run();
+		}
+	}
+}
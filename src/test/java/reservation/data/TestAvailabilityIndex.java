@@ -0,0 +1,93 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.junit.Test;
+
+public class TestAvailabilityIndex {
+
+	// Aligned to the start of a ring so the tests know where the array wraps.
+	private final LocalDate mBase = LocalDate.ofEpochDay(64 * 300);
+
+	@Test
+	public void testAddAndGet() {
+		AvailabilityIndex index = new AvailabilityIndex(mBase);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(2),
+				mBase.plusDays(4));
+		index.add(reservation);
+
+		assertFalse(index.isReserved(mBase.plusDays(1).toEpochDay()));
+		assertTrue(index.isReserved(mBase.plusDays(2).toEpochDay()));
+		assertTrue(index.isReserved(mBase.plusDays(4).toEpochDay()));
+		assertFalse(index.isReserved(mBase.plusDays(5).toEpochDay()));
+		assertEquals(reservation.getId(), index.get(mBase.plusDays(3).toEpochDay()).get().getId());
+	}
+
+	@Test
+	public void testRemove() {
+		AvailabilityIndex index = new AvailabilityIndex(mBase);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(2),
+				mBase.plusDays(4));
+		Reservation other = new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(5),
+				mBase.plusDays(5));
+		index.add(reservation);
+		index.add(other);
+
+		index.remove(reservation);
+
+		assertFalse(index.isAnyReserved(mBase.plusDays(2).toEpochDay(), mBase.plusDays(4).toEpochDay()));
+		assertTrue(index.isReserved(mBase.plusDays(5).toEpochDay()));
+	}
+
+	@Test
+	public void testAvailabilityAcrossWords() {
+		AvailabilityIndex index = new AvailabilityIndex(mBase, 200);
+		assertEquals(256, index.getCapacity());
+
+		index.add(new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(62), mBase.plusDays(65)));
+		index.add(new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(130), mBase.plusDays(130)));
+
+		List<LocalDate> available = index.getAvailability(mBase.plusDays(60), mBase.plusDays(135));
+		assertEquals(76 - 5, available.size());
+		assertEquals(mBase.plusDays(60), available.get(0));
+		assertEquals(mBase.plusDays(61), available.get(1));
+		assertEquals(mBase.plusDays(66), available.get(2));
+		assertFalse(available.contains(mBase.plusDays(130)));
+		assertEquals(mBase.plusDays(135), available.get(available.size() - 1));
+
+		assertTrue(index.isAnyReserved(mBase.toEpochDay(), mBase.plusDays(62).toEpochDay()));
+		assertFalse(index.isAnyReserved(mBase.plusDays(66).toEpochDay(), mBase.plusDays(129).toEpochDay()));
+	}
+
+	@Test
+	public void testAdvanceWrapsRing() {
+		AvailabilityIndex index = new AvailabilityIndex(mBase);
+		index.add(new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(1), mBase.plusDays(2)));
+
+		// Skip several days at once, the reserved days fall out of the ring.
+		index.advanceTo(mBase.plusDays(10).toEpochDay());
+		assertFalse(index.isTracked(mBase.plusDays(2).toEpochDay()));
+		assertTrue(index.isTracked(mBase.plusDays(73).toEpochDay()));
+
+		// A reservation that crosses the end of the underlying array.
+		Reservation wrapped = new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(62),
+				mBase.plusDays(66));
+		index.add(wrapped);
+		assertTrue(index.isAnyReserved(mBase.plusDays(66).toEpochDay(), mBase.plusDays(70).toEpochDay()));
+
+		List<LocalDate> available = index.getAvailability(mBase.plusDays(60), mBase.plusDays(70));
+		assertEquals(6, available.size());
+		assertEquals(mBase.plusDays(61), available.get(1));
+		assertEquals(mBase.plusDays(67), available.get(2));
+
+		index.remove(wrapped);
+		assertEquals(11, index.countAvailable(mBase.plusDays(60).toEpochDay(), mBase.plusDays(70).toEpochDay()));
+	}
+}
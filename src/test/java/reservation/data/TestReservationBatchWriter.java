@@ -0,0 +1,289 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationBatchWriter;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.STATUS;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.coffeehouse.home.reservation.exceptions.ServiceOverloadedException;
+import org.coffeehouse.home.reservation.job.JoinWaitlistJob.JoinWaitlistJobFactory;
+import org.coffeehouse.home.reservation.job.PlaceHoldJob.PlaceHoldJobFactory;
+import org.coffeehouse.home.reservation.job.ReservationDateLocks;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestReservationBatchWriter {
+
+	@Autowired
+	private ReservationBatchWriter mReservationBatchWriter;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private PlaceHoldJobFactory mPlaceHoldJobFactory;
+
+	@Autowired
+	private ReservationDateLocks mReservationDateLocks;
+
+	@Autowired
+	private JoinWaitlistJobFactory mJoinWaitlistJobFactory;
+
+	@Autowired
+	private ReservationWaitlist mReservationWaitlist;
+
+	@Test
+	public void testConflictingBurstAcceptsOnePerDate() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		List<CompletableFuture<Reservation>> futures = new ArrayList<CompletableFuture<Reservation>>();
+		List<Reservation> requested = new ArrayList<Reservation>();
+		for (int i = 0; i < 100; i++) {
+			// Every request overlaps the one before it.
+			LocalDate date = startDate.plusDays(i % 10);
+			Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", date, date.plusDays(1));
+			requested.add(reservation);
+			futures.add(mReservationBatchWriter.reserve(reservation));
+		}
+
+		int accepted = 0;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				Reservation saved = futures.get(i).get();
+				assertEquals(requested.get(i).getId(), saved.getId());
+				assertTrue(mReservationDao.findById(saved.getId()).isPresent());
+				accepted++;
+			} catch (ExecutionException exception) {
+				assertTrue(exception.getCause() instanceof DateRangeException);
+				assertFalse(mReservationDao.findById(requested.get(i).getId()).isPresent());
+			}
+		}
+		// Ten dates, two nights per reservation.
+		assertEquals(5, accepted);
+		assertEquals(5, mReservationDao.findReservationInRange(startDate, startDate.plusDays(10)).size());
+	}
+
+	@Test
+	public void testReserveModifyCancel() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", startDate, startDate);
+		LocalDate newDate = LocalDate.now().plusDays(6);
+		Reservation modification = new Reservation("Ben Greg", "ben.greg@mail.com", newDate, newDate.plusDays(1));
+
+		CompletableFuture<Reservation> reserved = mReservationBatchWriter.reserve(reservation);
+		CompletableFuture<Reservation> modified = mReservationBatchWriter.modify(reservation.getId(), modification);
+
+		assertEquals(startDate, reserved.get().getStartDate());
+		assertEquals(newDate, modified.get().getStartDate());
+		assertEquals("Ben Greg", mReservationDao.findById(reservation.getId()).get().getName());
+		assertFalse(mReservationCache.get(startDate).isPresent());
+		assertEquals(reservation.getId(), mReservationCache.get(newDate.plusDays(1)).get().getId());
+
+		mReservationBatchWriter.cancel(reservation.getId()).get();
+		assertFalse(mReservationDao.findById(reservation.getId()).isPresent());
+		assertFalse(mReservationCache.get(newDate).isPresent());
+	}
+
+	@Test
+	public void testCancelHandsDatesToTheWaitlist() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = startDate.plusDays(1);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", startDate, endDate);
+		mReservationBatchWriter.reserve(reservation).get();
+		Waiter first = mJoinWaitlistJobFactory
+				.getJob(new Reservation("Ben Greg", "ben.greg@mail.com", endDate, endDate)).call();
+		Waiter second = mJoinWaitlistJobFactory
+				.getJob(new Reservation("Ben Greg", "ben.greg@mail.com", startDate, endDate)).call();
+		assertEquals(STATUS.WAITING, first.getStatus());
+
+		CompletableFuture<Reservation> cancelled = mReservationBatchWriter.cancel(reservation.getId());
+		CompletableFuture<Reservation> late = mReservationBatchWriter
+				.reserve(new Reservation("Brian Leung", "brian.leung@mail.com", endDate, endDate));
+		assertEquals(null, cancelled.get());
+		assertEquals(first.getReservation().getId(), first.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertTrue(mReservationDao.findById(first.getReservation().getId()).isPresent());
+		assertEquals(first.getReservation().getId(), mReservationCache.get(endDate).get().getId());
+		// The second wants the day the first got, a request after the cancel comes too late.
+		assertEquals(STATUS.WAITING, second.getStatus());
+		try {
+			late.get();
+			assertTrue(false);
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof DateRangeException);
+		}
+
+		LocalDate newDate = LocalDate.now().plusDays(8);
+		mReservationBatchWriter.modify(first.getReservation().getId(),
+				new Reservation("Ben Greg", "ben.greg@mail.com", newDate, newDate)).get();
+		assertEquals(second.getReservation().getId(), second.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertEquals(startDate, mReservationDao.findById(second.getReservation().getId()).get().getStartDate());
+		assertEquals(0, mReservationWaitlist.size());
+	}
+
+	@Test
+	public void testSitesBookTheSameDates() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation main = new Reservation("Brian Leung", "brian.leung@mail.com", date, date.plusDays(1));
+		Reservation lake = new Reservation("lake", "Ben Greg", "ben.greg@mail.com", date, date.plusDays(1));
+		Reservation conflicting = new Reservation("lake", "Brian Leung", "brian.leung@mail.com", date, date);
+
+		CompletableFuture<Reservation> reservedMain = mReservationBatchWriter.reserve(main);
+		CompletableFuture<Reservation> reservedLake = mReservationBatchWriter.reserve(lake);
+		CompletableFuture<Reservation> reservedConflicting = mReservationBatchWriter.reserve(conflicting);
+		// Modified while its reservation may still be queued, the site stays.
+		LocalDate newDate = date.plusDays(4);
+		CompletableFuture<Reservation> modified = mReservationBatchWriter.modify(lake.getId(),
+				new Reservation("Ben Greg", "ben.greg@mail.com", newDate, newDate));
+
+		assertEquals("main", reservedMain.get().getSiteId());
+		assertEquals("lake", reservedLake.get().getSiteId());
+		try {
+			reservedConflicting.get();
+			assertTrue(false);
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof DateRangeException);
+		}
+		assertEquals("lake", modified.get().getSiteId());
+		assertEquals(lake.getId(), mReservationCache.get("lake", newDate).get().getId());
+		assertFalse(mReservationCache.get("lake", date).isPresent());
+		assertEquals(main.getId(), mReservationCache.get(date).get().getId());
+		assertEquals(1, mReservationDao.findReservationInRange("lake", date, newDate).size());
+	}
+
+	@Test
+	public void testBatchWaitsForTheDateLocks() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", date, date);
+		long stripes = mReservationDateLocks.lock(reservation.getSiteId(), date, date);
+		CompletableFuture<Reservation> reserved;
+		try {
+			reserved = mReservationBatchWriter.reserve(reservation);
+			Thread.sleep(200);
+			assertFalse(reserved.isDone());
+		} finally {
+			mReservationDateLocks.unlock(reservation.getSiteId(), stripes);
+		}
+		assertEquals(reservation.getId(), reserved.get(5, TimeUnit.SECONDS).getId());
+	}
+
+	/*
+	 * Holds validate under the date locks, the batch writer takes them for each batch. A
+	 * date is never both held and reserved however the two interleave.
+	 */
+	@Test
+	public void testHoldsAndBatchReservesNeverOverlap() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		int dates = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Callable<List<Reservation>>> holders = new ArrayList<Callable<List<Reservation>>>();
+		for (int client = 0; client < 4; client++) {
+			holders.add(() -> {
+				List<Reservation> held = new ArrayList<Reservation>();
+				Random random = new Random();
+				for (int i = 0; i < 50; i++) {
+					LocalDate date = startDate.plusDays(random.nextInt(dates));
+					Reservation reservation = new Reservation("Ben Greg", "ben.greg@mail.com", date, date);
+					try {
+						held.add(mPlaceHoldJobFactory.getJob(reservation, Duration.ofMinutes(5)).call().getReservation());
+					} catch (DateRangeException exception) {
+						// Reserved or held already.
+					}
+				}
+				return held;
+			});
+		}
+		List<Future<List<Reservation>>> holding = new ArrayList<Future<List<Reservation>>>();
+		holders.forEach(holder -> holding.add(executor.submit(holder)));
+		List<CompletableFuture<Reservation>> futures = new ArrayList<CompletableFuture<Reservation>>();
+		for (int i = 0; i < 200; i++) {
+			LocalDate date = startDate.plusDays(i % dates);
+			futures.add(mReservationBatchWriter
+					.reserve(new Reservation("Brian Leung", "brian.leung@mail.com", date, date)));
+		}
+
+		List<Reservation> taken = new ArrayList<Reservation>();
+		for (Future<List<Reservation>> held : holding) {
+			taken.addAll(held.get());
+		}
+		executor.shutdown();
+		for (CompletableFuture<Reservation> future : futures) {
+			try {
+				taken.add(future.get());
+			} catch (ExecutionException exception) {
+				assertTrue(exception.getCause() instanceof DateRangeException);
+			}
+		}
+		Set<LocalDate> takenDates = new HashSet<LocalDate>();
+		for (Reservation reservation : taken) {
+			assertTrue("Held and reserved " + reservation.getStartDate(), takenDates.add(reservation.getStartDate()));
+		}
+		assertEquals(dates, takenDates.size());
+	}
+
+	@Test
+	public void testExpiredWriteIsDropped() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", date, date);
+		try {
+			mReservationBatchWriter.reserve(reservation, System.nanoTime() - 1).get(5, TimeUnit.SECONDS);
+			assertTrue(false);
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof ServiceOverloadedException);
+		}
+		assertFalse(mReservationDao.findById(reservation.getId()).isPresent());
+		assertTrue(mReservationBatchWriter.reserve(reservation).get(5, TimeUnit.SECONDS) != null);
+	}
+
+	@Test
+	public void testUnknownReservation() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation modification = new Reservation("Ben Greg", "ben.greg@mail.com", date, date);
+		try {
+			mReservationBatchWriter.modify(UUID.randomUUID(), modification).get();
+			assertTrue(false);
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof ReservationNotFoundException);
+		}
+		try {
+			mReservationBatchWriter.cancel(UUID.randomUUID()).get();
+			assertTrue(false);
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof ReservationNotFoundException);
+		}
+	}
+}
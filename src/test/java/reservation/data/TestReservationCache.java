@@ -4,14 +4,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
 import org.coffeehouse.home.reservation.data.Reservation;
 import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationCache.Window;
 import org.coffeehouse.home.reservation.data.ReservationH2DaoImpl;
+import org.coffeehouse.home.reservation.data.RotateReservationCacheTask;
 import org.coffeehouse.home.reservation.exceptions.ReservationAlreadyExistsException;
 import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
@@ -19,9 +30,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.config.CronTask;
+import org.springframework.scheduling.config.ScheduledTask;
+import org.springframework.scheduling.config.ScheduledTaskHolder;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = ReservationApplication.class)
@@ -37,6 +54,9 @@ public class TestReservationCache {
 	@Autowired
 	private QueryAvailabilityJobFactory mQueryAvailabilityJobFactory;
 
+	@Autowired
+	private ScheduledTaskHolder mScheduledTaskHolder;
+
 	@Test
 	public void TestReservationCacheNewReservation() throws ReservationAlreadyExistsException {
 		LocalDate dummy = LocalDate.now();
@@ -153,4 +173,132 @@ public class TestReservationCache {
 		availability2.stream().forEach(date -> assertTrue(cache_availability2.contains(date)));
 	}
 
+	@Test
+	public void TestReservationCacheRotationIsScheduled() {
+		CronTask rotation = mScheduledTaskHolder.getScheduledTasks().stream().map(ScheduledTask::getTask)
+				.filter(task -> task instanceof CronTask && task.getRunnable() instanceof ScheduledMethodRunnable
+						&& ((ScheduledMethodRunnable) task.getRunnable()).getTarget() instanceof RotateReservationCacheTask)
+				.map(task -> (CronTask) task).findFirst().get();
+		assertEquals("rotateReservationCache",
+				((ScheduledMethodRunnable) rotation.getRunnable()).getMethod().getName());
+
+		// Every day at 00:05.
+		ZoneId zone = ZoneId.systemDefault();
+		LocalDateTime midnight = LocalDate.of(2019, 7, 1).atStartOfDay();
+		Date next = new CronSequenceGenerator(rotation.getExpression(), TimeZone.getTimeZone(zone))
+				.next(Date.from(midnight.atZone(zone).toInstant()));
+		assertEquals(midnight.plusMinutes(5), LocalDateTime.ofInstant(next.toInstant(), zone));
+	}
+
+	@Test
+	public void TestReservationCacheRotateCatchesUp() {
+		LocalDate today = LocalDate.of(2019, 7, 1);
+		ReservationCache reservationCache = newReservationCache(today);
+		reservationCache.add(new Reservation("Brian Leung", "brian.leung@mail.com", today.plusDays(1), today.plusDays(2)));
+		reservationCache.add(new Reservation("Brian Leung", "brian.leung@mail.com", today.plusDays(5), today.plusDays(5)));
+		long version = reservationCache.getVersion();
+		long otherVersion = reservationCache.getVersion("other");
+
+		// Three runs missed.
+		LocalDate later = today.plusDays(3);
+		ReflectionTestUtils.setField(reservationCache, "mClock", clock(later));
+		Window previous = reservationCache.rotate();
+
+		assertEquals(today.plusDays(1), previous.getStartDate());
+		Window window = reservationCache.getWindow();
+		assertEquals(later.plusDays(1), window.getStartDate());
+		assertEquals(later.plusMonths(1), window.getEndDate());
+		assertFalse(reservationCache.get(today.plusDays(2)).isPresent());
+		assertTrue(reservationCache.get(today.plusDays(5)).isPresent());
+
+		List<LocalDate> availability = reservationCache.getAvailability();
+		assertEquals(later.plusDays(1), availability.get(0));
+		assertEquals(later.plusMonths(1), availability.get(availability.size() - 1));
+		assertFalse(availability.contains(today.plusDays(5)));
+		assertEquals(version + 1, reservationCache.getVersion());
+		assertEquals(otherVersion + 1, reservationCache.getVersion("other"));
+	}
+
+	@Test
+	public void TestReservationCacheRotateWhileReading() throws InterruptedException {
+		LocalDate today = LocalDate.of(2019, 1, 1);
+		ReservationCache reservationCache = newReservationCache(today);
+		AtomicBoolean rotating = new AtomicBoolean(true);
+		AtomicReference<List<LocalDate>> torn = new AtomicReference<List<LocalDate>>();
+		Thread[] readers = new Thread[4];
+		for (int reader = 0; reader < readers.length; reader++) {
+			readers[reader] = new Thread(() -> {
+				while (rotating.get()) {
+					// Nothing is reserved, so a whole window: one month from its first day.
+					List<LocalDate> availability = reservationCache.getAvailability();
+					LocalDate first = availability.get(0);
+					if (!availability.get(availability.size() - 1).equals(first.minusDays(1).plusMonths(1))
+							|| availability.size() != first.minusDays(1).plusMonths(1).toEpochDay() - first.toEpochDay() + 1) {
+						torn.set(availability);
+					}
+				}
+			});
+			readers[reader].start();
+		}
+		for (int day = 1; day <= 365; day++) {
+			ReflectionTestUtils.setField(reservationCache, "mClock", clock(today.plusDays(day)));
+			reservationCache.rotate();
+		}
+		rotating.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertEquals(null, torn.get());
+		assertEquals(today.plusDays(366), reservationCache.getWindow().getStartDate());
+	}
+
+	@Test
+	public void TestReservationCacheReadersSeeWholeChanges() throws InterruptedException {
+		LocalDate today = LocalDate.of(2019, 7, 1);
+		ReservationCache reservationCache = newReservationCache(today);
+		Reservation first = new Reservation("Brian Leung", "brian.leung@mail.com", today.plusDays(2), today.plusDays(4));
+		Reservation second = new Reservation(first);
+		second.setStartDate(today.plusDays(10));
+		second.setEndDate(today.plusDays(12));
+		reservationCache.add(first);
+		int windowDays = reservationCache.getAvailability().size() + 3;
+
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicReference<List<LocalDate>> torn = new AtomicReference<List<LocalDate>>();
+		Thread[] readers = new Thread[4];
+		for (int reader = 0; reader < readers.length; reader++) {
+			readers[reader] = new Thread(() -> {
+				while (writing.get()) {
+					// Exactly one of the two stays is taken, never both, neither or a part of one.
+					List<LocalDate> availability = reservationCache.getAvailability();
+					boolean firstTaken = !availability.contains(first.getStartDate());
+					Reservation taken = firstTaken ? first : second;
+					Reservation free = firstTaken ? second : first;
+					if (availability.size() != windowDays - 3 || availability.contains(taken.getEndDate())
+							|| !availability.contains(free.getStartDate()) || !availability.contains(free.getEndDate())) {
+						torn.set(availability);
+					}
+				}
+			});
+			readers[reader].start();
+		}
+		for (int move = 0; move < 100000; move++) {
+			reservationCache.replace(move % 2 == 0 ? second : first);
+		}
+		writing.set(false);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertEquals(null, torn.get());
+		assertTrue(reservationCache.get(first.getStartDate()).isPresent());
+		assertFalse(reservationCache.get(second.getStartDate()).isPresent());
+	}
+
+	private static ReservationCache newReservationCache(LocalDate today) {
+		return new ReservationCache(new AvailabilityIndex(today), today.plusDays(1), today.plusMonths(1), clock(today));
+	}
+
+	private static Clock clock(LocalDate today) {
+		return Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+	}
 }
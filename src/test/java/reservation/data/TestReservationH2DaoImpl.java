@@ -4,24 +4,38 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
 import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
 import org.coffeehouse.home.reservation.data.ReservationH2DaoImpl;
+import org.coffeehouse.home.reservation.data.ReservationIdCache;
 import org.coffeehouse.home.reservation.exceptions.ReservationAlreadyExistsException;
 import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = ReservationApplication.class)
 @DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
@@ -30,6 +44,18 @@ public class TestReservationH2DaoImpl {
 	@Autowired
 	private ReservationH2DaoImpl mReservationH2DaoImpl;
 
+	@Autowired
+	private JdbcTemplate mJdbcTemplate;
+
+	@Autowired
+	private MeterRegistry mMeterRegistry;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private AvailabilityFeed mAvailabilityFeed;
+
 	@Test
 	public void insertNewReservation() throws ReservationAlreadyExistsException {
 		LocalDate dummy = LocalDate.now();
@@ -158,4 +184,99 @@ public class TestReservationH2DaoImpl {
 				searchEndDate);
 		assertEquals(4, reservations.size());
 	}
+
+	@Test
+	public void rangeLookupUsesDateIndex() {
+		String plan = mJdbcTemplate.queryForObject(
+				"explain select * from reservation where site_id = 'main' and end_date >= current_date "
+						+ "and start_date <= current_date + 30",
+				String.class);
+		assertTrue(plan, plan.toUpperCase().contains("IDX_RESERVATION_SITE_END_START"));
+	}
+
+	@Test
+	public void findByIdServedFromCacheUntilWrite() throws ReservationNotFoundException {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation reservation = mReservationH2DaoImpl
+				.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date));
+
+		// Changed behind the DAO's back, the cached copy is still returned.
+		mJdbcTemplate.update("update reservation set name = 'Ben Greg'");
+		assertEquals("Brian Leung", mReservationH2DaoImpl.findById(reservation.getId()).get().getName());
+		assertEquals(1.0, mMeterRegistry.get("cache.gets").tag("cache", ReservationIdCache.CACHE_NAME)
+				.tag("result", "hit").functionCounter().count(), 0);
+
+		Reservation modification = new Reservation("Carl Dean", "carl.dean@mail.com", date, date.plusDays(1));
+		mReservationH2DaoImpl.modify(reservation.getId(), modification);
+		Reservation found = mReservationH2DaoImpl.findById(reservation.getId()).get();
+		assertEquals("Carl Dean", found.getName());
+		assertEquals(date.plusDays(1), found.getEndDate());
+
+		mReservationH2DaoImpl.cancel(reservation.getId());
+		assertFalse(mReservationH2DaoImpl.findById(reservation.getId()).isPresent());
+	}
+
+	@Test
+	public void failedHandoffRestoresTheReservation() throws Exception {
+		String site = Reservation.DEFAULT_SITE;
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation reservation = mReservationH2DaoImpl
+				.save(new Reservation("Brian Leung", "brian.leung@mail.com", date, date.plusDays(1)));
+		BlockingQueue<SortedMap<LocalDate, Boolean>> changes = new LinkedBlockingQueue<SortedMap<LocalDate, Boolean>>();
+		mAvailabilityFeed.subscribe(site, new AvailabilityFeed.Listener() {
+			@Override
+			public void onChanges(String siteId, SortedMap<LocalDate, Boolean> dates) throws IOException {
+				changes.add(dates);
+			}
+
+			@Override
+			public void onResync(String siteId) throws IOException {
+			}
+		});
+
+		long version = mReservationCache.getVersion(site);
+		try {
+			mReservationH2DaoImpl.cancel(reservation.getId(), successors(date));
+			assertTrue(false);
+		} catch (RuntimeException expected) {
+		}
+		assertTrue(mReservationCache.getVersion(site) > version);
+		assertRestored(reservation, date);
+
+		LocalDate newDate = date.plusDays(3);
+		try {
+			mReservationH2DaoImpl.modify(reservation.getId(),
+					new Reservation("Carl Dean", "carl.dean@mail.com", newDate, newDate), successors(date));
+			assertTrue(false);
+		} catch (RuntimeException expected) {
+		}
+		assertRestored(reservation, date);
+		assertTrue(mReservationCache.get(site, newDate).isEmpty());
+
+		// Nothing was published for the rolled back changes, the first delivery is the next write.
+		mReservationH2DaoImpl.save(new Reservation("Carl Dean", "carl.dean@mail.com", newDate, newDate));
+		SortedMap<LocalDate, Boolean> expected = new TreeMap<LocalDate, Boolean>();
+		expected.put(newDate, false);
+		assertEquals(expected, changes.poll(5, TimeUnit.SECONDS));
+	}
+
+	// Two successors with one id, the second insert fails and the transaction rolls back.
+	private static List<Reservation> successors(LocalDate date) {
+		Reservation first = new Reservation("Ben Greg", "ben.greg@mail.com", date, date);
+		Reservation second = new Reservation(first);
+		second.setStartDate(date.plusDays(1));
+		second.setEndDate(date.plusDays(1));
+		return Arrays.asList(first, second);
+	}
+
+	private void assertRestored(Reservation reservation, LocalDate date) {
+		Reservation found = mReservationH2DaoImpl.findById(reservation.getId()).get();
+		assertEquals("Brian Leung", found.getName());
+		assertEquals(date, found.getStartDate());
+		for (LocalDate day = date; !day.isAfter(date.plusDays(1)); day = day.plusDays(1)) {
+			assertEquals(reservation.getId(), mReservationCache.get(reservation.getSiteId(), day).get().getId());
+		}
+		assertEquals(1, mReservationH2DaoImpl.findReservationInRange(reservation.getSiteId(), date, date.plusDays(1))
+				.size());
+	}
 }
@@ -0,0 +1,94 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.job.LocalDateHelper;
+import org.coffeehouse.home.reservation.job.LocalDateHelper.RESULT;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestReservationHolds {
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private LocalDateHelper mLocalDateHelper;
+
+	@Autowired
+	private QueryAvailabilityJobFactory mQueryAvailabilityJobFactory;
+
+	@Test
+	public void TestReservationHoldsTakeTheDates() {
+		LocalDate date = LocalDate.now().plusDays(3);
+		long version = mReservationCache.getVersion();
+		mReservationHolds.place(new Reservation("Brian Leung", "brian.leung@mail.com", date, date),
+				Duration.ofMinutes(10));
+
+		assertFalse(mReservationCache.isAvailable(date, date));
+		assertTrue(mReservationCache.getVersion() > version);
+		assertEquals(RESULT.DATE_IN_RANGE_UNAVAILABLE, mLocalDateHelper.areDatesValid(date.minusDays(1), date));
+		assertFalse(mQueryAvailabilityJobFactory.getJob(date.minusDays(1), date.plusDays(1)).call().contains(date));
+		assertTrue(mReservationHolds.isHeld(Reservation.DEFAULT_SITE, date, date.plusDays(1)));
+		assertFalse(mReservationHolds.isHeld("other", date, date));
+	}
+
+	@Test
+	public void TestReservationHoldsExpireInBatches() {
+		LocalDate date = LocalDate.now().plusDays(3);
+		int count = ReservationHolds.RELEASE_BATCH_SIZE * 2 + 10;
+		for (int site = 0; site < count; site++) {
+			mReservationHolds.place(new Reservation("site-" + site, "Brian Leung", "brian.leung@mail.com", date, date),
+					Duration.ofMinutes(5));
+		}
+		Reservation confirmed = new Reservation("Brian Leung", "brian.leung@mail.com", date, date);
+		mReservationHolds.place(confirmed, Duration.ofMinutes(5));
+		Reservation later = new Reservation("Brian Leung", "brian.leung@mail.com", date.plusDays(1), date.plusDays(1));
+		mReservationHolds.place(later, Duration.ofMinutes(20));
+		// Taken to be confirmed before it expires, expiry must leave its dates alone.
+		assertEquals(confirmed, mReservationHolds.take(confirmed.getId()));
+
+		ReflectionTestUtils.setField(mReservationHolds, "mClock",
+				Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(6)));
+		mReservationHolds.expire();
+
+		assertEquals(1, mReservationHolds.size());
+		for (int site = 0; site < count; site++) {
+			assertTrue(mReservationCache.isAvailable("site-" + site, date, date));
+		}
+		assertFalse(mReservationCache.isAvailable(date, date));
+		assertFalse(mReservationCache.isAvailable(date.plusDays(1), date.plusDays(1)));
+		assertNull(mReservationHolds.take(confirmed.getId()));
+
+		ReflectionTestUtils.setField(mReservationHolds, "mClock",
+				Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(21)));
+		mReservationHolds.expire();
+		assertEquals(0, mReservationHolds.size());
+		assertTrue(mReservationCache.isAvailable(date.plusDays(1), date.plusDays(1)));
+		assertFalse(mReservationHolds.release(later.getId()));
+	}
+}
@@ -0,0 +1,129 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationIdCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TestReservationIdCache {
+
+	private final LocalDate mDate = LocalDate.now().plusDays(2);
+
+	private final Map<UUID, Reservation> mTable = new HashMap<UUID, Reservation>();
+
+	private final AtomicInteger mLoads = new AtomicInteger();
+
+	private MeterRegistry mMeterRegistry;
+
+	private ReservationIdCache mCache;
+
+	@Before
+	public void setUp() {
+		mMeterRegistry = new SimpleMeterRegistry();
+		mCache = new ReservationIdCache(2);
+		ReflectionTestUtils.setField(mCache, "mMeterRegistry", mMeterRegistry);
+		mCache.init();
+	}
+
+	@Test
+	public void testSecondChanceEviction() {
+		Reservation first = reservation();
+		Reservation second = reservation();
+		mCache.put(first);
+		mCache.put(second);
+		// Referenced, so the next put evicts second instead.
+		get(first.getId());
+		mCache.put(reservation());
+		assertEquals(2, mCache.size());
+
+		get(first.getId());
+		assertEquals(0, mLoads.get());
+		get(second.getId());
+		assertEquals(1, mLoads.get());
+
+		assertEquals(2.0, count("cache.gets", "hit"), 0);
+		assertEquals(1.0, count("cache.gets", "miss"), 0);
+		// Second came back and pushed another entry out.
+		assertEquals(2.0, mMeterRegistry.get("cache.evictions").functionCounter().count(), 0);
+		assertEquals(2.0, mMeterRegistry.get("cache.size").gauge().value(), 0);
+	}
+
+	@Test
+	public void testCopiesAndInvalidate() {
+		Reservation reservation = reservation();
+		mCache.put(reservation);
+		reservation.setName("Ben Greg");
+		Reservation cached = get(reservation.getId()).get();
+		assertEquals("Brian Leung", cached.getName());
+		assertNotSame(cached, get(reservation.getId()).get());
+
+		mTable.remove(reservation.getId());
+		mCache.invalidate(reservation.getId());
+		assertFalse(get(reservation.getId()).isPresent());
+		// Unknown ids are not cached.
+		assertFalse(get(reservation.getId()).isPresent());
+		assertEquals(2, mLoads.get());
+	}
+
+	@Test
+	public void testLoadRacingWriteIsNotCached() {
+		Reservation reservation = reservation();
+		// Cancelled while the old row was being read.
+		Optional<Reservation> loaded = mCache.get(reservation.getId(), id -> {
+			mCache.invalidate(id);
+			return Optional.of(reservation);
+		});
+		assertEquals(reservation.getId(), loaded.get().getId());
+		assertEquals(0, mCache.size());
+
+		get(reservation.getId());
+		assertEquals(1, mCache.size());
+	}
+
+	@Test
+	public void testInvalidatedIdsArePurged() {
+		for (int i = 0; i < 1000; i++) {
+			Reservation reservation = reservation();
+			mCache.put(reservation);
+			mCache.invalidate(reservation.getId());
+		}
+		assertEquals(0, mCache.size());
+		assertEquals(0.0, mMeterRegistry.get("cache.evictions").functionCounter().count(), 0);
+		Collection<?> evictionQueue = (Collection<?>) ReflectionTestUtils.getField(mCache, "mEvictionQueue");
+		assertTrue(evictionQueue.size() <= 3);
+	}
+
+	private Optional<Reservation> get(UUID uuid) {
+		return mCache.get(uuid, id -> {
+			mLoads.incrementAndGet();
+			return Optional.ofNullable(mTable.get(id));
+		});
+	}
+
+	private Reservation reservation() {
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate);
+		mTable.put(reservation.getId(), reservation);
+		return reservation;
+	}
+
+	private double count(String name, String result) {
+		return mMeterRegistry.get(name).tag("result", result).functionCounter().count();
+	}
+}
@@ -0,0 +1,94 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationIntervalTree;
+import org.junit.Test;
+
+public class TestReservationIntervalTree {
+
+	private final LocalDate mBase = LocalDate.of(2020, 1, 1);
+
+	@Test
+	public void testOverlapIncludesBothEnds() {
+		ReservationIntervalTree tree = new ReservationIntervalTree();
+		Reservation before = reservation(0, 2);
+		Reservation straddlingStart = reservation(3, 5);
+		Reservation inside = reservation(6, 6);
+		Reservation straddlingEnd = reservation(9, 11);
+		Reservation after = reservation(12, 14);
+		for (Reservation reservation : new Reservation[] { after, inside, before, straddlingEnd, straddlingStart }) {
+			tree.add(reservation);
+		}
+
+		List<Reservation> found = tree.findOverlapping(mBase.plusDays(5), mBase.plusDays(9));
+		assertEquals(3, found.size());
+		assertEquals(straddlingStart.getId(), found.get(0).getId());
+		assertEquals(inside.getId(), found.get(1).getId());
+		assertEquals(straddlingEnd.getId(), found.get(2).getId());
+	}
+
+	@Test
+	public void testRemoveAndReplace() {
+		ReservationIntervalTree tree = new ReservationIntervalTree();
+		Reservation reservation = reservation(3, 5);
+		tree.add(reservation);
+		reservation.setEndDate(mBase.plusDays(8));
+		tree.add(reservation);
+		assertEquals(1, tree.size());
+		assertEquals(mBase.plusDays(8), tree.findOverlapping(mBase.plusDays(7), mBase.plusDays(7)).get(0).getEndDate());
+
+		// Unknown start date, nothing to remove.
+		tree.remove(reservation.getId(), mBase);
+		assertEquals(1, tree.size());
+		tree.remove(reservation.getId(), reservation.getStartDate());
+		assertEquals(0, tree.size());
+		assertTrue(tree.findOverlapping(mBase, mBase.plusDays(10)).isEmpty());
+	}
+
+	@Test
+	public void testMatchesLinearScan() {
+		Random random = new Random(7);
+		ReservationIntervalTree tree = new ReservationIntervalTree();
+		List<Reservation> reservations = new ArrayList<Reservation>();
+		for (int i = 0; i < 5000; i++) {
+			int start = random.nextInt(2000);
+			Reservation reservation = reservation(start, start + random.nextInt(i % 50 == 0 ? 400 : 3));
+			reservations.add(reservation);
+			tree.add(reservation);
+		}
+		for (int i = 0; i < 1000; i++) {
+			Reservation removed = reservations.remove(random.nextInt(reservations.size()));
+			tree.remove(removed.getId(), removed.getStartDate());
+		}
+		assertEquals(reservations.size(), tree.size());
+
+		for (int i = 0; i < 200; i++) {
+			LocalDate startDate = mBase.plusDays(random.nextInt(2100));
+			LocalDate endDate = startDate.plusDays(random.nextInt(30));
+			Set<UUID> expected = new HashSet<UUID>();
+			for (Reservation reservation : reservations) {
+				if (!reservation.getEndDate().isBefore(startDate) && !reservation.getStartDate().isAfter(endDate)) {
+					expected.add(reservation.getId());
+				}
+			}
+			Set<UUID> found = new HashSet<UUID>();
+			tree.findOverlapping(startDate, endDate).forEach(reservation -> found.add(reservation.getId()));
+			assertEquals(expected, found);
+		}
+	}
+
+	private Reservation reservation(int startDay, int endDay) {
+		return new Reservation("Brian Leung", "brian.leung@mail.com", mBase.plusDays(startDay), mBase.plusDays(endDay));
+	}
+}
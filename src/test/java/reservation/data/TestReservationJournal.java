@@ -0,0 +1,150 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationJournal;
+import org.coffeehouse.home.reservation.data.ReservationJournal.OPERATION;
+import org.coffeehouse.home.reservation.data.ReservationJournal.Record;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestReservationJournal {
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private final LocalDate mDate = LocalDate.now().plusDays(2);
+
+	@Test
+	public void testReplayInOrder() throws Exception {
+		Path directory = mFolder.getRoot().toPath();
+		ReservationJournal journal = open(directory, new ArrayList<Record>());
+		Reservation reservation = new Reservation("lake", "Brian Leung", "brian.leung@mail.com", mDate, mDate);
+		Reservation modified = new Reservation(reservation);
+		modified.setName(null);
+		modified.setEndDate(mDate.plusDays(1));
+		journal.append(OPERATION.RESERVE, reservation.getId(), reservation);
+		journal.append(OPERATION.MODIFY, reservation.getId(), modified);
+		journal.sync(journal.append(OPERATION.CANCEL, reservation.getId(), null));
+		journal.close();
+
+		List<Record> records = new ArrayList<Record>();
+		open(directory, records);
+		assertEquals(3, records.size());
+		assertEquals(OPERATION.RESERVE, records.get(0).getOperation());
+		assertEquals(reservation, records.get(0).getReservation());
+		assertEquals(OPERATION.MODIFY, records.get(1).getOperation());
+		assertEquals(modified, records.get(1).getReservation());
+		assertEquals(OPERATION.CANCEL, records.get(2).getOperation());
+		assertEquals(reservation.getId(), records.get(2).getId());
+		assertNull(records.get(2).getReservation());
+	}
+
+	@Test
+	public void testSegmentsRoll() throws Exception {
+		Path directory = mFolder.getRoot().toPath();
+		ReservationJournal journal = open(directory, new ArrayList<Record>());
+		List<UUID> appended = new ArrayList<UUID>();
+		for (int i = 0; i < 500; i++) {
+			Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate);
+			journal.append(OPERATION.RESERVE, reservation.getId(), reservation);
+			appended.add(reservation.getId());
+		}
+		journal.close();
+		assertTrue(segments(directory).size() > 1);
+
+		List<Record> records = new ArrayList<Record>();
+		journal = open(directory, records);
+		assertEquals(appended, records.stream().map(Record::getId).collect(Collectors.toList()));
+		// Appends go on in the last segment.
+		journal.append(OPERATION.CANCEL, appended.get(0), null);
+		journal.close();
+		records.clear();
+		open(directory, records);
+		assertEquals(501, records.size());
+	}
+
+	@Test
+	public void testOpenAtPosition() throws Exception {
+		Path directory = mFolder.getRoot().toPath();
+		ReservationJournal journal = open(directory, new ArrayList<Record>());
+		for (int i = 0; i < 300; i++) {
+			Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate);
+			journal.append(OPERATION.RESERVE, reservation.getId(), reservation);
+		}
+		long position = journal.getPosition();
+		UUID cancelled = UUID.randomUUID();
+		journal.append(OPERATION.CANCEL, cancelled, null);
+		journal.deleteSegmentsBefore(position);
+		assertEquals(1, segments(directory).size());
+		journal.close();
+
+		List<Record> records = new ArrayList<Record>();
+		journal = new ReservationJournal(directory, ReservationJournal.MIN_SEGMENT_BYTES, true);
+		journal.open(position, records::add);
+		assertEquals(1, records.size());
+		assertEquals(cancelled, records.get(0).getId());
+	}
+
+	@Test
+	public void testTornRecordIsDropped() throws Exception {
+		Path directory = mFolder.getRoot().toPath();
+		ReservationJournal journal = open(directory, new ArrayList<Record>());
+		Reservation kept = new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate);
+		journal.append(OPERATION.RESERVE, kept.getId(), kept);
+		Reservation torn = new Reservation("Ben Greg", "ben.greg@mail.com", mDate, mDate);
+		journal.append(OPERATION.RESERVE, torn.getId(), torn);
+		journal.close();
+		// Breaks the last byte of the second record, as if the crash came halfway through it.
+		Path segment = segments(directory).get(0);
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			long end = 8;
+			for (int i = 0; i < 2; i++) {
+				file.seek(end);
+				end += 8 + file.readInt();
+			}
+			file.seek(end - 1);
+			int last = file.read();
+			file.seek(end - 1);
+			file.write(last ^ 0xff);
+		}
+
+		List<Record> records = new ArrayList<Record>();
+		journal = open(directory, records);
+		assertEquals(1, records.size());
+		assertEquals(kept.getId(), records.get(0).getId());
+		journal.append(OPERATION.CANCEL, kept.getId(), null);
+		journal.close();
+		records.clear();
+		open(directory, records);
+		assertEquals(2, records.size());
+		assertEquals(OPERATION.CANCEL, records.get(1).getOperation());
+	}
+
+	private ReservationJournal open(Path directory, List<Record> records) throws IOException {
+		ReservationJournal journal = new ReservationJournal(directory, ReservationJournal.MIN_SEGMENT_BYTES, true);
+		journal.open(records::add);
+		return journal;
+	}
+
+	private List<Path> segments(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.sorted().collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.coffeehouse.home.reservation.data.AvailabilityFeed;
+import org.coffeehouse.home.reservation.data.AvailabilityIndex;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationIntervalTree;
+import org.coffeehouse.home.reservation.data.ReservationJournal;
+import org.coffeehouse.home.reservation.data.ReservationJournalDaoImpl;
+import org.coffeehouse.home.reservation.exceptions.ReservationNotFoundException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TestReservationJournalDaoImpl {
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private final LocalDate mDate = LocalDate.now().plusDays(2);
+
+	@Test
+	public void testRestartReplaysTheJournal() throws Exception {
+		ReservationCache cache = cache();
+		ReservationJournalDaoImpl dao = dao(cache);
+		Reservation kept = dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate));
+		Reservation lake = dao.save(new Reservation("lake", "Ben Greg", "ben.greg@mail.com", mDate, mDate));
+		Reservation cancelled = dao.save(
+				new Reservation("Brian Leung", "brian.leung@mail.com", mDate.plusDays(3), mDate.plusDays(3)));
+		long version = cache.getVersion("lake");
+		dao.modify(lake.getId(), new Reservation("Ben Greg", "ben.greg@mail.com", mDate, mDate.plusDays(1)));
+		assertEquals(version + 1, cache.getVersion("lake"));
+		dao.cancel(cancelled.getId());
+		dao.close();
+
+		cache = cache();
+		dao = dao(cache);
+		assertEquals(kept, dao.findById(kept.getId()).get());
+		assertFalse(dao.findById(cancelled.getId()).isPresent());
+		assertEquals("lake", dao.findById(lake.getId()).get().getSiteId());
+		assertEquals(mDate.plusDays(1), dao.findById(lake.getId()).get().getEndDate());
+		assertEquals(1, dao.findReservationInRange(mDate, mDate.plusDays(5)).size());
+		assertEquals(1, dao.findReservationInRange("lake", mDate.plusDays(1), mDate.plusDays(1)).size());
+		assertEquals(kept.getId(), cache.get(mDate).get().getId());
+		assertEquals(lake.getId(), cache.get("lake", mDate.plusDays(1)).get().getId());
+		assertFalse(cache.get(mDate.plusDays(3)).isPresent());
+		dao.close();
+	}
+
+	@Test
+	public void testStartsFromSnapshotAndJournalTail() throws Exception {
+		ReservationJournalDaoImpl dao = dao(cache());
+		LocalDate past = LocalDate.now().minusDays(40);
+		Reservation history = dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", past, past));
+		Reservation cancelled = dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", mDate, mDate));
+		Reservation modified = dao.save(
+				new Reservation("lake", "Ben Greg", "ben.greg@mail.com", mDate.plusDays(3), mDate.plusDays(3)));
+		for (int i = 0; i < 200; i++) {
+			Reservation filler = dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", past, past));
+			dao.cancel(filler.getId());
+		}
+		dao.snapshot();
+		// Only the last segment is left.
+		assertEquals(2, Files.list(mFolder.getRoot().toPath()).count());
+		dao.cancel(cancelled.getId());
+		dao.modify(modified.getId(), new Reservation("Ben Greg", "ben.greg@mail.com", mDate, mDate));
+		Reservation added = dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", mDate.plusDays(1),
+				mDate.plusDays(1)));
+
+		// Opened again without closing, as after a crash.
+		ReservationCache cache = cache();
+		ReservationJournalDaoImpl restarted = dao(cache);
+		assertFalse(restarted.findById(cancelled.getId()).isPresent());
+		assertEquals(mDate, restarted.findById(modified.getId()).get().getStartDate());
+		assertEquals(modified.getId(), cache.get("lake", mDate).get().getId());
+		assertFalse(cache.get("lake", mDate.plusDays(3)).isPresent());
+		assertEquals(added.getId(), cache.get(mDate.plusDays(1)).get().getId());
+		assertFalse(cache.get(mDate).isPresent());
+		// The history is only in the snapshot, the first lookup reaching back loads it.
+		assertEquals(history.getId(), restarted.findReservationInRange(past, past).iterator().next().getId());
+
+		Set<UUID> ids = new HashSet<UUID>();
+		restarted.forEachReservation(reservation -> ids.add(reservation.getId()));
+		assertEquals(new HashSet<UUID>(Arrays.asList(history.getId(), modified.getId(), added.getId())), ids);
+		List<Reservation> page = restarted.findPage(null, 2);
+		assertEquals(2, page.size());
+		assertEquals(1, restarted.findPage(page.get(1).getId(), 2).size());
+		restarted.close();
+	}
+
+	@Test
+	public void testPagesAndCopies() throws Exception {
+		ReservationJournalDaoImpl dao = dao(cache());
+		for (int i = 0; i < 5; i++) {
+			dao.save(new Reservation("Brian Leung", "brian.leung@mail.com", mDate.plusDays(i), mDate.plusDays(i)));
+		}
+		List<Reservation> first = dao.findPage(null, 3);
+		assertEquals(3, first.size());
+		List<Reservation> rest = dao.findPage(first.get(2).getId(), 3);
+		assertEquals(2, rest.size());
+		assertTrue(first.get(2).getId().compareTo(rest.get(0).getId()) < 0);
+
+		first.get(0).setName("Ben Greg");
+		assertEquals("Brian Leung", dao.findById(first.get(0).getId()).get().getName());
+		dao.close();
+	}
+
+	@Test(expected = ReservationNotFoundException.class)
+	public void testCancelUnknownReservation() throws Exception {
+		dao(cache()).cancel(UUID.randomUUID());
+	}
+
+	private ReservationCache cache() {
+		LocalDate today = LocalDate.now();
+		return new ReservationCache(new AvailabilityIndex(today), today.plusDays(1), today.plusMonths(1));
+	}
+
+	private ReservationJournalDaoImpl dao(ReservationCache cache) throws Exception {
+		ReservationJournalDaoImpl dao = new ReservationJournalDaoImpl(
+				new ReservationJournal(mFolder.getRoot().toPath(), ReservationJournal.MIN_SEGMENT_BYTES, true),
+				mFolder.getRoot().toPath().resolve("reservations.snapshot"), 0);
+		ReflectionTestUtils.setField(dao, "mReservationCache", cache);
+		ReflectionTestUtils.setField(dao, "mIntervalTree", new ReservationIntervalTree());
+		ReflectionTestUtils.setField(dao, "mAvailabilityFeed", new AvailabilityFeed(Runnable::run));
+		dao.init();
+		return dao;
+	}
+}
@@ -0,0 +1,58 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationSnapshot;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestReservationSnapshot {
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void testWriteAndMap() throws Exception {
+		Path file = mFolder.getRoot().toPath().resolve("reservations.snapshot");
+		assertEquals(0, ReservationSnapshot.open(file).size());
+
+		LocalDate today = LocalDate.now();
+		List<Reservation> reservations = new ArrayList<Reservation>();
+		for (int i = 0; i < 1000; i++) {
+			LocalDate date = today.plusDays(i % 2 == 0 ? -1 - i : 1 + i % 30);
+			reservations.add(new Reservation("site-" + i % 3, "Brian Leung", i % 5 == 0 ? null : "brian.leung@mail.com",
+					date, date));
+		}
+		reservations.sort((first, second) -> first.getId().compareTo(second.getId()));
+		ReservationSnapshot.write(file, 42L, today, reservations.iterator());
+
+		ReservationSnapshot snapshot = ReservationSnapshot.open(file);
+		assertEquals(42L, snapshot.getJournalPosition());
+		assertEquals(today, snapshot.getHorizon());
+		assertEquals(1000, snapshot.size());
+		for (Reservation reservation : reservations) {
+			assertEquals(reservation, snapshot.find(reservation.getId()).get());
+		}
+		assertFalse(snapshot.find(UUID.randomUUID()).isPresent());
+
+		List<Reservation> window = new ArrayList<Reservation>();
+		snapshot.forEachInWindow(window::add);
+		assertEquals(500, window.size());
+
+		Iterator<UUID> ids = snapshot.ids(reservations.get(997).getId());
+		assertEquals(reservations.get(998).getId(), ids.next());
+		assertEquals(reservations.get(999).getId(), ids.next());
+		assertFalse(ids.hasNext());
+		assertEquals(reservations.get(0).getId(), snapshot.ids(null).next());
+	}
+}
@@ -0,0 +1,56 @@
+package reservation.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.coffeehouse.home.reservation.data.TimingWheel;
+import org.coffeehouse.home.reservation.data.TimingWheel.Timeout;
+import org.junit.Test;
+
+public class TestTimingWheel {
+
+	@Test
+	public void TestTimingWheelFiresOnTheTickOfTheDeadline() {
+		TimingWheel<String> wheel = new TimingWheel<String>(8, 100, 0);
+		wheel.schedule("a", 250);
+		wheel.schedule("b", 300);
+
+		assertTrue(wheel.advance(299).isEmpty());
+		assertEquals(Arrays.asList("a", "b"), wheel.advance(300));
+		assertTrue(wheel.advance(1000).isEmpty());
+	}
+
+	@Test
+	public void TestTimingWheelWaitsFullTurns() {
+		TimingWheel<String> wheel = new TimingWheel<String>(4, 10, 0);
+		// Same bucket, two and zero turns ahead.
+		wheel.schedule("later", 85);
+		wheel.schedule("soon", 5);
+
+		assertEquals(Arrays.asList("soon"), wheel.advance(10));
+		for (long now = 20; now < 90; now += 10) {
+			assertTrue(wheel.advance(now).isEmpty());
+		}
+		assertEquals(Arrays.asList("later"), wheel.advance(90));
+	}
+
+	@Test
+	public void TestTimingWheelCatchesUpAndSkipsCancelled() {
+		TimingWheel<String> wheel = new TimingWheel<String>(4, 10, 0);
+		wheel.schedule("first", 15);
+		Timeout<String> cancelled = wheel.schedule("cancelled", 25);
+		wheel.schedule("second", 1000);
+		cancelled.cancel();
+
+		// Many turns at once, in tick order.
+		List<String> expired = wheel.advance(5000);
+		assertEquals(Arrays.asList("first", "second"), expired);
+
+		// Already past when it reaches the wheel.
+		wheel.schedule("past", 100);
+		assertEquals(Arrays.asList("past"), wheel.advance(5010));
+	}
+}
@@ -0,0 +1,140 @@
+package reservation.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.coffeehouse.home.reservation.job.UpdateReservationJob.UpdateReservationJobFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/*
+ * Tests for the striped write path. Concurrent requests for the same or overlapping
+ * dates must never double book, requests for disjoint dates commit in parallel.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestConcurrentReservationJobs {
+
+	@Autowired
+	private NewReservationJobFactory mReservationJobFactory;
+
+	@Autowired
+	private UpdateReservationJobFactory mUpdateReservationJobFactory;
+
+	@Autowired
+	private CancelReservationJobFactory mCancelReservationJobFactory;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Test
+	public void testNoDoubleBookingUnderContention() throws Exception {
+		int threads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<Void>> clients = new ArrayList<Callable<Void>>();
+		for (int client = 0; client < threads; client++) {
+			clients.add(() -> {
+				Random random = new Random();
+				for (int i = 0; i < 50; i++) {
+					LocalDate startDate = LocalDate.now().plusDays(1 + random.nextInt(10));
+					LocalDate endDate = startDate.plusDays(random.nextInt(3));
+					Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", startDate,
+							endDate);
+					try {
+						Reservation saved = mReservationJobFactory.getJob(reservation).call();
+						LocalDate newStart = LocalDate.now().plusDays(1 + random.nextInt(10));
+						Reservation modification = new Reservation("Brian Leung", "brian.leung@mail.com", newStart,
+								newStart);
+						mUpdateReservationJobFactory.getJob(saved.getId(), modification).call();
+						if (random.nextBoolean()) {
+							mCancelReservationJobFactory.getJob(saved.getId()).call();
+						}
+					} catch (DateRangeException exception) {
+						// Lost the race for one of the dates.
+					}
+				}
+				return null;
+			});
+		}
+		for (Future<Void> future : executor.invokeAll(clients)) {
+			future.get();
+		}
+		executor.shutdown();
+
+		Collection<Reservation> reservations = mReservationDao.findReservationInRange(LocalDate.now(),
+				LocalDate.now().plusMonths(1));
+		assertTrue(!reservations.isEmpty());
+		Set<LocalDate> reserved = new HashSet<LocalDate>();
+		for (Reservation reservation : reservations) {
+			LocalDate date = reservation.getStartDate();
+			while (!date.isAfter(reservation.getEndDate())) {
+				assertTrue("Double booked " + date, reserved.add(date));
+				assertEquals(reservation.getId(), mReservationCache.get(date).get().getId());
+				date = date.plusDays(1);
+			}
+		}
+	}
+
+	/*
+	 * Two reserves for dates on different stripes, each waiting in the save, under its
+	 * date locks, until the other one saves too. Only one of them would ever get there
+	 * if the writes were serialized. The throughput this gives is measured by
+	 * DisjointWriteBenchmark.
+	 */
+	@Test
+	public void testDisjointWritesHoldLocksTogether() throws Exception {
+		CountDownLatch saving = new CountDownLatch(2);
+		ReservationDao blocking = Mockito.mock(ReservationDao.class);
+		Mockito.when(blocking.save(Mockito.any())).thenAnswer(invocation -> {
+			saving.countDown();
+			assertTrue("The other write never got its locks", saving.await(10, TimeUnit.SECONDS));
+			return invocation.getArgument(0);
+		});
+		ReflectionTestUtils.setField(mReservationJobFactory, "mReservationDao", blocking);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		List<Future<Reservation>> writes = new ArrayList<Future<Reservation>>();
+		for (int day = 1; day <= 2; day++) {
+			LocalDate date = LocalDate.now().plusDays(day);
+			writes.add(executor.submit(mReservationJobFactory
+					.getJob(new Reservation("Brian Leung", "brian.leung@mail.com", date, date))));
+		}
+		for (Future<Reservation> write : writes) {
+			write.get(20, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+		assertEquals(0, saving.getCount());
+	}
+}
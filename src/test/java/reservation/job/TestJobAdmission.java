@@ -0,0 +1,132 @@
+package reservation.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.coffeehouse.home.reservation.exceptions.ServiceOverloadedException;
+import org.coffeehouse.home.reservation.job.JobAdmission;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * The executor only queues, the test decides when a job gets its thread.
+ */
+public class TestJobAdmission {
+
+	private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+	private final Queue<Runnable> mQueue = new ArrayDeque<Runnable>();
+	private final AtomicInteger mRuns = new AtomicInteger();
+	private MeterRegistry mMeterRegistry;
+	private JobAdmission mAdmission;
+
+	@Before
+	public void setUp() {
+		mMeterRegistry = new SimpleMeterRegistry();
+		mAdmission = new JobAdmission("test", mQueue::add, 2, 3, mMeterRegistry);
+	}
+
+	@Test
+	public void testFullQueueIsTurnedAway() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		}
+		try {
+			mAdmission.submit(this::run, System.nanoTime() + HOUR);
+			fail("A fourth waiting job should be turned away.");
+		} catch (ServiceOverloadedException exception) {
+			assertTrue(exception.getRetryAfterSeconds() >= 1);
+		}
+		assertEquals(3, mAdmission.getQueued());
+		assertEquals(1.0, shed("queue"), 0.0);
+
+		mQueue.poll().run();
+		assertEquals(2, mAdmission.getQueued());
+		mAdmission.submit(this::run, System.nanoTime() + HOUR);
+	}
+
+	@Test
+	public void testEstimatedWaitPastDeadlineIsTurnedAway() throws Exception {
+		// Two waiting jobs of 10 seconds on two threads, 10 seconds until a thread is free.
+		ReflectionTestUtils.setField(mAdmission, "mAverageRunNanos", TimeUnit.SECONDS.toNanos(10));
+		mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		assertEquals(TimeUnit.SECONDS.toNanos(10), mAdmission.estimatedWaitNanos(2));
+		try {
+			mAdmission.submit(this::run, System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+			fail("A job that would start after its deadline should be turned away.");
+		} catch (ServiceOverloadedException exception) {
+			assertEquals(10, exception.getRetryAfterSeconds());
+		}
+		assertEquals(1.0, shed("deadline"), 0.0);
+		mAdmission.submit(this::run, System.nanoTime() + TimeUnit.SECONDS.toNanos(20));
+	}
+
+	@Test
+	public void testExpiredJobIsDropped() throws Exception {
+		CompletableFuture<Integer> expired = mAdmission.submit(this::run,
+				System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+		CompletableFuture<Integer> current = mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		Thread.sleep(100);
+		mQueue.poll().run();
+		mQueue.poll().run();
+
+		try {
+			expired.get();
+			fail("A job past its deadline should not run.");
+		} catch (ExecutionException exception) {
+			assertTrue(exception.getCause() instanceof ServiceOverloadedException);
+		}
+		assertEquals(Integer.valueOf(1), current.get());
+		assertEquals(1, mRuns.get());
+		assertEquals(1.0, shed("expired"), 0.0);
+		assertFalse(current.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testAdmittedWriteCountsUntilDone() throws Exception {
+		CompletableFuture<Integer> write = new CompletableFuture<Integer>();
+		long deadline = System.nanoTime() + HOUR;
+		AtomicLong handed = new AtomicLong();
+		CompletableFuture<Integer> admitted = mAdmission.admit(writeDeadline -> {
+			handed.set(writeDeadline);
+			return write;
+		}, deadline);
+		assertEquals(deadline, handed.get());
+		mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		mAdmission.submit(this::run, System.nanoTime() + HOUR);
+		assertEquals(3, mAdmission.getQueued());
+		try {
+			mAdmission.admit(writeDeadline -> new CompletableFuture<Integer>(), System.nanoTime() + HOUR);
+			fail("A write past the queue capacity should be turned away.");
+		} catch (ServiceOverloadedException exception) {
+			assertEquals(1.0, shed("queue"), 0.0);
+		}
+
+		write.complete(7);
+		assertEquals(Integer.valueOf(7), admitted.get());
+		assertEquals(2, mAdmission.getQueued());
+	}
+
+	private Integer run() {
+		return mRuns.incrementAndGet();
+	}
+
+	private double shed(String reason) {
+		return mMeterRegistry.get(JobAdmission.JOB_SHED).tag("reason", reason).counter().count();
+	}
+}
@@ -0,0 +1,77 @@
+package reservation.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.exceptions.DateRangeException;
+import org.coffeehouse.home.reservation.job.JobMetrics;
+import org.coffeehouse.home.reservation.job.NewReservationJob.NewReservationJobFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestJobMetrics {
+
+	@Autowired
+	private JobMetrics mJobMetrics;
+
+	@Autowired
+	private NewReservationJobFactory mReservationJobFactory;
+
+	@Autowired
+	private MeterRegistry mMeterRegistry;
+
+	@Autowired
+	@Qualifier("reservationUpdateExecutor")
+	private ExecutorService mUpdateExecutorService;
+
+	@Test
+	public void testJobTimersAndValidationCounters() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation reservation = new Reservation("Brian Leung", "brian.leung@mail.com", date, date);
+		mJobMetrics.instrument(mReservationJobFactory.getJob(reservation)).call();
+		try {
+			Reservation conflict = new Reservation("Ben Greg", "ben.greg@mail.com", date, date);
+			mJobMetrics.instrument(mReservationJobFactory.getJob(conflict)).call();
+			assertTrue(false);
+		} catch (DateRangeException exception) {
+			// Expected, the date is taken.
+		}
+
+		assertEquals(2, mMeterRegistry.get(JobMetrics.JOB_WAIT).tag("job", "NewReservationJob").timer().count());
+		assertEquals(1, mMeterRegistry.get(JobMetrics.JOB_RUN).tag("job", "NewReservationJob")
+				.tag("exception", "None").timer().count());
+		assertEquals(1, mMeterRegistry.get(JobMetrics.JOB_RUN).tag("job", "NewReservationJob")
+				.tag("exception", "DateRangeException").timer().count());
+		assertEquals(1.0, mMeterRegistry.get(JobMetrics.VALIDATION).tag("result", "OK").counter().count(), 0);
+		assertEquals(1.0, mMeterRegistry.get(JobMetrics.VALIDATION).tag("result", "DATE_IN_RANGE_UNAVAILABLE")
+				.counter().count(), 0);
+	}
+
+	@Test
+	public void testExecutorMetrics() throws Exception {
+		mUpdateExecutorService.submit(() -> null).get(1, TimeUnit.SECONDS);
+		assertEquals(1.0,
+				mMeterRegistry.get("executor.pool.size").tag("name", "reservationUpdateExecutor").gauge().value(), 0);
+		assertEquals(0.0,
+				mMeterRegistry.get("executor.queued").tag("name", "reservationQueryExecutor").gauge().value(), 0);
+		assertEquals(0.0,
+				mMeterRegistry.get("executor.rejected").tag("name", "reservationQueryExecutor").counter().count(), 0);
+	}
+}
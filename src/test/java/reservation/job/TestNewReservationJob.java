@@ -88,6 +88,20 @@ public class TestNewReservationJob {
 		mReservationJobFactory.getJob(reservation2).call();
 	}
 	
+	@Test
+	public void testSitesReserveTheSameDates() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = startDate.plusDays(2);
+		
+		mReservationJobFactory.getJob(new Reservation("Brian Leung", "brian.leung@mail.com", startDate, endDate)).call();
+		Reservation lake = new Reservation("lake", "Ben Greg", "ben.greg@mail.com", startDate, endDate);
+		mReservationJobFactory.getJob(lake).call();
+		
+		assertEquals("lake", mReservationDao.findById(lake.getId()).get().getSiteId());
+		assertEquals(1, mReservationDao.findReservationInRange(startDate, endDate).size());
+		assertEquals(1, mReservationDao.findReservationInRange("lake", startDate, endDate).size());
+	}
+	
 	@Test
 	public void testReservationJob() throws Exception {
 		LocalDate startDate = LocalDate.now().plusDays(1);
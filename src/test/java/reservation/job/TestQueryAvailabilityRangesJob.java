@@ -0,0 +1,77 @@
+package reservation.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.DateRange;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationCache;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.exceptions.ReservationAlreadyExistsException;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityJob.QueryAvailabilityJobFactory;
+import org.coffeehouse.home.reservation.job.QueryAvailabilityRangesJob;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestQueryAvailabilityRangesJob {
+
+	@Autowired
+	private QueryAvailabilityJobFactory mQueryAvailabilityJobFactory;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationCache mReservationCache;
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
+
+	/*
+	 * Dates
+	 * 1	free
+	 * 2	reservation
+	 * 3	reservation
+	 * 4	free
+	 * 5	free
+	 * 6	reservation2
+	 */
+	@Test
+	public void TestQueryAvailabilityRangesJobInRequestOrder() throws ReservationAlreadyExistsException {
+		LocalDate day = LocalDate.now();
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", day.plusDays(2), day.plusDays(3)));
+		mReservationDao.save(new Reservation("Brian Leung", "brian.leung@mail.com", day.plusDays(6), day.plusDays(6)));
+		List<DateRange> ranges = Arrays.asList(new DateRange(day.plusDays(4), day.plusDays(6)),
+				new DateRange(day.plusDays(1), day.plusDays(3)), new DateRange(day.plusDays(2), day.plusDays(2)),
+				new DateRange(day.plusDays(1), day.plusDays(6)));
+
+		for (boolean useCache : new boolean[] { false, true }) {
+			List<List<LocalDate>> availability = new QueryAvailabilityRangesJob(Reservation.DEFAULT_SITE, ranges,
+					mReservationDao, mReservationCache, mReservationHolds, useCache).call();
+
+			assertEquals(4, availability.size());
+			assertEquals(Arrays.asList(day.plusDays(4), day.plusDays(5)), availability.get(0));
+			assertEquals(Arrays.asList(day.plusDays(1)), availability.get(1));
+			assertTrue(availability.get(2).isEmpty());
+			// The same as asking for the range on its own.
+			for (int i = 0; i < ranges.size(); i++) {
+				assertEquals(mQueryAvailabilityJobFactory
+						.getJob(ranges.get(i).getStartDate(), ranges.get(i).getEndDate()).call(), availability.get(i));
+			}
+		}
+	}
+}
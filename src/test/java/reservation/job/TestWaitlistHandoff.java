@@ -0,0 +1,141 @@
+package reservation.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.coffeehouse.home.reservation.ReservationApplication;
+import org.coffeehouse.home.reservation.data.Reservation;
+import org.coffeehouse.home.reservation.data.ReservationDao;
+import org.coffeehouse.home.reservation.data.ReservationHolds;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.STATUS;
+import org.coffeehouse.home.reservation.data.ReservationWaitlist.Waiter;
+import org.coffeehouse.home.reservation.job.CancelReservationJob.CancelReservationJobFactory;
+import org.coffeehouse.home.reservation.job.JoinWaitlistJob.JoinWaitlistJobFactory;
+import org.coffeehouse.home.reservation.job.UpdateReservationJob.UpdateReservationJobFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReservationApplication.class)
+@DirtiesContext(classMode = ClassMode.BEFORE_EACH_TEST_METHOD)
+public class TestWaitlistHandoff {
+
+	@Autowired
+	private JoinWaitlistJobFactory mJoinWaitlistJobFactory;
+
+	@Autowired
+	private CancelReservationJobFactory mCancelReservationJobFactory;
+
+	@Autowired
+	private UpdateReservationJobFactory mUpdateReservationJobFactory;
+
+	@Autowired
+	private ReservationWaitlist mReservationWaitlist;
+
+	@Autowired
+	private ReservationDao mReservationDao;
+
+	@Autowired
+	private ReservationHolds mReservationHolds;
+
+	@Test
+	public void testCancelHandsDatesInOrder() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = LocalDate.now().plusDays(3);
+		Reservation reservation = mReservationDao.save(reservation(startDate, endDate));
+
+		Waiter first = mJoinWaitlistJobFactory.getJob(reservation(endDate, endDate)).call();
+		Waiter second = mJoinWaitlistJobFactory.getJob(reservation(startDate, endDate)).call();
+		Waiter third = mJoinWaitlistJobFactory.getJob(reservation(startDate, startDate)).call();
+		assertEquals(STATUS.WAITING, first.getStatus());
+		assertEquals(3, mReservationWaitlist.size());
+
+		mCancelReservationJobFactory.getJob(reservation.getId()).call();
+		// The second overlaps the first, the third fits in the day the first left.
+		assertEquals(first.getReservation().getId(), first.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertEquals(third.getReservation().getId(), third.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertEquals(STATUS.WAITING, second.getStatus());
+		assertTrue(mReservationDao.findById(first.getReservation().getId()).isPresent());
+		assertTrue(mReservationDao.findById(third.getReservation().getId()).isPresent());
+		assertFalse(mReservationDao.findById(second.getReservation().getId()).isPresent());
+		assertEquals(1, mReservationWaitlist.size());
+
+		assertTrue(mReservationWaitlist.leave(second.getReservation().getId()));
+		assertEquals(STATUS.LEFT, second.getStatus());
+		assertEquals(0, mReservationWaitlist.size());
+	}
+
+	@Test
+	public void testModifyHandsOldDates() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		LocalDate endDate = LocalDate.now().plusDays(3);
+		Reservation reservation = mReservationDao.save(reservation(startDate, endDate));
+		Reservation other = mReservationDao.save(reservation(endDate.plusDays(1), endDate.plusDays(1)));
+
+		Waiter blocked = mJoinWaitlistJobFactory.getJob(reservation(endDate, endDate.plusDays(1))).call();
+		Waiter freed = mJoinWaitlistJobFactory.getJob(reservation(startDate, endDate)).call();
+
+		LocalDate newDate = LocalDate.now().plusDays(8);
+		mUpdateReservationJobFactory.getJob(reservation.getId(), reservation(newDate, newDate)).call();
+		// The first waiter still wants a day the other reservation has.
+		assertEquals(freed.getReservation().getId(), freed.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertEquals(STATUS.WAITING, blocked.getStatus());
+		assertEquals(newDate, mReservationDao.findById(reservation.getId()).get().getStartDate());
+		assertTrue(mReservationDao.findById(other.getId()).isPresent());
+	}
+
+	@Test
+	public void testJoinFreeDatesReserves() throws Exception {
+		LocalDate startDate = LocalDate.now().plusDays(2);
+		Waiter waiter = mJoinWaitlistJobFactory.getJob(reservation(startDate, startDate)).call();
+		assertEquals(STATUS.RESERVED, waiter.getStatus());
+		assertTrue(mReservationDao.findById(waiter.getReservation().getId()).isPresent());
+		assertEquals(0, mReservationWaitlist.size());
+	}
+
+	@Test
+	public void testReleasedHoldHandsDates() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		Reservation held = reservation(date, date.plusDays(1));
+		mReservationHolds.place(held, Duration.ofMinutes(10));
+		Waiter waiter = mJoinWaitlistJobFactory.getJob(reservation(date, date)).call();
+		assertEquals(STATUS.WAITING, waiter.getStatus());
+
+		assertTrue(mReservationHolds.release(held.getId()));
+		assertEquals(waiter.getReservation().getId(), waiter.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertTrue(mReservationDao.findById(waiter.getReservation().getId()).isPresent());
+		assertEquals(0, mReservationWaitlist.size());
+	}
+
+	@Test
+	public void testExpiredHoldHandsDates() throws Exception {
+		LocalDate date = LocalDate.now().plusDays(2);
+		mReservationHolds.place(reservation(date, date), Duration.ofMinutes(5));
+		Waiter waiter = mJoinWaitlistJobFactory.getJob(reservation(date, date)).call();
+		assertEquals(STATUS.WAITING, waiter.getStatus());
+
+		ReflectionTestUtils.setField(mReservationHolds, "mClock",
+				Clock.offset(Clock.systemDefaultZone(), Duration.ofMinutes(6)));
+		assertEquals(1, mReservationHolds.expire());
+		assertEquals(waiter.getReservation().getId(), waiter.whenReserved().get(5, TimeUnit.SECONDS).getId());
+		assertTrue(mReservationDao.findById(waiter.getReservation().getId()).isPresent());
+		assertEquals(0, mReservationHolds.size());
+	}
+
+	private static Reservation reservation(LocalDate startDate, LocalDate endDate) {
+		return new Reservation(Reservation.DEFAULT_SITE, "Brian Leung", "brian.leung@mail.com", startDate, endDate);
+	}
+}